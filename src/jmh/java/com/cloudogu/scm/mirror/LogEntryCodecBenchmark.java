@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of log entries with many filter messages, as written for large mirrors. Decoding
+ * without reading the lines shows the cost of listing entries, which no longer inflates the lines. Run with
+ * {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogEntryCodecBenchmark {
+
+  @Param({"100", "10000"})
+  private int lines;
+
+  private LogEntry entry;
+  private byte[] record;
+
+  @Setup
+  public void createEntry() {
+    List<String> log = new ArrayList<>(lines);
+    for (int i = 0; i < lines; ++i) {
+      log.add("rejected branch feature/" + i + ": " + ConfigurableFilter.MESSAGE_PATTERN_NOT_MATCHED);
+    }
+    entry = new LogEntry(MirrorStatus.Result.FAILED_UPDATES, Instant.now(), Instant.now(), log);
+    record = LogEntryCodec.encode(entry);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return LogEntryCodec.encode(entry);
+  }
+
+  @Benchmark
+  public LogEntry decodeWithoutLines() {
+    return LogEntryCodec.decode(record);
+  }
+
+  @Benchmark
+  public List<String> decodeWithLines() {
+    return LogEntryCodec.decode(record).getLog();
+  }
+}
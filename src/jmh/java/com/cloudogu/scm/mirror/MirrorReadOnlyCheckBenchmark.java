@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sonia.scm.store.ConfigurationStoreFactory;
+import sonia.scm.store.InMemoryByteDataStoreFactory;
+import sonia.scm.store.InMemoryConfigurationStoreFactory;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Compares the read only check of {@link MirrorReadOnlyCheck} with the former implementation, which read the mirror
+ * configuration from the store for every check. The former implementation runs against an in memory store here, so
+ * the measured difference is a lower bound; with the xml store every check read a file from disk. Both are measured
+ * for a mirror and for an ordinary repository, which is by far the more frequent case. Run with
+ * {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MirrorReadOnlyCheckBenchmark {
+
+  private static final Collection<String> FORMER_FORBIDDEN_PERMISSIONS = asList("push", "archive", "createPullRequest");
+
+  @Param({"push", "pull"})
+  private String permission;
+
+  @Param({"mirror", "repository"})
+  private String repositoryId;
+
+  private ConfigurationStoreFactory storeFactory;
+  private MirrorReadOnlyCheck check;
+
+  @Setup
+  public void createCheck() {
+    InMemoryConfigurationStoreFactory inMemoryStoreFactory = new InMemoryConfigurationStoreFactory();
+    inMemoryStoreFactory.get("mirror", "mirror").set(new MirrorConfiguration());
+    storeFactory = inMemoryStoreFactory;
+    MirrorRepositoryRegistry mirrorRepositories = new MirrorRepositoryRegistry(new InMemoryByteDataStoreFactory());
+    mirrorRepositories.register("mirror");
+    MirrorConfigurationStore configurationStore = new MirrorConfigurationStore(storeFactory, null, null, null, mirrorRepositories, new SimpleMeterRegistry());
+    check = new MirrorReadOnlyCheck(configurationStore);
+  }
+
+  @Benchmark
+  public boolean formerCheck() {
+    return FORMER_FORBIDDEN_PERMISSIONS.contains(permission)
+      && storeFactory.withType(MirrorConfiguration.class)
+      .withName("mirror")
+      .forRepository(repositoryId)
+      .build()
+      .getOptional()
+      .map(MirrorConfiguration::isAllBranchesProtected)
+      .orElse(false);
+  }
+
+  @Benchmark
+  public boolean indexedCheck() {
+    return check.isReadOnly(permission, repositoryId);
+  }
+}
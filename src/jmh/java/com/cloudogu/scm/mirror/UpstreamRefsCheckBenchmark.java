@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.RefSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sonia.scm.config.ScmConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares the upstream ref check with the fetch run by an unchanged periodic synchronization, using a local bare
+ * repository as upstream. The check runs through the {@link GitUpstreamRefsProvider} like in production. The mirror
+ * command of the git plugin cannot run outside of SCM-Manager, so the fetch is run with the same ref spec directly
+ * with JGit; the real command additionally evaluates the filter and updates the repository, so the saving of a
+ * skipped synchronization is at least the difference measured here. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class UpstreamRefsCheckBenchmark {
+
+  @Param({"10", "1000"})
+  private int refs;
+
+  private Path directory;
+  private String upstreamUrl;
+  private Git mirror;
+  private MirrorConfiguration configuration;
+  private sonia.scm.repository.Repository mirrorRepository;
+  private final GitUpstreamRefsProvider provider = new GitUpstreamRefsProvider(new ScmConfiguration());
+
+  @Setup(Level.Trial)
+  public void createRepositories() throws Exception {
+    directory = Files.createTempDirectory("mirror-benchmark");
+    File upstream = directory.resolve("upstream.git").toFile();
+    try (Git work = Git.init().setDirectory(directory.resolve("work").toFile()).call()) {
+      Files.writeString(directory.resolve("work/README.md"), "# benchmark");
+      work.add().addFilepattern("README.md").call();
+      RevCommit commit = work.commit().setMessage("initial").setAuthor("Trillian", "trillian@hitchhiker.com").call();
+      Repository repository = work.getRepository();
+      for (int i = 0; i < refs; ++i) {
+        createRef(repository, "refs/heads/branch-" + i, commit);
+        createRef(repository, "refs/tags/v" + i, commit);
+      }
+      Git.cloneRepository().setURI(directory.resolve("work").toUri().toString()).setBare(true).setMirror(true).setDirectory(upstream).call().close();
+    }
+    upstreamUrl = upstream.toURI().toString();
+    mirror = Git.cloneRepository().setURI(upstreamUrl).setBare(true).setMirror(true).setDirectory(directory.resolve("mirror.git").toFile()).call();
+    configuration = new MirrorConfiguration();
+    configuration.setUrl(upstreamUrl);
+    mirrorRepository = new sonia.scm.repository.Repository("benchmark", "git", "hitchhiker", "mirror");
+  }
+
+  private static void createRef(Repository repository, String name, ObjectId target) throws IOException {
+    RefUpdate update = repository.updateRef(name);
+    update.setNewObjectId(target);
+    update.update();
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteRepositories() throws IOException {
+    mirror.close();
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  @Benchmark
+  public String refsCheck() throws Exception {
+    return UpstreamRefsCheck.fingerprint(configuration, provider.listRefs(mirrorRepository, configuration));
+  }
+
+  @Benchmark
+  public Object fullFetch() throws Exception {
+    return mirror.fetch()
+      .setRemote(upstreamUrl)
+      .setRefSpecs(new RefSpec("+refs/*:refs/*"))
+      .setRemoveDeletedRefs(true)
+      .call();
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import java.time.Duration;
+
+/**
+ * Adapts the synchronization period of a mirror to the rate in which its upstream changes. Every synchronization
+ * that brought in new or changed branches or tags halves the period, every synchronization without changes
+ * stretches it by half. The period always stays between the configured bounds, and it never drops below
+ * {@link #MAXIMUM_SPEEDUP a fraction} of the period configured for the mirror, so that a mirror configured for daily
+ * synchronizations is not synchronized every minute. Failed synchronizations do not change the period; they are
+ * handled by the backoff of the {@link MirrorScheduler}.
+ */
+class AdaptiveSchedulingPolicy {
+
+  /**
+   * The adapted period is at least the period configured for the mirror divided by this factor.
+   */
+  static final int MAXIMUM_SPEEDUP = 4;
+
+  static final AdaptiveSchedulingPolicy DISABLED = new AdaptiveSchedulingPolicy(false, Duration.ZERO, Duration.ZERO);
+
+  private final boolean enabled;
+  private final Duration minimumPeriod;
+  private final Duration maximumPeriod;
+
+  AdaptiveSchedulingPolicy(boolean enabled, Duration minimumPeriod, Duration maximumPeriod) {
+    this.enabled = enabled;
+    this.minimumPeriod = minimumPeriod;
+    this.maximumPeriod = maximumPeriod.compareTo(minimumPeriod) < 0 ? minimumPeriod : maximumPeriod;
+  }
+
+  static AdaptiveSchedulingPolicy of(GlobalMirrorConfiguration configuration) {
+    return new AdaptiveSchedulingPolicy(
+      configuration.isAdaptiveSynchronization(),
+      Duration.ofMinutes(Math.max(1, configuration.getMinimumAdaptivePeriod())),
+      Duration.ofMinutes(Math.max(1, configuration.getMaximumAdaptivePeriod()))
+    );
+  }
+
+  boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the period to use. If adaptive scheduling is disabled, this is always the configured period. Otherwise
+   * this is the last adapted period, if there is one, or the configured period, each limited to the bounds.
+   *
+   * @param adaptedPeriod the last adapted period or {@code null}
+   */
+  Duration effectivePeriod(Duration configuredPeriod, Duration adaptedPeriod) {
+    if (!enabled) {
+      return configuredPeriod;
+    }
+    return limit(configuredPeriod, adaptedPeriod == null ? configuredPeriod : adaptedPeriod);
+  }
+
+  /**
+   * Returns the adapted period after a synchronization with the given status.
+   */
+  Duration adapt(Duration configuredPeriod, Duration currentPeriod, MirrorStatus status) {
+    if (!enabled || status == null || status.getResult() == MirrorStatus.Result.FAILED) {
+      return currentPeriod;
+    }
+    if (status.getAcceptedUpdates() > 0) {
+      return limit(configuredPeriod, currentPeriod.dividedBy(2));
+    }
+    return limit(configuredPeriod, currentPeriod.plus(currentPeriod.dividedBy(2)));
+  }
+
+  private Duration limit(Duration configuredPeriod, Duration period) {
+    Duration lowerBound = configuredPeriod.dividedBy(MAXIMUM_SPEEDUP);
+    if (lowerBound.compareTo(minimumPeriod) < 0) {
+      lowerBound = minimumPeriod;
+    }
+    Duration upperBound = maximumPeriod.compareTo(lowerBound) < 0 ? lowerBound : maximumPeriod;
+    if (period.compareTo(lowerBound) < 0) {
+      return lowerBound;
+    }
+    if (period.compareTo(upperBound) > 0) {
+      return upperBound;
+    }
+    return period;
+  }
+}
@@ -23,8 +23,10 @@ import sonia.scm.security.PublicKey;
 import sonia.scm.util.GlobUtil;
 
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import static com.cloudogu.scm.mirror.MirrorGpgVerificationType.NONE;
 import static sonia.scm.repository.api.MirrorFilter.Result.accept;
@@ -40,6 +42,9 @@ class ConfigurableFilter implements MirrorFilter {
   private final Collection<String> keysIds;
 
   private boolean issuesFound = false;
+  private final Map<UpdateType, Integer> acceptedUpdates = new EnumMap<>(UpdateType.class);
+  private final Map<UpdateType, Map<RejectReason, Integer>> rejectedUpdates = new EnumMap<>(UpdateType.class);
+  private long evaluationNanos = 0;
 
   ConfigurableFilter(MirrorConfiguration configuration, List<PublicKey> keys) {
     this.configuration = configuration;
@@ -51,6 +56,35 @@ class ConfigurableFilter implements MirrorFilter {
     return new Filter() {
       @Override
       public Result acceptBranch(BranchUpdate branch) {
+        long start = System.nanoTime();
+        try {
+          return count(UpdateType.BRANCH, checkBranch(branch));
+        } finally {
+          evaluationNanos += System.nanoTime() - start;
+        }
+      }
+
+      @Override
+      public Result acceptTag(TagUpdate tag) {
+        long start = System.nanoTime();
+        try {
+          return count(UpdateType.TAG, checkTag(tag));
+        } finally {
+          evaluationNanos += System.nanoTime() - start;
+        }
+      }
+
+      private Result count(UpdateType type, Result result) {
+        if (result.isAccepted()) {
+          acceptedUpdates.merge(type, 1, Integer::sum);
+        } else {
+          RejectReason reason = result.getRejectReason().map(RejectReason::of).orElse(RejectReason.OTHER);
+          rejectedUpdates.computeIfAbsent(type, t -> new EnumMap<>(RejectReason.class)).merge(reason, 1, Integer::sum);
+        }
+        return result;
+      }
+
+      private Result checkBranch(BranchUpdate branch) {
         if (!matchesPattern(branch.getBranchName())) {
           return Result.reject(MESSAGE_PATTERN_NOT_MATCHED);
         }
@@ -64,8 +98,7 @@ class ConfigurableFilter implements MirrorFilter {
         return branch.getChangeset().map(c -> checkForAcceptedSignature(c.getSignatures())).orElseGet(Result::accept);
       }
 
-      @Override
-      public Result acceptTag(TagUpdate tag) {
+      private Result checkTag(TagUpdate tag) {
         if (!matchesPattern(tag.getTagName())) {
           return Result.reject(MESSAGE_PATTERN_NOT_MATCHED);
         }
@@ -127,4 +160,59 @@ class ConfigurableFilter implements MirrorFilter {
   public boolean hadIssues() {
     return issuesFound;
   }
+
+  /**
+   * Returns the number of branch and tag updates, which have been accepted.
+   */
+  public int getAcceptedUpdates() {
+    return acceptedUpdates.values().stream().mapToInt(Integer::intValue).sum();
+  }
+
+  /**
+   * Returns the number of accepted updates of the given type.
+   */
+  int getAcceptedUpdates(UpdateType type) {
+    return acceptedUpdates.getOrDefault(type, 0);
+  }
+
+  /**
+   * Returns the number of updates of the given type, which have been rejected for the given reason.
+   */
+  int getRejectedUpdates(UpdateType type, RejectReason reason) {
+    return rejectedUpdates.getOrDefault(type, Map.of()).getOrDefault(reason, 0);
+  }
+
+  /**
+   * Returns the time spent evaluating updates, in nanoseconds. The filter is called by the mirror command during the
+   * transfer, so this time is part of the time of the command.
+   */
+  long getEvaluationNanos() {
+    return evaluationNanos;
+  }
+
+  enum UpdateType {
+    BRANCH, TAG
+  }
+
+  enum RejectReason {
+    PATTERN_NOT_MATCHED(MESSAGE_PATTERN_NOT_MATCHED),
+    NO_VALID_SIGNATURE(MESSAGE_NO_VALID_SIGNATURE),
+    NO_FAST_FORWARD(MESSAGE_NO_FAST_FORWARD),
+    OTHER(null);
+
+    private final String message;
+
+    RejectReason(String message) {
+      this.message = message;
+    }
+
+    static RejectReason of(String message) {
+      for (RejectReason reason : values()) {
+        if (message.equals(reason.message)) {
+          return reason;
+        }
+      }
+      return OTHER;
+    }
+  }
 }
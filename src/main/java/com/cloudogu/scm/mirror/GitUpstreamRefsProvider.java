@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.LsRemoteCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import sonia.scm.config.ScmConfiguration;
+import sonia.scm.plugin.Extension;
+import sonia.scm.plugin.Requires;
+import sonia.scm.repository.Repository;
+
+import jakarta.inject.Inject;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lists the refs of git upstreams using {@code ls-remote}. Mirrors with client certificates or with a proxy (either
+ * their own or the global one of SCM-Manager) are not supported, because these settings are only applied by the
+ * mirror command itself. Without them, {@code ls-remote} would only wait for its timeout before every synchronization.
+ */
+@Extension
+@Requires("scm-git-plugin")
+class GitUpstreamRefsProvider implements UpstreamRefsProvider {
+
+  /**
+   * Listing the refs is only worth it, if it is much faster than the synchronization itself, so do not wait long.
+   */
+  private static final int TIMEOUT_IN_SECONDS = 10;
+
+  private final ScmConfiguration scmConfiguration;
+
+  @Inject
+  GitUpstreamRefsProvider(ScmConfiguration scmConfiguration) {
+    this.scmConfiguration = scmConfiguration;
+  }
+
+  @Override
+  public boolean isSupported(Repository repository, MirrorConfiguration configuration) {
+    return "git".equals(repository.getType())
+      && configuration.getCertificateCredential() == null
+      && !scmConfiguration.isEnableProxy()
+      && (configuration.getProxyConfiguration() == null || !configuration.getProxyConfiguration().isOverwriteGlobalConfiguration());
+  }
+
+  @Override
+  public Map<String, String> listRefs(Repository repository, MirrorConfiguration configuration) throws IOException {
+    LsRemoteCommand command = Git.lsRemoteRepository()
+      .setRemote(configuration.getUrl())
+      .setTimeout(TIMEOUT_IN_SECONDS);
+    MirrorAccessConfiguration.UsernamePasswordCredential credential = configuration.getUsernamePasswordCredential();
+    if (credential != null) {
+      command.setCredentialsProvider(new UsernamePasswordCredentialsProvider(credential.username(), credential.password()));
+    }
+    try {
+      Map<String, String> refs = new HashMap<>();
+      for (Ref ref : command.call()) {
+        if (ref.getObjectId() != null) {
+          refs.put(ref.getName(), ref.getObjectId().name());
+        }
+      }
+      return refs;
+    } catch (GitAPIException e) {
+      throw new IOException("failed to list refs of " + configuration.getUrl(), e);
+    }
+  }
+}
@@ -23,6 +23,8 @@ import lombok.Setter;
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import java.util.HashMap;
+import java.util.Map;
 
 @Getter
 @Setter
@@ -31,7 +33,50 @@ import jakarta.xml.bind.annotation.XmlRootElement;
 @XmlAccessorType(XmlAccessType.FIELD)
 public class GlobalMirrorConfiguration extends MirrorFilterConfigurationImpl {
 
+  static final int DEFAULT_MINIMUM_WORKERS = 4;
+  static final int DEFAULT_MAXIMUM_WORKERS = 16;
+  static final int DEFAULT_MAXIMUM_VIRTUAL_THREAD_SYNCHRONIZATIONS = 256;
+  static final int DEFAULT_MAXIMUM_SYNCHRONIZATIONS_PER_HOST = 0;
+  static final int DEFAULT_MINIMUM_ADAPTIVE_PERIOD = 1;
+  static final int DEFAULT_MAXIMUM_ADAPTIVE_PERIOD = 7 * 24 * 60;
+  static final int DEFAULT_LOG_RETENTION_ENTRIES = 20;
+  static final int DEFAULT_MAXIMUM_LAG_GAUGES = 20;
+
   private boolean httpsOnly = false;
   private boolean disableRepositoryFilterOverwrite = false;
+  private int minimumWorkers = DEFAULT_MINIMUM_WORKERS;
+  private int maximumWorkers = DEFAULT_MAXIMUM_WORKERS;
+  private MirrorExecutionMode executionMode = MirrorExecutionMode.PLATFORM_THREADS;
+  private int maximumVirtualThreadSynchronizations = DEFAULT_MAXIMUM_VIRTUAL_THREAD_SYNCHRONIZATIONS;
+  /**
+   * Limit for the synchronizations running against the same host at the same time; 0 means no limit.
+   */
+  private int maximumSynchronizationsPerHost = DEFAULT_MAXIMUM_SYNCHRONIZATIONS_PER_HOST;
+  /**
+   * Overrides {@link #maximumSynchronizationsPerHost} for single hosts.
+   */
+  private Map<String, Integer> hostLimits = new HashMap<>();
+  /**
+   * If enabled, the synchronization periods of the mirrors are adapted to the change rates of their upstreams
+   * (see {@link AdaptiveSchedulingPolicy}).
+   */
+  private boolean adaptiveSynchronization = false;
+  private int minimumAdaptivePeriod = DEFAULT_MINIMUM_ADAPTIVE_PERIOD;
+  private int maximumAdaptivePeriod = DEFAULT_MAXIMUM_ADAPTIVE_PERIOD;
+  /**
+   * Limits for the sync logs of all mirrors, which can be overwritten for single mirrors (see
+   * {@link LogRetentionConfiguration}).
+   */
+  private int logRetentionEntries = DEFAULT_LOG_RETENTION_ENTRIES;
+  private long logRetentionBytes = 0;
+  private int logRetentionDays = 0;
+  /**
+   * Number of mirrors lagging behind the most, which get a metric of their own (see {@link MirrorLagMonitor}).
+   */
+  private int maximumLagGauges = DEFAULT_MAXIMUM_LAG_GAUGES;
+
+  LogRetentionConfiguration getLogRetention() {
+    return new LogRetentionConfiguration(logRetentionEntries, logRetentionBytes, logRetentionDays);
+  }
 
 }
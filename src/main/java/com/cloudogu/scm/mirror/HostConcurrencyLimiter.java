@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.base.Strings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the number of synchronizations running against the same upstream host. A job for a saturated host does
+ * not wait for a free slot on its worker. Instead, it is parked and the worker is free for jobs for other hosts. As
+ * soon as a synchronization for the host has finished, the most urgent parked job is handed back for execution. The
+ * freed slot is reserved for this job, so that jobs submitted in the meantime cannot take it. Hosts are not limited,
+ * unless a default limit or a limit for the host has been configured.
+ */
+class HostConcurrencyLimiter {
+
+  private final MeterRegistry registry;
+  private final LongSupplier clock;
+
+  private final Map<String, Host> hosts = new HashMap<>();
+
+  private int defaultLimit = GlobalMirrorConfiguration.DEFAULT_MAXIMUM_SYNCHRONIZATIONS_PER_HOST;
+  private Map<String, Integer> limitOverrides = Map.of();
+
+  HostConcurrencyLimiter(MeterRegistry registry, LongSupplier clock) {
+    this.registry = registry;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns the normalized host of the given url, or {@code null}, if the url has no host.
+   */
+  static String hostOf(String url) {
+    if (Strings.isNullOrEmpty(url)) {
+      return null;
+    }
+    try {
+      String host = URI.create(url).getHost();
+      return host == null ? null : host.toLowerCase(Locale.ENGLISH);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Updates the limits and returns parked jobs, which can be started due to raised limits. A default limit of 0 or
+   * less means that only the hosts with an override are limited.
+   */
+  synchronized Collection<MirrorJob> configure(int defaultLimit, Map<String, Integer> limitOverrides) {
+    this.defaultLimit = defaultLimit;
+    Map<String, Integer> normalized = new HashMap<>();
+    if (limitOverrides != null) {
+      limitOverrides.forEach((host, limit) -> normalized.put(host.toLowerCase(Locale.ENGLISH), limit));
+    }
+    this.limitOverrides = normalized;
+    List<MirrorJob> startable = new ArrayList<>();
+    for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+      Host host = entry.getValue();
+      int free = limitOf(entry.getKey()) - host.running;
+      for (int i = 0; i < free && !host.parked.isEmpty(); ++i) {
+        startable.add(unpark(entry.getKey(), host));
+      }
+    }
+    return startable;
+  }
+
+  /**
+   * Takes a slot for the host of the job. If there is no free slot, the job is parked and {@code false} is returned.
+   */
+  synchronized boolean tryAcquire(MirrorJob job) {
+    String hostName = job.getHost();
+    if (hostName == null) {
+      return true;
+    }
+    Host host = hosts.computeIfAbsent(hostName, h -> new Host());
+    if (host.reserved.remove(job)) {
+      // the slot has been taken for the job, when it was unparked
+      return true;
+    }
+    if (host.running < limitOf(hostName)) {
+      ++host.running;
+      return true;
+    }
+    host.parked.add(new ParkedJob(job, clock.getAsLong()));
+    return false;
+  }
+
+  /**
+   * Releases the slot of the job and returns the parked job which should be started next, if any. The slot is handed
+   * over to the returned job.
+   */
+  synchronized MirrorJob release(MirrorJob job) {
+    String hostName = job.getHost();
+    if (hostName == null) {
+      return null;
+    }
+    Host host = hosts.get(hostName);
+    if (host == null) {
+      return null;
+    }
+    if (!host.parked.isEmpty() && host.running <= limitOf(hostName)) {
+      // the running count stays the same, because the slot is passed on
+      ParkedJob parked = host.parked.poll();
+      host.reserved.add(parked.job);
+      recordBlocked(hostName, parked);
+      return parked.job;
+    }
+    --host.running;
+    if (host.running <= 0) {
+      hosts.remove(hostName);
+    }
+    return null;
+  }
+
+  synchronized int getRunning(String hostName) {
+    Host host = hosts.get(hostName);
+    return host == null ? 0 : host.running;
+  }
+
+  synchronized int getParked(String hostName) {
+    Host host = hosts.get(hostName);
+    return host == null ? 0 : host.parked.size();
+  }
+
+  private MirrorJob unpark(String hostName, Host host) {
+    ParkedJob parked = host.parked.poll();
+    ++host.running;
+    host.reserved.add(parked.job);
+    recordBlocked(hostName, parked);
+    return parked.job;
+  }
+
+  private void recordBlocked(String hostName, ParkedJob parked) {
+    Timer.builder("mirror.host.blocked")
+      .description("Time mirror synchronizations have been waiting for a free slot for their upstream host")
+      .tag("host", hostName)
+      .register(registry)
+      .record(clock.getAsLong() - parked.since, TimeUnit.NANOSECONDS);
+  }
+
+  private int limitOf(String hostName) {
+    Integer override = limitOverrides.get(hostName);
+    if (override != null) {
+      return Math.max(1, override);
+    }
+    return defaultLimit > 0 ? defaultLimit : Integer.MAX_VALUE;
+  }
+
+  private static class Host {
+    private int running;
+    private final PriorityQueue<ParkedJob> parked = new PriorityQueue<>();
+    /**
+     * Unparked jobs, which already hold a slot. Compared by identity, because jobs do not implement equals.
+     */
+    private final Set<MirrorJob> reserved = new HashSet<>();
+  }
+
+  private static class ParkedJob implements Comparable<ParkedJob> {
+    private final MirrorJob job;
+    private final long since;
+
+    ParkedJob(MirrorJob job, long since) {
+      this.job = job;
+      this.since = since;
+    }
+
+    @Override
+    public int compareTo(ParkedJob other) {
+      return job.compareTo(other.job);
+    }
+  }
+}
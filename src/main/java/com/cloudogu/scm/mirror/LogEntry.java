@@ -16,15 +16,22 @@
 
 package com.cloudogu.scm.mirror;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import sonia.scm.xml.XmlInstantAdapter;
 
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlTransient;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static java.util.Collections.emptyMap;
 
 @Getter
 @XmlAccessorType(XmlAccessType.FIELD)
@@ -36,6 +43,19 @@ public class LogEntry {
   @XmlJavaTypeAdapter(XmlInstantAdapter.class)
   private Instant ended;
   private List<String> log;
+  /**
+   * Durations of the phases of the synchronization. Entries written before the phases have been recorded have none.
+   */
+  @XmlTransient
+  private Map<SynchronizationPhase, Duration> phases = emptyMap();
+  @XmlTransient
+  private String id;
+  /**
+   * Decodes the log lines, when they are requested for the first time (see {@link LogEntryCodec}).
+   */
+  @XmlTransient
+  @Getter(AccessLevel.NONE)
+  private Supplier<List<String>> lazyLog;
 
   private LogEntry() {
   }
@@ -51,4 +71,42 @@ public class LogEntry {
     this.log = log;
   }
 
+  LogEntry(MirrorStatus status, List<String> log, Map<SynchronizationPhase, Duration> phases) {
+    this(status, log);
+    this.phases = phases;
+  }
+
+  LogEntry(MirrorStatus.Result result, Instant started, Instant ended, List<String> log) {
+    this(result, started, ended, log, emptyMap());
+  }
+
+  LogEntry(MirrorStatus.Result result, Instant started, Instant ended, List<String> log, Map<SynchronizationPhase, Duration> phases) {
+    this.result = result;
+    this.started = started;
+    this.ended = ended;
+    this.log = log;
+    this.phases = phases;
+  }
+
+  LogEntry(MirrorStatus.Result result, Instant started, Instant ended, Supplier<List<String>> lazyLog, Map<SynchronizationPhase, Duration> phases) {
+    this.result = result;
+    this.started = started;
+    this.ended = ended;
+    this.lazyLog = lazyLog;
+    this.phases = phases;
+  }
+
+  public List<String> getLog() {
+    if (lazyLog != null) {
+      log = lazyLog.get();
+      lazyLog = null;
+    }
+    return log;
+  }
+
+  LogEntry withId(String id) {
+    this.id = id;
+    return this;
+  }
+
 }
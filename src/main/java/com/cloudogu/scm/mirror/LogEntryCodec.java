@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * Binary format of {@link LogEntry log entries} in the {@link SegmentedLog} of the {@link LogStore}. Every record
+ * starts with a format version, so that the format can evolve without migrating existing logs.
+ * <p>
+ * Since version 2 the log lines are stored deflated. The lines of large mirrors mostly consist of the same few
+ * messages (see {@link ConfigurableFilter}), so they are compressed with a preset dictionary of these messages. The
+ * lines are only inflated, when they are read.
+ * <p>
+ * Since version 3 the durations of the {@link SynchronizationPhase phases} are stored after the timestamps. Phases are
+ * stored by name, so that phases unknown to the reading version can be skipped.
+ */
+final class LogEntryCodec {
+
+  private static final byte VERSION_PLAIN = 1;
+  private static final byte VERSION_DEFLATED = 2;
+  private static final byte VERSION_PHASES = 3;
+
+  static final byte NO_DICTIONARY = 0;
+  static final byte FILTER_MESSAGE_DICTIONARY = 1;
+
+  /**
+   * Preset dictionary for {@link #FILTER_MESSAGE_DICTIONARY}, taken from the messages of {@link ConfigurableFilter}.
+   * Records refer to it by its id, so it is frozen as a literal and must never be changed, even if the messages
+   * change; add a new dictionary with a new id instead. The most frequent strings come last, because deflate
+   * references them with shorter distances.
+   */
+  private static final byte[] FILTER_MESSAGES = (
+    "new branch\nnew tag\ndeleted branch\ndeleted tag\nupdated branch\nupdated tag\n"
+      + "rejected\naccepted\nbranches\ntags\nrefs/heads/\nrefs/tags/\n"
+      + "skipped: no fast forward\n"
+      + "skipped: no valid signature\n"
+      + "skipped: does not match configured patterns"
+  ).getBytes(StandardCharsets.UTF_8);
+
+  private LogEntryCodec() {
+  }
+
+  static byte[] encode(LogEntry entry) {
+    return encode(entry, FILTER_MESSAGE_DICTIONARY);
+  }
+
+  @VisibleForTesting
+  static byte[] encode(LogEntry entry, byte dictionary) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(VERSION_PHASES);
+      writeString(output, entry.getResult() == null ? null : entry.getResult().name());
+      writeInstant(output, entry.getStarted());
+      writeInstant(output, entry.getEnded());
+      writePhases(output, entry.getPhases());
+      List<String> log = entry.getLog() == null ? List.of() : entry.getLog();
+      output.writeInt(log.size());
+      byte[] lines = encodeLines(log);
+      byte[] deflated = deflate(lines, dictionary);
+      output.writeByte(dictionary);
+      output.writeInt(lines.length);
+      output.writeInt(deflated.length);
+      output.write(deflated);
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to encode log entry", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decodes the given record. The log lines are inflated, when they are requested for the first time.
+   */
+  static LogEntry decode(byte[] record) {
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(record))) {
+      byte version = readVersion(input);
+      String result = readString(input);
+      Instant started = readInstant(input);
+      Instant ended = readInstant(input);
+      Map<SynchronizationPhase, Duration> phases = version >= VERSION_PHASES ? readPhases(input) : emptyMap();
+      MirrorStatus.Result status = result == null ? null : MirrorStatus.Result.valueOf(result);
+      int lineCount = input.readInt();
+      if (version == VERSION_PLAIN) {
+        return new LogEntry(status, started, ended, readLines(input, lineCount), phases);
+      }
+      Deflated deflated = readDeflated(input);
+      return new LogEntry(status, started, ended, () -> {
+        try {
+          return readLines(new DataInputStream(new ByteArrayInputStream(deflated.inflate())), lineCount);
+        } catch (IOException e) {
+          throw new UncheckedIOException("failed to decode log lines", e);
+        }
+      }, phases);
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to decode log entry", e);
+    }
+  }
+
+  /**
+   * Writes the log lines of the given record one by one, each followed by a line break, without decoding the whole
+   * entry first.
+   */
+  static void writeLines(byte[] record, Writer writer) throws IOException {
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(record))) {
+      byte version = readVersion(input);
+      readString(input);
+      readInstant(input);
+      readInstant(input);
+      if (version >= VERSION_PHASES) {
+        readPhases(input);
+      }
+      int lineCount = input.readInt();
+      if (version == VERSION_PLAIN) {
+        writeLines(input, lineCount, writer);
+      } else {
+        byte[] lines = readDeflated(input).inflate();
+        writeLines(new DataInputStream(new ByteArrayInputStream(lines)), lineCount, writer);
+      }
+    }
+  }
+
+  private static void writeLines(DataInputStream input, int lineCount, Writer writer) throws IOException {
+    for (int i = 0; i < lineCount; ++i) {
+      String line = readString(input);
+      if (line != null) {
+        writer.write(line);
+      }
+      writer.write('\n');
+    }
+  }
+
+  private static byte readVersion(DataInputStream input) throws IOException {
+    byte version = input.readByte();
+    if (version < VERSION_PLAIN || version > VERSION_PHASES) {
+      throw new IOException("unknown log entry format " + version);
+    }
+    return version;
+  }
+
+  private static void writePhases(DataOutputStream output, Map<SynchronizationPhase, Duration> phases) throws IOException {
+    output.writeByte(phases.size());
+    for (Map.Entry<SynchronizationPhase, Duration> phase : phases.entrySet()) {
+      writeString(output, phase.getKey().name());
+      output.writeLong(phase.getValue().toNanos());
+    }
+  }
+
+  private static Map<SynchronizationPhase, Duration> readPhases(DataInputStream input) throws IOException {
+    int count = input.readUnsignedByte();
+    Map<SynchronizationPhase, Duration> phases = new EnumMap<>(SynchronizationPhase.class);
+    for (int i = 0; i < count; ++i) {
+      String name = readString(input);
+      Duration duration = Duration.ofNanos(input.readLong());
+      Arrays.stream(SynchronizationPhase.values())
+        .filter(phase -> phase.name().equals(name))
+        .findFirst()
+        .ifPresent(phase -> phases.put(phase, duration));
+    }
+    return phases;
+  }
+
+  private static byte[] encodeLines(List<String> log) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      for (String line : log) {
+        writeString(output, line);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static List<String> readLines(DataInputStream input, int lineCount) throws IOException {
+    List<String> lines = new ArrayList<>(lineCount);
+    for (int i = 0; i < lineCount; ++i) {
+      lines.add(readString(input));
+    }
+    return lines;
+  }
+
+  private static byte[] deflate(byte[] data, byte dictionary) {
+    Deflater deflater = new Deflater();
+    try {
+      if (dictionary == FILTER_MESSAGE_DICTIONARY) {
+        deflater.setDictionary(FILTER_MESSAGES);
+      }
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        int length = deflater.deflate(buffer);
+        output.write(buffer, 0, length);
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static Deflated readDeflated(DataInputStream input) throws IOException {
+    byte dictionary = input.readByte();
+    if (dictionary != NO_DICTIONARY && dictionary != FILTER_MESSAGE_DICTIONARY) {
+      throw new IOException("unknown log dictionary " + dictionary);
+    }
+    int length = input.readInt();
+    byte[] data = new byte[input.readInt()];
+    input.readFully(data);
+    return new Deflated(dictionary, length, data);
+  }
+
+  private static final class Deflated {
+
+    private final byte dictionary;
+    private final int length;
+    private final byte[] data;
+
+    private Deflated(byte dictionary, int length, byte[] data) {
+      this.dictionary = dictionary;
+      this.length = length;
+      this.data = data;
+    }
+
+    byte[] inflate() throws IOException {
+      Inflater inflater = new Inflater();
+      try {
+        inflater.setInput(data);
+        byte[] inflated = new byte[length];
+        int offset = 0;
+        while (offset < length && !inflater.finished()) {
+          int read = inflater.inflate(inflated, offset, length - offset);
+          if (read == 0) {
+            if (inflater.needsDictionary() && dictionary == FILTER_MESSAGE_DICTIONARY) {
+              inflater.setDictionary(FILTER_MESSAGES);
+            } else {
+              throw new IOException("log lines are truncated or use an unknown dictionary");
+            }
+          }
+          offset += read;
+        }
+        return offset == length ? inflated : Arrays.copyOf(inflated, offset);
+      } catch (DataFormatException | IllegalArgumentException e) {
+        // the inflater rejects a dictionary, which does not match the one used to deflate the lines
+        throw new IOException("failed to inflate log lines", e);
+      } finally {
+        inflater.end();
+      }
+    }
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    if (value == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeInstant(DataOutputStream output, Instant instant) throws IOException {
+    output.writeBoolean(instant != null);
+    if (instant != null) {
+      output.writeLong(instant.getEpochSecond());
+      output.writeInt(instant.getNano());
+    }
+  }
+
+  private static Instant readInstant(DataInputStream input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    return Instant.ofEpochSecond(input.readLong(), input.readInt());
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+
+/**
+ * Limits for the sync logs of a mirror (see {@link LogStore}). A limit of {@code 0} disables the limit. In the
+ * configuration of a single mirror, a limit of {@code null} takes the limit of the {@link GlobalMirrorConfiguration}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@XmlAccessorType(XmlAccessType.FIELD)
+public class LogRetentionConfiguration {
+
+  private Integer maximumEntries;
+  private Long maximumBytes;
+  private Integer maximumAgeInDays;
+
+  /**
+   * Returns a new configuration with the limits of the given configuration, where they are set, and the limits of
+   * this configuration otherwise.
+   */
+  LogRetentionConfiguration overwriteWith(LogRetentionConfiguration other) {
+    return new LogRetentionConfiguration(
+      other.maximumEntries != null ? other.maximumEntries : maximumEntries,
+      other.maximumBytes != null ? other.maximumBytes : maximumBytes,
+      other.maximumAgeInDays != null ? other.maximumAgeInDays : maximumAgeInDays
+    );
+  }
+}
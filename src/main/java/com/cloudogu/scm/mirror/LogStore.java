@@ -14,69 +14,320 @@
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
 
+
 package com.cloudogu.scm.mirror;
 
 import com.github.legman.Subscribe;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import sonia.scm.EagerSingleton;
+import sonia.scm.HandlerEventType;
+import sonia.scm.NotFoundException;
 import sonia.scm.collect.EvictingQueue;
 import sonia.scm.plugin.Extension;
 import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.RepositoryLocationResolver;
 import sonia.scm.store.DataStore;
 import sonia.scm.store.DataStoreFactory;
 
 import jakarta.inject.Inject;
+import jakarta.inject.Provider;
 import jakarta.xml.bind.annotation.XmlAccessType;
 import jakarta.xml.bind.annotation.XmlAccessorType;
 import jakarta.xml.bind.annotation.XmlRootElement;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static sonia.scm.ContextEntry.ContextBuilder.entity;
 
+/**
+ * Stores the logs of the synchronizations of each mirror in an append only {@link SegmentedLog} in the directory of
+ * the repository. Writing an entry appends a single record. Old segments are deleted in the background according
+ * to the {@link LogRetentionConfiguration} of the mirror: whenever a log starts a new segment, and for all mirrors
+ * once an hour, one mirror at a time. Logs from the former xml store are moved to the new log, when the log of a
+ * repository is accessed for the first time.
+ */
 @EagerSingleton
 @Extension
 public class LogStore {
 
+  private static final Logger LOG = LoggerFactory.getLogger(LogStore.class);
+
+  /**
+   * Number of entries per segment and of the newest entries returned by {@link #get(Repository)}.
+   */
   @VisibleForTesting
   static final int ENTRY_LIMIT = 20;
 
-  private static final String STORE_NAME = "mirrorSyncLog";
-  private static final String STORE_ENTRY = "main";
+  private static final long RETENTION_INITIAL_DELAY_MINUTES = 5;
+  private static final long RETENTION_INTERVAL_MINUTES = 60;
+
+  private static final String DIRECTORY = "mirror-log";
+  private static final String LEGACY_STORE_NAME = "mirrorSyncLog";
+  private static final String LEGACY_STORE_ENTRY = "main";
 
   private final DataStoreFactory storeFactory;
+  private final RepositoryLocationResolver locationResolver;
+  private final Provider<MirrorConfigurationStore> configurationStore;
+  private final MirrorRepositoryRegistry mirrorRepositories;
+  private final ScheduledExecutorService retentionExecutor;
+  private final Clock clock;
+  private final Map<String, SegmentedLog> logs = new ConcurrentHashMap<>();
+  private final Map<String, Long> logSizes = new ConcurrentHashMap<>();
+  /**
+   * Repositories, for which the retention is already scheduled, so that a busy log is not reclaimed repeatedly.
+   */
+  private final Set<String> pendingRetentions = ConcurrentHashMap.newKeySet();
 
   @Inject
-  public LogStore(DataStoreFactory storeFactory) {
+  public LogStore(DataStoreFactory storeFactory,
+                  RepositoryLocationResolver locationResolver,
+                  Provider<MirrorConfigurationStore> configurationStore,
+                  MirrorRepositoryRegistry mirrorRepositories,
+                  MeterRegistry registry) {
+    this(
+      storeFactory,
+      locationResolver,
+      configurationStore,
+      mirrorRepositories,
+      registry,
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("mirror-log-retention-%d").setDaemon(true).build()),
+      Clock.systemUTC()
+    );
+  }
+
+  @VisibleForTesting
+  LogStore(DataStoreFactory storeFactory,
+           RepositoryLocationResolver locationResolver,
+           Provider<MirrorConfigurationStore> configurationStore,
+           MirrorRepositoryRegistry mirrorRepositories,
+           MeterRegistry registry,
+           ScheduledExecutorService retentionExecutor,
+           Clock clock) {
     this.storeFactory = storeFactory;
+    this.locationResolver = locationResolver;
+    this.configurationStore = configurationStore;
+    this.mirrorRepositories = mirrorRepositories;
+    this.retentionExecutor = retentionExecutor;
+    this.clock = clock;
+    Gauge.builder("mirror.log.size", logSizes, LogStore::sum)
+      .description("Total size of the sync logs of all mirrors")
+      .baseUnit(BaseUnits.BYTES)
+      .register(registry);
+    retentionExecutor.scheduleWithFixedDelay(
+      this::scheduleRetentionOfAllMirrors, RETENTION_INITIAL_DELAY_MINUTES, RETENTION_INTERVAL_MINUTES, TimeUnit.MINUTES
+    );
+  }
+
+  private static double sum(Map<String, Long> sizes) {
+    return sizes.values().stream().mapToLong(Long::longValue).sum();
   }
 
   @Subscribe(async = false)
   public void handle(MirrorSyncEvent event) {
-    DataStore<LogEntries> store = store(event.getRepository());
-    LogEntries entries = entries(store);
-    entries.add(entry(event));
-    store.put(STORE_ENTRY, entries);
+    String repositoryId = event.getRepository().getId();
+    SegmentedLog log = log(repositoryId);
+    try {
+      byte[] record = LogEntryCodec.encode(entry(event));
+      boolean rolled = log.append(record);
+      logSizes.merge(repositoryId, (long) Integer.BYTES + record.length, Long::sum);
+      if (rolled) {
+        scheduleRetention(repositoryId);
+      }
+    } catch (IOException e) {
+      LOG.error("failed to write sync log of mirror {}", event.getRepository(), e);
+    }
   }
 
   @SuppressWarnings("UnstableApiUsage")
   private LogEntry entry(MirrorSyncEvent event) {
-    return new LogEntry(event.getStatus(), event.getResult().getLog());
+    return new LogEntry(event.getStatus(), event.getResult().getLog(), event.getPhases());
   }
 
   public List<LogEntry> get(Repository repository) {
+    return get(repository, ENTRY_LIMIT, null).getEntries();
+  }
+
+  /**
+   * Returns a page of at most the given number of entries, starting with the newest one.
+   *
+   * @param cursor the {@link Page#getNext() cursor} of the previous page, or {@code null} for the first page
+   * @throws IllegalArgumentException if the cursor is not valid
+   */
+  public Page get(Repository repository, int limit, String cursor) {
     MirrorPermissions.checkRepositoryMirrorPermission(repository);
-    return ImmutableList.copyOf(entries(store(repository)).getEntries()).reverse();
+    int pageSize = Math.max(1, limit);
+    long before = cursor == null ? Long.MAX_VALUE : parseId(cursor);
+    try {
+      // read one more entry than requested to find out, whether there is another page
+      List<SegmentedLog.Record> records = log(repository.getId()).readNewest(pageSize + 1, before);
+      List<LogEntry> entries = records.stream()
+        .limit(pageSize)
+        .map(record -> LogEntryCodec.decode(record.getData()).withId(toId(record.getPosition())))
+        .collect(Collectors.toList());
+      String next = records.size() > pageSize ? entries.get(entries.size() - 1).getId() : null;
+      return new Page(entries, next);
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to read sync log of mirror " + repository, e);
+    }
+  }
+
+  /**
+   * Returns the log lines of the entry with the given id. The lines are decoded, while they are written.
+   */
+  public Lines getLines(Repository repository, String id) {
+    MirrorPermissions.checkRepositoryMirrorPermission(repository);
+    Optional<byte[]> record;
+    try {
+      record = log(repository.getId()).read(parseEntryId(repository, id));
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to read sync log of mirror " + repository, e);
+    }
+    byte[] data = record.orElseThrow(() -> notFound(repository, id));
+    return writer -> LogEntryCodec.writeLines(data, writer);
+  }
+
+  private static long parseEntryId(Repository repository, String id) {
+    try {
+      return parseId(id);
+    } catch (IllegalArgumentException e) {
+      throw notFound(repository, id);
+    }
+  }
+
+  private static NotFoundException notFound(Repository repository, String id) {
+    return NotFoundException.notFound(entity(LogEntry.class, id).in(repository));
+  }
+
+  private static String toId(long position) {
+    return Long.toString(position);
   }
 
-  private DataStore<LogEntries> store(Repository repository) {
-    return storeFactory.withType(LogEntries.class).withName(STORE_NAME).forRepository(repository).build();
+  private static long parseId(String id) {
+    try {
+      long position = Long.parseLong(id);
+      if (position < 0) {
+        throw new IllegalArgumentException("invalid log entry id " + id);
+      }
+      return position;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid log entry id " + id, e);
+    }
+  }
+
+  @Subscribe
+  public void removeDeletedRepository(RepositoryEvent event) {
+    if (event.getEventType() == HandlerEventType.DELETE) {
+      logs.remove(event.getItem().getId());
+      logSizes.remove(event.getItem().getId());
+    }
+  }
+
+  private void scheduleRetentionOfAllMirrors() {
+    for (String repositoryId : mirrorRepositories.getAll()) {
+      scheduleRetention(repositoryId);
+    }
+  }
+
+  private void scheduleRetention(String repositoryId) {
+    if (pendingRetentions.add(repositoryId)) {
+      retentionExecutor.execute(() -> {
+        pendingRetentions.remove(repositoryId);
+        enforceRetention(repositoryId);
+      });
+    }
+  }
+
+  private void enforceRetention(String repositoryId) {
+    try {
+      LogRetentionConfiguration retention = configurationStore.get().getApplicableLogRetention(repositoryId);
+      Instant expiry = retention.getMaximumAgeInDays() > 0
+        ? clock.instant().minus(retention.getMaximumAgeInDays(), ChronoUnit.DAYS)
+        : null;
+      long size = log(repositoryId).reclaim(retention.getMaximumEntries(), retention.getMaximumBytes(), expiry);
+      logSizes.put(repositoryId, size);
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("failed to delete old sync log segments of mirror {}", repositoryId, e);
+    }
+  }
+
+  private SegmentedLog log(String repositoryId) {
+    return logs.computeIfAbsent(repositoryId, this::open);
+  }
+
+  private SegmentedLog open(String repositoryId) {
+    Path directory = locationResolver.forClass(Path.class).getLocation(repositoryId).resolve(DIRECTORY);
+    SegmentedLog log = new SegmentedLog(directory, ENTRY_LIMIT);
+    try {
+      migrateLegacyEntries(repositoryId, log);
+      logSizes.put(repositoryId, log.size());
+    } catch (IOException e) {
+      throw new UncheckedIOException("failed to open sync log of mirror " + repositoryId, e);
+    }
+    return log;
+  }
+
+  private void migrateLegacyEntries(String repositoryId, SegmentedLog log) throws IOException {
+    DataStore<LogEntries> legacyStore = storeFactory.withType(LogEntries.class).withName(LEGACY_STORE_NAME).forRepository(repositoryId).build();
+    if (legacyStore.getOptional(LEGACY_STORE_ENTRY).isEmpty()) {
+      return;
+    }
+    if (log.isEmpty()) {
+      LOG.info("moving sync logs of mirror {} to new log format", repositoryId);
+      for (LogEntry entry : legacyStore.get(LEGACY_STORE_ENTRY).getEntries()) {
+        log.append(LogEntryCodec.encode(entry));
+      }
+    }
+    legacyStore.remove(LEGACY_STORE_ENTRY);
+  }
+
+  /**
+   * A page of log entries, starting with the newest one.
+   */
+  @Getter
+  @AllArgsConstructor
+  public static class Page {
+    private final List<LogEntry> entries;
+    /**
+     * Cursor for the next page of older entries, or {@code null}, if there are no older entries.
+     */
+    private final String next;
   }
 
-  private LogEntries entries(DataStore<LogEntries> store) {
-    return store.getOptional(STORE_ENTRY).orElseGet(LogEntries::new);
+  /**
+   * Log lines of a single entry, which are written lazily.
+   */
+  @FunctionalInterface
+  public interface Lines {
+    void writeTo(Writer writer) throws IOException;
   }
 
+  /**
+   * Former storage of the sync logs; only read to move existing logs to the {@link SegmentedLog}.
+   */
   @Getter
   @XmlRootElement
   @XmlAccessorType(XmlAccessType.FIELD)
@@ -23,6 +23,7 @@ import sonia.scm.EagerSingleton;
 import sonia.scm.HandlerEventType;
 import sonia.scm.plugin.Extension;
 import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.RepositoryImportEvent;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Provider;
@@ -34,10 +35,12 @@ public class MirrorCleanupHook {
   private static final Logger LOG = LoggerFactory.getLogger(MirrorCleanupHook.class);
 
   private final Provider<MirrorScheduler> scheduler;
+  private final Provider<MirrorConfigurationStore> configurationStore;
 
   @Inject
-  MirrorCleanupHook(Provider<MirrorScheduler> scheduler) {
+  MirrorCleanupHook(Provider<MirrorScheduler> scheduler, Provider<MirrorConfigurationStore> configurationStore) {
     this.scheduler = scheduler;
+    this.configurationStore = configurationStore;
   }
 
   @Subscribe
@@ -45,6 +48,15 @@ public class MirrorCleanupHook {
     if (event.getEventType() == HandlerEventType.DELETE) {
       LOG.debug("cleanup schedule for repository {} due to deletion", event.getItem());
       scheduler.get().cancel(event.getItem());
+      configurationStore.get().forget(event.getItem().getId());
+    }
+  }
+
+  @Subscribe
+  public void registerImportedMirrors(RepositoryImportEvent event) {
+    if (!event.isFailed()) {
+      LOG.debug("reading mirror configuration of imported repository {}", event.getItem());
+      configurationStore.get().reload(event.getItem().getId());
     }
   }
 }
@@ -54,7 +54,11 @@ class MirrorCommandCaller {
     this.publicKeyParser = publicKeyParser;
   }
 
-  <T> CallResult<T> call(Repository repository, MirrorConfiguration configuration, Function<MirrorCommandBuilder, T> callback) {
+  /**
+   * Runs the mirror command with the given callback and records the durations of the single phases in the given
+   * timings, even if the command fails.
+   */
+  <T> CallResult<T> call(Repository repository, MirrorConfiguration configuration, Function<MirrorCommandBuilder, T> callback, SynchronizationTimings timings) {
     ConfigurableFilter filter;
     T result;
 
@@ -62,10 +66,15 @@ class MirrorCommandCaller {
       throw new InsecureConnectionNotAllowedException(repository);
     }
 
-    try (RepositoryService repositoryService = repositoryServiceFactory.create(repository)) {
+    long start = System.nanoTime();
+    RepositoryService repositoryService = repositoryServiceFactory.create(repository);
+    timings.recordSince(SynchronizationPhase.REPOSITORY_SERVICE, start);
+    try (repositoryService) {
       LOG.debug("using url {}", configuration.getUrl());
 
+      start = System.nanoTime();
       List<PublicKey> keys = convertKeys(configuration);
+      timings.recordSince(SynchronizationPhase.KEYS, start);
 
       MirrorCommandBuilder mirrorCommand =
         repositoryService.getMirrorCommand()
@@ -75,8 +84,20 @@ class MirrorCommandCaller {
       mirrorCommand.setPublicKeys(keys);
       filter = filterBuilder.createFilter(configuration, keys);
       mirrorCommand.setFilter(filter);
+
+      start = System.nanoTime();
       setCredentials(configuration, mirrorCommand);
-      result = callback.apply(mirrorCommand);
+      timings.recordSince(SynchronizationPhase.CREDENTIALS, start);
+
+      start = System.nanoTime();
+      try {
+        result = callback.apply(mirrorCommand);
+      } finally {
+        // the filter is called during the transfer, so its time is reported separately
+        long filterNanos = filter == null ? 0 : filter.getEvaluationNanos();
+        timings.record(SynchronizationPhase.TRANSFER, System.nanoTime() - start - filterNanos);
+        timings.record(SynchronizationPhase.FILTER, filterNanos);
+      }
     }
     return new CallResult<>(result, filter);
   }
@@ -49,6 +49,10 @@ public class MirrorConfiguration implements MirrorAccessConfiguration, LocalFilt
   private boolean ignoreLfs = false;
   private boolean allBranchesProtected = true;
   private MirrorProxyConfiguration proxyConfiguration = new MirrorProxyConfiguration();
+  /**
+   * Limits for the sync logs of this mirror; {@code null} for the limits of the global configuration.
+   */
+  private LogRetentionConfiguration logRetention;
 
   @XmlTransient
   private boolean httpsOnly = false;
@@ -62,6 +66,30 @@ public class MirrorConfiguration implements MirrorAccessConfiguration, LocalFilt
     this.proxyConfiguration = proxyConfiguration;
   }
 
+  /**
+   * Creates a shallow copy of this configuration, which can be changed without affecting this configuration. Nested
+   * objects like credentials must be replaced rather than modified.
+   */
+  MirrorConfiguration copy() {
+    return new MirrorConfiguration(
+      url,
+      synchronizationPeriod,
+      managingUsers,
+      usernamePasswordCredential,
+      certificateCredential,
+      branchesAndTagsPatterns,
+      gpgVerificationType,
+      allowedGpgKeys,
+      fastForwardOnly,
+      overwriteGlobalConfiguration,
+      ignoreLfs,
+      allBranchesProtected,
+      proxyConfiguration,
+      logRetention,
+      httpsOnly
+    );
+  }
+
   public List<String> getManagingUsers() {
     return managingUsers != null ? managingUsers : Collections.emptyList();
   }
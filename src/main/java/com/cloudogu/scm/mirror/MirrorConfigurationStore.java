@@ -18,6 +18,14 @@ package com.cloudogu.scm.mirror;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sonia.scm.Initable;
@@ -31,39 +39,95 @@ import sonia.scm.web.security.AdministrationContext;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.UnaryOperator;
 
 import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
 
+/**
+ * Stores the mirror configurations. The configurations of the repositories are cached and every change is written
+ * through to the cache. Cached configurations are shared and therefore must not be modified; changes are made on a
+ * fresh copy from the store. Whether a repository is read only is kept in a separate index, which is filled at startup
+ * and answers the permission checks (see {@link MirrorReadOnlyCheck}) with a single lookup. Repositories with a
+ * configuration are registered in the {@link MirrorRepositoryRegistry}, so that only mirrors have to be read at
+ * startup. The mirrors are read and scheduled in the background by a few threads, so that the startup of the server
+ * does not wait for them. The global configuration is
+ * read from the store only once and replaced as a whole, whenever it is changed.
+ */
 @Singleton
 public class MirrorConfigurationStore implements Initable {
 
   public static final String DUMMY_PASSWORD = "_DUMMY_";
-  private static final String STORE_NAME = "mirror";
+  static final String STORE_NAME = "mirror";
   private static final Logger LOG = LoggerFactory.getLogger(MirrorConfigurationStore.class);
 
+  @VisibleForTesting
+  static final int MAXIMUM_CACHED_CONFIGURATIONS = 10_000;
+  private static final int STARTUP_THREADS = 4;
+  private static final int STARTUP_PROGRESS_INTERVAL = 1000;
+
   private final ConfigurationStoreFactory storeFactory;
   private final ConfigurationStore<GlobalMirrorConfiguration> globalStore;
   private final MirrorScheduler scheduler;
   private final RepositoryManager repositoryManager;
   private final AdministrationContext administrationContext;
+  private final MirrorRepositoryRegistry mirrorRepositories;
+  private final Timer startupTimer;
+  private final AtomicInteger startupTotal = new AtomicInteger();
+  private final AtomicInteger startupCompleted = new AtomicInteger();
+  private volatile CompletableFuture<Void> startup = CompletableFuture.completedFuture(null);
+  /**
+   * Configurations of the registered mirrors by repository id. Other repositories are answered by the
+   * {@link MirrorRepositoryRegistry} and never cached, so that they cannot push the mirrors out of the cache.
+   */
+  private final LoadingCache<String, Optional<MirrorConfiguration>> configurations;
+  /**
+   * Read only verdicts of the registered mirrors by repository id. Repositories which are not registered are never
+   * read only.
+   */
+  private final Map<String, Boolean> readOnlyRepositories = new ConcurrentHashMap<>();
+  private final AtomicReference<GlobalMirrorConfiguration> globalConfiguration;
 
   @Inject
-  MirrorConfigurationStore(ConfigurationStoreFactory storeFactory, MirrorScheduler scheduler, RepositoryManager repositoryManager, AdministrationContext administrationContext) {
+  MirrorConfigurationStore(ConfigurationStoreFactory storeFactory, MirrorScheduler scheduler, RepositoryManager repositoryManager, AdministrationContext administrationContext, MirrorRepositoryRegistry mirrorRepositories, MeterRegistry registry) {
     this.storeFactory = storeFactory;
     this.scheduler = scheduler;
     this.repositoryManager = repositoryManager;
     this.administrationContext = administrationContext;
+    this.mirrorRepositories = mirrorRepositories;
+    this.startupTimer = Timer.builder("mirror.startup")
+      .description("Time to read the configurations of all mirrors and schedule them at startup")
+      .register(registry);
+    Gauge.builder("mirror.startup.total", startupTotal, AtomicInteger::get)
+      .description("Number of mirrors to be read at startup")
+      .register(registry);
+    Gauge.builder("mirror.startup.completed", startupCompleted, AtomicInteger::get)
+      .description("Number of mirrors read and scheduled at startup so far")
+      .register(registry);
     this.globalStore = storeFactory.withType(GlobalMirrorConfiguration.class).withName(STORE_NAME).build();
+    this.configurations = CacheBuilder.newBuilder()
+      .maximumSize(MAXIMUM_CACHED_CONFIGURATIONS)
+      .recordStats()
+      .build(CacheLoader.from(repositoryId -> createConfigurationStore(repositoryId).getOptional()));
+    GuavaCacheMetrics.monitor(registry, configurations, "mirror.configuration");
+    this.globalConfiguration = new AtomicReference<>(globalStore.getOptional().orElse(new GlobalMirrorConfiguration()));
   }
 
   public Optional<MirrorConfiguration> getApplicableConfiguration(Repository repository) {
-    final Optional<MirrorConfiguration> localConfiguration = getConfiguration(repository);
-    return localConfiguration.map(it -> {
-      final GlobalMirrorConfiguration globalConfiguration = getGlobalConfiguration();
-      it.setHttpsOnly(globalConfiguration.isHttpsOnly());
-      return applyFilterConfiguration(it, getApplicableFilterConfiguration(repository));
+    final GlobalMirrorConfiguration globalConfiguration = getGlobalConfiguration();
+    return getConfiguration(repository).map(localConfiguration -> {
+      MirrorConfiguration applicableConfiguration = localConfiguration.copy();
+      applicableConfiguration.setHttpsOnly(globalConfiguration.isHttpsOnly());
+      return applyFilterConfiguration(applicableConfiguration, getApplicableFilterConfiguration(globalConfiguration, localConfiguration));
     });
   }
 
@@ -73,16 +137,44 @@ public class MirrorConfigurationStore implements Initable {
     if (globalConfiguration.isDisableRepositoryFilterOverwrite()) {
       return globalConfiguration;
     }
-    final Optional<MirrorConfiguration> localConfiguration = getConfiguration(repository);
-    if (localConfiguration.isPresent() && localConfiguration.get().isOverwriteGlobalConfiguration()) {
-      return localConfiguration.get();
+    return getApplicableFilterConfiguration(globalConfiguration, getConfiguration(repository).orElse(null));
+  }
+
+  private static MirrorFilterConfiguration getApplicableFilterConfiguration(GlobalMirrorConfiguration globalConfiguration, MirrorConfiguration localConfiguration) {
+    if (!globalConfiguration.isDisableRepositoryFilterOverwrite()
+      && localConfiguration != null
+      && localConfiguration.isOverwriteGlobalConfiguration()) {
+      return localConfiguration;
     }
     return globalConfiguration;
   }
 
   public Optional<MirrorConfiguration> getConfiguration(Repository repository) {
     RepositoryPermissions.read(repository).check();
-    return createConfigurationStore(repository).getOptional();
+    return lookup(repository.getId());
+  }
+
+  /**
+   * Returns the limits for the sync logs of the repository with the given id, combined from the global configuration
+   * and the configuration of the mirror. This is used by background tasks and therefore does not check permissions.
+   */
+  LogRetentionConfiguration getApplicableLogRetention(String repositoryId) {
+    LogRetentionConfiguration globalRetention = getGlobalConfiguration().getLogRetention();
+    return lookup(repositoryId)
+      .map(MirrorConfiguration::getLogRetention)
+      .map(globalRetention::overwriteWith)
+      .orElse(globalRetention);
+  }
+
+  /**
+   * Sets the limits for the sync logs of the mirror. The limits do not affect the synchronization, so the mirror is
+   * not rescheduled and keeps its backoff and adapted period.
+   */
+  public void setLogRetention(Repository repository, LogRetentionConfiguration logRetention) {
+    storeConfiguration(repository, it -> {
+      it.setLogRetention(logRetention);
+      return it;
+    });
   }
 
   public void setFilterConfiguration(Repository repository, LocalFilterConfiguration filterConfiguration) {
@@ -103,11 +195,7 @@ public class MirrorConfigurationStore implements Initable {
   }
 
   private void setConfiguration(Repository repository, UnaryOperator<MirrorConfiguration> applicator) {
-    MirrorPermissions.checkRepositoryMirrorPermission(repository);
-    LOG.debug("setting new configuration for repository {}", repository);
-    ConfigurationStore<MirrorConfiguration> store = createConfigurationStore(repository);
-    MirrorConfiguration newConfiguration = store.getOptional().map(applicator).orElseGet(() -> applicator.apply(new MirrorConfiguration()));
-    store.set(newConfiguration);
+    MirrorConfiguration newConfiguration = storeConfiguration(repository, applicator);
     if (newConfiguration.getSynchronizationPeriod() == null) {
       scheduler.cancel(repository);
     } else {
@@ -115,11 +203,28 @@ public class MirrorConfigurationStore implements Initable {
     }
   }
 
+  private MirrorConfiguration storeConfiguration(Repository repository, UnaryOperator<MirrorConfiguration> applicator) {
+    MirrorPermissions.checkRepositoryMirrorPermission(repository);
+    LOG.debug("setting new configuration for repository {}", repository);
+    ConfigurationStore<MirrorConfiguration> store = createConfigurationStore(repository);
+    MirrorConfiguration newConfiguration = store.getOptional().map(applicator).orElseGet(() -> applicator.apply(new MirrorConfiguration()));
+    store.set(newConfiguration);
+    // put instead of invalidate, so that a concurrent load of the old configuration cannot be cached afterwards
+    configurations.put(repository.getId(), Optional.of(newConfiguration));
+    mirrorRepositories.register(repository.getId());
+    readOnlyRepositories.put(repository.getId(), newConfiguration.isAllBranchesProtected());
+    return newConfiguration;
+  }
+
   public void deleteConfiguration(Repository repository) {
     MirrorPermissions.checkRepositoryMirrorPermission(repository);
     LOG.debug("unmirror repository {}", repository);
     ConfigurationStore<MirrorConfiguration> store = createConfigurationStore(repository);
     store.delete();
+    // the index entry is removed last, see isReadOnly
+    mirrorRepositories.unregister(repository.getId());
+    configurations.invalidate(repository.getId());
+    readOnlyRepositories.remove(repository.getId());
     scheduler.cancel(repository);
   }
 
@@ -208,35 +313,133 @@ public class MirrorConfigurationStore implements Initable {
   }
 
   public boolean hasConfiguration(String repositoryId) {
-    return createConfigurationStore(repositoryId)
-      .getOptional()
-      .isPresent();
+    return lookup(repositoryId).isPresent();
+  }
+
+  private Optional<MirrorConfiguration> lookup(String repositoryId) {
+    if (!mirrorRepositories.contains(repositoryId)) {
+      return Optional.empty();
+    }
+    return configurations.getUnchecked(repositoryId);
   }
 
   public boolean isReadOnly(String repositoryId) {
-    return createConfigurationStore(repositoryId)
-      .getOptional()
+    Boolean readOnly = readOnlyRepositories.get(repositoryId);
+    if (readOnly == null) {
+      if (!mirrorRepositories.contains(repositoryId)) {
+        return false;
+      }
+      // the store is read while holding the lock for this id, so concurrent changes are applied after the load; when
+      // a mirror is removed, it is unregistered and removed from the cache before its entry is removed from the index,
+      // so an outdated verdict computed concurrently is removed as well
+      readOnly = readOnlyRepositories.computeIfAbsent(repositoryId, this::readReadOnly);
+    }
+    return readOnly;
+  }
+
+  private boolean readReadOnly(String repositoryId) {
+    return lookup(repositoryId)
       .map(MirrorConfiguration::isAllBranchesProtected)
       .orElse(false);
   }
 
+  /**
+   * Removes everything cached and registered for the given repository, e.g. when it is deleted.
+   */
+  void forget(String repositoryId) {
+    mirrorRepositories.unregister(repositoryId);
+    configurations.invalidate(repositoryId);
+    readOnlyRepositories.remove(repositoryId);
+  }
+
+  /**
+   * Reads the configuration of the given repository from the store again, e.g. when the repository has been
+   * imported together with its configuration.
+   */
+  void reload(String repositoryId) {
+    readOnlyRepositories.remove(repositoryId);
+    Optional<MirrorConfiguration> configuration = createConfigurationStore(repositoryId).getOptional();
+    if (configuration.isPresent()) {
+      configurations.put(repositoryId, configuration);
+      mirrorRepositories.register(repositoryId);
+    } else {
+      mirrorRepositories.unregister(repositoryId);
+      configurations.invalidate(repositoryId);
+    }
+  }
+
+  /**
+   * Returns the current global configuration. The configuration is shared and must not be modified; use
+   * {@link #setGlobalConfiguration(GlobalMirrorConfiguration)} with a new configuration instead.
+   */
   public GlobalMirrorConfiguration getGlobalConfiguration() {
-    return globalStore.getOptional().orElse(new GlobalMirrorConfiguration());
+    return globalConfiguration.get();
   }
 
   public void setGlobalConfiguration(GlobalMirrorConfiguration globalConfig) {
-    globalStore.set(globalConfig);
+    synchronized (globalConfiguration) {
+      globalStore.set(globalConfig);
+      globalConfiguration.set(globalConfig);
+    }
+    scheduler.configure(globalConfig);
   }
 
   @Override
   public void init(SCMContextProvider context) {
-    administrationContext.runAsAdmin(() -> repositoryManager.getAll().forEach(this::init));
+    scheduler.configure(getGlobalConfiguration());
+    Set<String> repositoryIds = mirrorRepositories.getAll();
+    startupTotal.set(repositoryIds.size());
+    startupCompleted.set(0);
+    LOG.info("reading configurations of {} mirrors in the background", repositoryIds.size());
+    long start = System.nanoTime();
+    ExecutorService loader = Executors.newFixedThreadPool(
+      STARTUP_THREADS, new ThreadFactoryBuilder().setNameFormat("mirror-startup-%d").setDaemon(true).build()
+    );
+    startup = CompletableFuture.allOf(
+      repositoryIds.stream()
+        .map(repositoryId -> CompletableFuture.runAsync(() -> initInBackground(repositoryId), loader))
+        .toArray(CompletableFuture[]::new)
+    ).whenComplete((result, exception) -> {
+      loader.shutdown();
+      startupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      LOG.info("read configurations of {} mirrors at startup", startupCompleted.get());
+    });
+  }
+
+  @VisibleForTesting
+  CompletableFuture<Void> getStartup() {
+    return startup;
+  }
+
+  private void initInBackground(String repositoryId) {
+    try {
+      administrationContext.runAsAdmin(() -> init(repositoryId));
+    } catch (Exception e) {
+      LOG.error("failed to read configuration of mirror {} at startup", repositoryId, e);
+    }
+    int completed = startupCompleted.incrementAndGet();
+    if (completed % STARTUP_PROGRESS_INTERVAL == 0) {
+      LOG.info("read configurations of {} of {} mirrors", completed, startupTotal.get());
+    }
   }
 
-  private void init(Repository repository) {
-    getConfiguration(repository)
-      .filter(configuration -> configuration.getSynchronizationPeriod() != null)
-      .ifPresent(configuration -> scheduler.scheduleNow(repository, configuration));
+  private void init(String repositoryId) {
+    Repository repository = repositoryManager.get(repositoryId);
+    if (repository == null) {
+      LOG.debug("unregistering mirror {}, because the repository does not exist anymore", repositoryId);
+      mirrorRepositories.unregister(repositoryId);
+      return;
+    }
+    Optional<MirrorConfiguration> configuration = configurations.getUnchecked(repositoryId);
+    if (configuration.isEmpty()) {
+      mirrorRepositories.unregister(repositoryId);
+      return;
+    }
+    // a configuration changed in the meantime has already been indexed
+    readOnlyRepositories.putIfAbsent(repositoryId, configuration.get().isAllBranchesProtected());
+    if (configuration.get().getSynchronizationPeriod() != null) {
+      scheduler.scheduleAtStartup(repository, configuration.get());
+    }
   }
 
   private ConfigurationStore<MirrorConfiguration> createConfigurationStore(Repository repository) {
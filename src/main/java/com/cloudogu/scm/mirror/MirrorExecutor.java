@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.metrics.Metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executes mirror synchronizations. Timing is handled by a single timer thread, the synchronizations themselves
+ * run on an elastic worker pool, which grows and shrinks between the configured minimum and maximum depending on
+ * the number of waiting synchronizations. If configured and supported by the jvm, synchronizations run on virtual
+ * threads instead (see {@link VirtualThreadEngine}). In both modes waiting synchronizations are started by priority
+ * of their {@link MirrorJobClass}, and the number of synchronizations per upstream host is limited (see
+ * {@link HostConcurrencyLimiter}).
+ */
+@Singleton
+class MirrorExecutor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MirrorExecutor.class);
+
+  private static final long ADJUST_INTERVAL_SECONDS = 10;
+
+  private final MeterRegistry registry;
+  private final ScheduledExecutorService timer;
+  private final ThreadPoolExecutor workers;
+  private final Supplier<Optional<ExecutorService>> virtualThreadExecutorFactory;
+
+  private final Map<MirrorJobClass, AtomicInteger> queueDepths = new EnumMap<>(MirrorJobClass.class);
+  private final Map<MirrorJobClass, Timer> waitTimes = new EnumMap<>(MirrorJobClass.class);
+  private final HostConcurrencyLimiter hostLimiter;
+  private final MirrorJob.Lifecycle jobLifecycle = new JobLifecycle();
+
+  private int minimumWorkers = GlobalMirrorConfiguration.DEFAULT_MINIMUM_WORKERS;
+  private int maximumWorkers = GlobalMirrorConfiguration.DEFAULT_MAXIMUM_WORKERS;
+
+  private VirtualThreadEngine virtualThreadEngine;
+  private volatile boolean useVirtualThreads = false;
+
+  @Inject
+  MirrorExecutor(MeterRegistry registry) {
+    this(
+      registry,
+      Executors.newSingleThreadScheduledExecutor(threadFactory("mirror-scheduler-%d")),
+      createWorkers(GlobalMirrorConfiguration.DEFAULT_MINIMUM_WORKERS),
+      VirtualThreadEngine::createVirtualThreadExecutor
+    );
+  }
+
+  @VisibleForTesting
+  MirrorExecutor(MeterRegistry registry,
+                 ScheduledExecutorService timer,
+                 ThreadPoolExecutor workers,
+                 Supplier<Optional<ExecutorService>> virtualThreadExecutorFactory) {
+    this.registry = registry;
+    this.timer = timer;
+    this.workers = workers;
+    this.virtualThreadExecutorFactory = virtualThreadExecutorFactory;
+    this.hostLimiter = new HostConcurrencyLimiter(registry, System::nanoTime);
+    // keep the type tag of the former fixed pool, so that existing dashboards and alerts still match
+    Metrics.executor(registry, workers, "mirror", "fixed");
+    for (MirrorJobClass jobClass : MirrorJobClass.values()) {
+      String tag = jobClass.name().toLowerCase(Locale.ENGLISH);
+      AtomicInteger depth = new AtomicInteger();
+      queueDepths.put(jobClass, depth);
+      Gauge.builder("mirror.queue.depth", depth, AtomicInteger::get)
+        .description("Number of mirror synchronizations waiting for execution")
+        .tag("class", tag)
+        .register(registry);
+      waitTimes.put(jobClass, Timer.builder("mirror.queue.wait")
+        .description("Time mirror synchronizations have been waiting for execution")
+        .tag("class", tag)
+        .register(registry));
+    }
+    timer.scheduleWithFixedDelay(this::adjustPoolSize, ADJUST_INTERVAL_SECONDS, ADJUST_INTERVAL_SECONDS, TimeUnit.SECONDS);
+  }
+
+  private static ThreadPoolExecutor createWorkers(int size) {
+    return new ThreadPoolExecutor(
+      size, size, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), threadFactory("mirror-worker-%d")
+    );
+  }
+
+  private static ThreadFactory threadFactory(String nameFormat) {
+    return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+  }
+
+  synchronized void configure(GlobalMirrorConfiguration configuration) {
+    configureWorkers(configuration.getMinimumWorkers(), configuration.getMaximumWorkers());
+    configureExecutionMode(configuration.getExecutionMode(), configuration.getMaximumVirtualThreadSynchronizations());
+    hostLimiter.configure(configuration.getMaximumSynchronizationsPerHost(), configuration.getHostLimits())
+      .forEach(this::submit);
+  }
+
+  private void configureExecutionMode(MirrorExecutionMode mode, int maximumConcurrentSynchronizations) {
+    int limit = Math.max(1, maximumConcurrentSynchronizations);
+    if (mode == MirrorExecutionMode.VIRTUAL_THREADS) {
+      if (virtualThreadEngine == null) {
+        Optional<ExecutorService> virtualThreadExecutor = virtualThreadExecutorFactory.get();
+        if (virtualThreadExecutor.isEmpty()) {
+          LOG.warn("virtual threads are not supported by this jvm; mirror synchronizations keep running on the worker pool");
+          useVirtualThreads = false;
+          return;
+        }
+        virtualThreadEngine = new VirtualThreadEngine(registry, virtualThreadExecutor.get(), limit);
+      }
+      if (!useVirtualThreads) {
+        LOG.info("running mirror synchronizations on virtual threads, at most {} at a time", limit);
+      }
+      virtualThreadEngine.setLimit(limit);
+      useVirtualThreads = true;
+    } else {
+      if (useVirtualThreads) {
+        LOG.info("running mirror synchronizations on the worker pool");
+      }
+      useVirtualThreads = false;
+    }
+  }
+
+  private void configureWorkers(int minimumWorkers, int maximumWorkers) {
+    int newMinimum = Math.max(1, minimumWorkers);
+    int newMaximum = Math.max(newMinimum, maximumWorkers);
+    if (newMinimum != this.minimumWorkers || newMaximum != this.maximumWorkers) {
+      LOG.info("changing mirror worker pool to minimum {} and maximum {} workers", newMinimum, newMaximum);
+      this.minimumWorkers = newMinimum;
+      this.maximumWorkers = newMaximum;
+      adjustPoolSize();
+    }
+  }
+
+  /**
+   * Executes the given runnable.
+   *
+   * @param host upstream host of the synchronization (see {@link HostConcurrencyLimiter#hostOf(String)}), or
+   *             {@code null} if the synchronization should not be limited by host
+   */
+  void execute(MirrorJobClass jobClass, String host, Runnable runnable) {
+    queueDepths.get(jobClass).incrementAndGet();
+    submit(new MirrorJob(jobClass, host, runnable, System.nanoTime(), jobLifecycle));
+  }
+
+  /**
+   * Executes the given runnable as {@link MirrorJobClass#PERIODIC periodic} job after the given delay.
+   */
+  ScheduledFuture<?> schedule(String host, Runnable runnable, long delay, TimeUnit unit) {
+    return timer.schedule(() -> execute(MirrorJobClass.PERIODIC, host, runnable), delay, unit);
+  }
+
+  private void submit(MirrorJob job) {
+    if (useVirtualThreads) {
+      virtualThreadEngine.execute(job);
+      return;
+    }
+    workers.execute(job);
+    if (!workers.getQueue().isEmpty()) {
+      grow();
+    }
+  }
+
+  private synchronized void grow() {
+    int target = targetPoolSize();
+    if (target > workers.getCorePoolSize()) {
+      resize(target);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized void adjustPoolSize() {
+    resize(targetPoolSize());
+  }
+
+  private int targetPoolSize() {
+    int demand = workers.getActiveCount() + workers.getQueue().size();
+    return Math.min(maximumWorkers, Math.max(minimumWorkers, demand));
+  }
+
+  private void resize(int target) {
+    if (target > workers.getMaximumPoolSize()) {
+      workers.setMaximumPoolSize(target);
+      workers.setCorePoolSize(target);
+    } else if (target != workers.getCorePoolSize() || target != workers.getMaximumPoolSize()) {
+      LOG.trace("resizing mirror worker pool to {} workers", target);
+      workers.setCorePoolSize(target);
+      workers.setMaximumPoolSize(target);
+    }
+  }
+
+  int getPoolSize() {
+    return workers.getCorePoolSize();
+  }
+
+  boolean isUsingVirtualThreads() {
+    return useVirtualThreads;
+  }
+
+  private class JobLifecycle implements MirrorJob.Lifecycle {
+
+    @Override
+    public boolean starting(MirrorJob job) {
+      if (!hostLimiter.tryAcquire(job)) {
+        LOG.debug("upstream host {} is saturated; parking mirror synchronization", job.getHost());
+        return false;
+      }
+      queueDepths.get(job.getJobClass()).decrementAndGet();
+      waitTimes.get(job.getJobClass()).record(System.nanoTime() - job.getEnqueuedAt(), TimeUnit.NANOSECONDS);
+      return true;
+    }
+
+    @Override
+    public void finished(MirrorJob job) {
+      MirrorJob next = hostLimiter.release(job);
+      if (next != null) {
+        submit(next);
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A mirror synchronization waiting for execution. Jobs are ordered by their deadline (see {@link MirrorJobClass}),
+ * jobs with the same deadline in the order they have been enqueued.
+ */
+class MirrorJob implements Runnable, Comparable<MirrorJob> {
+
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  private final MirrorJobClass jobClass;
+  private final String host;
+  private final Runnable runnable;
+  private final long enqueuedAt;
+  private final long deadline;
+  private final long sequence;
+  private final Lifecycle lifecycle;
+
+  /**
+   * @param host       upstream host of the synchronization, or {@code null} if it is not known
+   * @param enqueuedAt time of enqueueing in nanoseconds, as returned by {@link System#nanoTime()}
+   */
+  MirrorJob(MirrorJobClass jobClass, String host, Runnable runnable, long enqueuedAt, Lifecycle lifecycle) {
+    this.jobClass = jobClass;
+    this.host = host;
+    this.runnable = runnable;
+    this.enqueuedAt = enqueuedAt;
+    this.deadline = enqueuedAt + jobClass.getMaximumDeferral().toNanos();
+    this.sequence = SEQUENCE.getAndIncrement();
+    this.lifecycle = lifecycle;
+  }
+
+  MirrorJobClass getJobClass() {
+    return jobClass;
+  }
+
+  String getHost() {
+    return host;
+  }
+
+  long getEnqueuedAt() {
+    return enqueuedAt;
+  }
+
+  @Override
+  public void run() {
+    if (!lifecycle.starting(this)) {
+      return;
+    }
+    try {
+      runnable.run();
+    } finally {
+      lifecycle.finished(this);
+    }
+  }
+
+  @Override
+  public int compareTo(MirrorJob other) {
+    // compare the difference, because nano times may overflow
+    long difference = deadline - other.deadline;
+    if (difference != 0) {
+      return difference < 0 ? -1 : 1;
+    }
+    return Long.compare(sequence, other.sequence);
+  }
+
+  interface Lifecycle {
+
+    /**
+     * Called right before the job starts. If this returns {@code false}, the job is not run now; whoever declined
+     * the start is responsible to hand the job back for execution later.
+     */
+    boolean starting(MirrorJob job);
+
+    /**
+     * Called after the job has finished.
+     */
+    default void finished(MirrorJob job) {
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import java.time.Duration;
+
+/**
+ * Classes of mirror synchronizations. Waiting synchronizations are started in the order of their deadline, which is
+ * the time they have been enqueued plus the {@link #getMaximumDeferral() maximum deferral} of their class. So
+ * interactive synchronizations jump ahead of initial and periodic ones, but a periodic synchronization which has been
+ * waiting longer than its maximum deferral is no longer overtaken by newer jobs.
+ */
+enum MirrorJobClass {
+
+  /**
+   * Synchronizations triggered by a user or by a webhook.
+   */
+  INTERACTIVE(Duration.ZERO),
+  /**
+   * The first synchronization of a newly created mirror.
+   */
+  INITIAL(Duration.ofMinutes(1)),
+  /**
+   * Scheduled updates.
+   */
+  PERIODIC(Duration.ofMinutes(10));
+
+  private final Duration maximumDeferral;
+
+  MirrorJobClass(Duration maximumDeferral) {
+    this.maximumDeferral = maximumDeferral;
+  }
+
+  Duration getMaximumDeferral() {
+    return maximumDeferral;
+  }
+}
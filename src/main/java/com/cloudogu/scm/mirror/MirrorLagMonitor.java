@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.inject.Inject;
+import jakarta.inject.Provider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.EagerSingleton;
+import sonia.scm.plugin.Extension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Exports how far the mirrors lag behind their upstreams, measured as the time since the end of their latest
+ * successful synchronization (or since the start of their first synchronization, if none succeeded yet). Once a
+ * minute the lag of all scheduled mirrors is sampled, and gauges for the quantiles and the maximum of the current
+ * lags, for the number of mirrors lagging behind more than {@link #SLA_PERIODS} synchronization periods, and for the
+ * mirrors with the largest lag are replaced with the values of this sample. To keep the number of time series low, only {@link GlobalMirrorConfiguration#getMaximumLagGauges()}
+ * mirrors get such a gauge; gauges of mirrors which are no longer among them are removed.
+ */
+@EagerSingleton
+@Extension
+public class MirrorLagMonitor {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MirrorLagMonitor.class);
+
+  /**
+   * A mirror is over its service level, if it did not synchronize successfully for this many periods.
+   */
+  static final int SLA_PERIODS = 2;
+
+  private static final long SAMPLE_INTERVAL_SECONDS = 60;
+
+  private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+  private final Provider<MirrorService> mirrorService;
+  private final Provider<MirrorConfigurationStore> configurationStore;
+  private final MeterRegistry registry;
+  private final Clock clock;
+
+  /**
+   * Lag in seconds at the {@link #QUANTILES} of the latest sample, in the same order.
+   */
+  private final AtomicLong[] staleness = new AtomicLong[QUANTILES.length];
+  private final AtomicLong maximumStaleness = new AtomicLong();
+  private final AtomicInteger sampled = new AtomicInteger();
+  private final AtomicInteger overSla = new AtomicInteger();
+  /**
+   * Lag in seconds of the mirrors with a gauge of their own, by repository id.
+   */
+  private final Map<String, MirrorGauge> lagGauges = new HashMap<>();
+
+  @Inject
+  MirrorLagMonitor(Provider<MirrorService> mirrorService,
+                   Provider<MirrorConfigurationStore> configurationStore,
+                   TaskDecoratorFactory taskDecoratorFactory,
+                   MeterRegistry registry) {
+    this(
+      mirrorService,
+      configurationStore,
+      taskDecoratorFactory,
+      registry,
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("mirror-lag-%d").setDaemon(true).build()),
+      Clock.systemUTC()
+    );
+  }
+
+  @VisibleForTesting
+  MirrorLagMonitor(Provider<MirrorService> mirrorService,
+                   Provider<MirrorConfigurationStore> configurationStore,
+                   TaskDecoratorFactory taskDecoratorFactory,
+                   MeterRegistry registry,
+                   ScheduledExecutorService executor,
+                   Clock clock) {
+    this.mirrorService = mirrorService;
+    this.configurationStore = configurationStore;
+    this.registry = registry;
+    this.clock = clock;
+    for (int i = 0; i < QUANTILES.length; ++i) {
+      staleness[i] = new AtomicLong();
+      Gauge.builder("mirror.staleness", staleness[i], AtomicLong::get)
+        .description("Quantiles of the time since the latest successful synchronization of the scheduled mirrors")
+        .baseUnit("seconds")
+        .tag("quantile", Double.toString(QUANTILES[i]))
+        .register(registry);
+    }
+    Gauge.builder("mirror.staleness.max", maximumStaleness, AtomicLong::get)
+      .description("Largest time since the latest successful synchronization of the scheduled mirrors")
+      .baseUnit("seconds")
+      .register(registry);
+    Gauge.builder("mirror.staleness.mirrors", sampled, AtomicInteger::get)
+      .description("Number of scheduled mirrors in the latest lag sample")
+      .register(registry);
+    Gauge.builder("mirror.lag.sla.exceeded", overSla, AtomicInteger::get)
+      .description("Number of mirrors without successful synchronization for more than " + SLA_PERIODS + " periods")
+      .register(registry);
+    executor.scheduleWithFixedDelay(
+      taskDecoratorFactory.decorate(this::sample), SAMPLE_INTERVAL_SECONDS, SAMPLE_INTERVAL_SECONDS, TimeUnit.SECONDS
+    );
+  }
+
+  @VisibleForTesting
+  synchronized void sample() {
+    Instant now = clock.instant();
+    List<Lag> lags = mirrorService.get().getStatusSummaries()
+      .filter(summary -> !summary.isDisabled())
+      .map(summary -> lagOf(summary, now))
+      .filter(Objects::nonNull)
+      .collect(Collectors.toList());
+    updateStaleness(lags);
+    int exceeded = 0;
+    for (Lag lag : lags) {
+      if (lag.seconds > lag.period.multipliedBy(SLA_PERIODS).getSeconds()) {
+        ++exceeded;
+      }
+    }
+    overSla.set(exceeded);
+    updateGauges(lags, configurationStore.get().getGlobalConfiguration().getMaximumLagGauges());
+    LOG.trace("sampled lag of {} mirrors, {} over sla", lags.size(), exceeded);
+  }
+
+  private void updateStaleness(List<Lag> lags) {
+    long[] seconds = lags.stream().mapToLong(lag -> lag.seconds).sorted().toArray();
+    for (int i = 0; i < QUANTILES.length; ++i) {
+      staleness[i].set(quantile(seconds, QUANTILES[i]));
+    }
+    maximumStaleness.set(seconds.length == 0 ? 0 : seconds[seconds.length - 1]);
+    sampled.set(seconds.length);
+  }
+
+  /**
+   * Nearest rank quantile of the given sorted values, or 0 for no values.
+   */
+  @VisibleForTesting
+  static long quantile(long[] sorted, double quantile) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(quantile * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  private static Lag lagOf(MirrorStatusSummary summary, Instant now) {
+    MirrorStatus status = summary.getStatus();
+    if (status == null) {
+      return null;
+    }
+    Instant since = status.getLastSuccess() != null ? status.getLastSuccess() : status.getStarted();
+    if (since == null) {
+      return null;
+    }
+    long seconds = Math.max(0, Duration.between(since, now).getSeconds());
+    return new Lag(summary.getRepository().getId(), summary.getRepository().getNamespaceAndName().toString(), seconds, summary.getPeriod());
+  }
+
+  private void updateGauges(List<Lag> lags, int maximumGauges) {
+    Map<String, Lag> largest = lags.stream()
+      .sorted(Comparator.comparingLong((Lag lag) -> lag.seconds).reversed())
+      .limit(Math.max(0, maximumGauges))
+      .collect(Collectors.toMap(lag -> lag.repositoryId, lag -> lag));
+    lagGauges.entrySet().removeIf(entry -> {
+      if (largest.containsKey(entry.getKey())) {
+        return false;
+      }
+      registry.remove(entry.getValue().gauge);
+      return true;
+    });
+    largest.values().forEach(lag -> lagGauges
+      .computeIfAbsent(lag.repositoryId, id -> new MirrorGauge(lag.repository))
+      .seconds.set(lag.seconds));
+  }
+
+  private class MirrorGauge {
+    private final AtomicLong seconds = new AtomicLong();
+    private final Gauge gauge;
+
+    MirrorGauge(String repository) {
+      this.gauge = Gauge.builder("mirror.lag", seconds, AtomicLong::get)
+        .description("Time since the latest successful synchronization of the mirrors lagging behind the most")
+        .baseUnit("seconds")
+        .tag("repository", repository)
+        .register(registry);
+    }
+  }
+
+  private static class Lag {
+    private final String repositoryId;
+    private final String repository;
+    private final long seconds;
+    private final Duration period;
+
+    Lag(String repositoryId, String repository, long seconds, Duration period) {
+      this.repositoryId = repositoryId;
+      this.repository = repository;
+      this.seconds = seconds;
+      this.period = period;
+    }
+  }
+}
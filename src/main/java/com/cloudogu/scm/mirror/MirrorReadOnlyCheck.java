@@ -29,19 +29,18 @@ import sonia.scm.repository.api.HookFeature;
 import sonia.scm.security.Authentications;
 import sonia.scm.util.GlobUtil;
 
-import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Stream;
 
-import static java.util.Arrays.asList;
 import static sonia.scm.ContextEntry.ContextBuilder.entity;
 
 @Extension
 @Singleton
 class MirrorReadOnlyCheck implements ReadOnlyCheck {
 
-  private static final Collection<String> FORBIDDEN_PERMISSIONS = asList("push", "archive", "createPullRequest");
+  private static final Set<String> FORBIDDEN_PERMISSIONS = Set.of("push", "archive", "createPullRequest");
 
   private final MirrorConfigurationStore configurationStore;
 
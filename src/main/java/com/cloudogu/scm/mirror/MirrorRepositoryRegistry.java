@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import sonia.scm.store.DataStore;
+import sonia.scm.store.DataStoreFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent set of the ids of all repositories with a mirror configuration, so that the mirrors can be found at
+ * startup without opening the configuration store of every repository. The registry is built from the existing
+ * configurations once by {@link MirrorRepositoryRegistryUpdateStep} and afterwards kept in sync by the
+ * {@link MirrorConfigurationStore}. The ids are kept in a concurrent set, because every read only check of a
+ * repository asks the registry first.
+ */
+@Singleton
+class MirrorRepositoryRegistry {
+
+  private static final String STORE_NAME = "mirrorRepositories";
+
+  private final DataStore<RegisteredMirror> store;
+  private final Set<String> repositoryIds = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  MirrorRepositoryRegistry(DataStoreFactory storeFactory) {
+    this.store = storeFactory.withType(RegisteredMirror.class).withName(STORE_NAME).build();
+    this.repositoryIds.addAll(store.getAll().keySet());
+  }
+
+  void register(String repositoryId) {
+    if (repositoryIds.add(repositoryId)) {
+      store.put(repositoryId, new RegisteredMirror());
+    }
+  }
+
+  void unregister(String repositoryId) {
+    if (repositoryIds.remove(repositoryId)) {
+      store.remove(repositoryId);
+    }
+  }
+
+  boolean contains(String repositoryId) {
+    return repositoryIds.contains(repositoryId);
+  }
+
+  Set<String> getAll() {
+    return Set.copyOf(repositoryIds);
+  }
+
+  @XmlRootElement(name = "mirror")
+  @XmlAccessorType(XmlAccessType.FIELD)
+  static class RegisteredMirror {
+  }
+}
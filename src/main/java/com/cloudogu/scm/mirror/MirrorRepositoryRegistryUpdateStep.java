@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.migration.UpdateStep;
+import sonia.scm.plugin.Extension;
+import sonia.scm.store.ConfigurationStoreFactory;
+import sonia.scm.update.RepositoryUpdateIterator;
+import sonia.scm.version.Version;
+
+/**
+ * Builds the {@link MirrorRepositoryRegistry} from the mirror configurations of all existing repositories.
+ */
+@Extension
+class MirrorRepositoryRegistryUpdateStep implements UpdateStep {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MirrorRepositoryRegistryUpdateStep.class);
+
+  private final RepositoryUpdateIterator repositoryUpdateIterator;
+  private final ConfigurationStoreFactory storeFactory;
+  private final MirrorRepositoryRegistry registry;
+
+  @Inject
+  MirrorRepositoryRegistryUpdateStep(RepositoryUpdateIterator repositoryUpdateIterator, ConfigurationStoreFactory storeFactory, MirrorRepositoryRegistry registry) {
+    this.repositoryUpdateIterator = repositoryUpdateIterator;
+    this.storeFactory = storeFactory;
+    this.registry = registry;
+  }
+
+  @Override
+  public void doUpdate() {
+    repositoryUpdateIterator.forEachRepository(repositoryId -> {
+      boolean isMirror = storeFactory.withType(MirrorConfiguration.class)
+        .withName(MirrorConfigurationStore.STORE_NAME)
+        .forRepository(repositoryId)
+        .build()
+        .getOptional()
+        .isPresent();
+      if (isMirror) {
+        LOG.debug("registering mirror repository {}", repositoryId);
+        registry.register(repositoryId);
+      }
+    });
+  }
+
+  @Override
+  public Version getTargetVersion() {
+    return Version.parse("1.0.0");
+  }
+
+  @Override
+  public String getAffectedDataType() {
+    return "com.cloudogu.scm.mirror.registry";
+  }
+}
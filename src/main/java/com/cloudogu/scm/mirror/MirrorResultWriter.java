@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.event.ScmEventBus;
+import sonia.scm.notifications.Notification;
+import sonia.scm.notifications.NotificationSender;
+import sonia.scm.plugin.Extension;
+import sonia.scm.repository.Repository;
+import sonia.scm.repository.api.MirrorCommandResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persists the results of mirror synchronizations on a dedicated writer thread, so that workers can start the next
+ * synchronization right away. For every result the {@link MirrorSyncEvent} is posted (which writes the log and
+ * triggers the {@link MirrorStatusChangedHook}), the managing users are notified if the result changed, and the new
+ * status is stored. The snapshot of the {@link MirrorStatusStore} has already been updated by the worker, so the
+ * previous status is passed along with the result. Results are written in batches of at most
+ * {@link #MAXIMUM_BATCH_SIZE} in the order they have been submitted, so the results of one repository are never
+ * reordered. Only the latest status of a repository in a batch is stored, because it replaces the ones before. Pending
+ * results are flushed on shutdown.
+ */
+@Extension
+@Singleton
+@SuppressWarnings("UnstableApiUsage")
+public class MirrorResultWriter implements ServletContextListener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MirrorResultWriter.class);
+
+  static final int MAXIMUM_BATCH_SIZE = 100;
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+  private final MirrorStatusStore statusStore;
+  private final NotificationSender notificationSender;
+  private final ScmEventBus eventBus;
+  private final TaskDecoratorFactory taskDecoratorFactory;
+  private final ExecutorService writer;
+  private final DistributionSummary batchSizes;
+
+  private final BlockingQueue<PendingResult> queue = new LinkedBlockingQueue<>();
+  private final AtomicBoolean drainScheduled = new AtomicBoolean();
+  private volatile boolean shutdown = false;
+
+  @Inject
+  MirrorResultWriter(MirrorStatusStore statusStore,
+                     NotificationSender notificationSender,
+                     ScmEventBus eventBus,
+                     TaskDecoratorFactory taskDecoratorFactory,
+                     MeterRegistry registry) {
+    this(
+      statusStore,
+      notificationSender,
+      eventBus,
+      taskDecoratorFactory,
+      registry,
+      Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("mirror-result-writer-%d").setDaemon(true).build()
+      )
+    );
+  }
+
+  @VisibleForTesting
+  MirrorResultWriter(MirrorStatusStore statusStore,
+                     NotificationSender notificationSender,
+                     ScmEventBus eventBus,
+                     TaskDecoratorFactory taskDecoratorFactory,
+                     MeterRegistry registry,
+                     ExecutorService writer) {
+    this.statusStore = statusStore;
+    this.notificationSender = notificationSender;
+    this.eventBus = eventBus;
+    this.taskDecoratorFactory = taskDecoratorFactory;
+    this.writer = writer;
+    Gauge.builder("mirror.results.pending", queue, BlockingQueue::size)
+      .description("Number of synchronization results waiting to be persisted")
+      .register(registry);
+    this.batchSizes = DistributionSummary.builder("mirror.results.batch")
+      .description("Number of synchronization results persisted in one batch, storing one status per repository")
+      .register(registry);
+  }
+
+  /**
+   * Enqueues the result of a synchronization. After shutdown, the result is written synchronously.
+   *
+   * @param previousStatus status of the synchronization before, or {@code null} if there is none
+   * @param phases         durations of the phases of the synchronization
+   */
+  void write(Repository repository, MirrorConfiguration configuration, MirrorCommandResult result, MirrorStatus previousStatus, MirrorStatus status, Map<SynchronizationPhase, Duration> phases) {
+    queue.add(new PendingResult(repository, configuration, result, previousStatus, status, phases));
+    if (shutdown) {
+      flush();
+    } else {
+      scheduleDrain();
+    }
+  }
+
+  private void scheduleDrain() {
+    if (drainScheduled.compareAndSet(false, true)) {
+      try {
+        writer.execute(taskDecoratorFactory.decorate(this::drain));
+      } catch (RejectedExecutionException e) {
+        // the writer has been shut down after the check in write
+        drainScheduled.set(false);
+        flush();
+      }
+    }
+  }
+
+  private void drain() {
+    try {
+      writeBatch();
+    } finally {
+      drainScheduled.set(false);
+    }
+    // results enqueued while the batch was written did not schedule a drain of their own
+    if (!queue.isEmpty() && !shutdown) {
+      scheduleDrain();
+    }
+  }
+
+  /**
+   * Writes all pending results on the calling thread.
+   */
+  void flush() {
+    taskDecoratorFactory.decorate(() -> {
+      while (!queue.isEmpty()) {
+        writeBatch();
+      }
+    }).run();
+  }
+
+  /**
+   * Drops the pending results of the given repository, because it is no longer a mirror. A batch which is written at
+   * the moment is finished first, so that no status of the repository is stored afterwards.
+   */
+  synchronized void discard(String repositoryId) {
+    if (queue.removeIf(pending -> repositoryId.equals(pending.repository.getId()))) {
+      LOG.debug("discarded pending results of mirror {}", repositoryId);
+    }
+  }
+
+  private synchronized void writeBatch() {
+    List<PendingResult> batch = new ArrayList<>(MAXIMUM_BATCH_SIZE);
+    queue.drainTo(batch, MAXIMUM_BATCH_SIZE);
+    if (batch.isEmpty()) {
+      return;
+    }
+    LOG.trace("persisting {} mirror results", batch.size());
+    batchSizes.record(batch.size());
+    Map<String, PendingResult> latestResults = new LinkedHashMap<>();
+    for (PendingResult pending : batch) {
+      try {
+        eventBus.post(new MirrorSyncEvent(pending.repository, pending.result, pending.status, pending.previousStatus, pending.phases));
+        sendNotificationWhenChanged(pending);
+      } catch (Exception e) {
+        LOG.error("failed to persist result of mirror {}", pending.repository, e);
+      }
+      latestResults.put(pending.repository.getId(), pending);
+    }
+    for (PendingResult pending : latestResults.values()) {
+      try {
+        statusStore.persist(pending.repository, pending.status);
+      } catch (Exception e) {
+        LOG.error("failed to persist status of mirror {}", pending.repository, e);
+      }
+    }
+  }
+
+  private void sendNotificationWhenChanged(PendingResult pending) {
+    MirrorStatus.Result previousResult = pending.previousStatus == null ? null : pending.previousStatus.getResult();
+    MirrorStatus.Result result = pending.status.getResult();
+    if (previousResult != result) {
+      for (String user : pending.configuration.getManagingUsers()) {
+        notificationSender.send(buildNotification(pending.repository, result), user);
+      }
+    }
+  }
+
+  private Notification buildNotification(Repository repository, MirrorStatus.Result status) {
+    return new Notification(status.getNotificationType(), "/repo/" + repository.getNamespaceAndName() + "/mirror-logs", status.getNotificationKey());
+  }
+
+  /**
+   * Stops the writer thread and writes all results still pending.
+   */
+  void shutdown() {
+    shutdown = true;
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOG.warn("mirror result writer did not finish in time");
+      }
+    } catch (InterruptedException e) {
+      LOG.warn("interrupted while waiting for mirror result writer");
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  @Override
+  public void contextInitialized(ServletContextEvent sce) {
+    // nothing to do
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    LOG.info("flushing {} pending mirror results", queue.size());
+    shutdown();
+  }
+
+  private static class PendingResult {
+    private final Repository repository;
+    private final MirrorConfiguration configuration;
+    private final MirrorCommandResult result;
+    private final MirrorStatus previousStatus;
+    private final MirrorStatus status;
+    private final Map<SynchronizationPhase, Duration> phases;
+
+    PendingResult(Repository repository, MirrorConfiguration configuration, MirrorCommandResult result, MirrorStatus previousStatus, MirrorStatus status, Map<SynchronizationPhase, Duration> phases) {
+      this.repository = repository;
+      this.configuration = configuration;
+      this.result = result;
+      this.previousStatus = previousStatus;
+      this.status = status;
+      this.phases = phases;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import sonia.scm.store.DataStore;
+import sonia.scm.store.DataStoreFactory;
+import sonia.scm.xml.XmlInstantAdapter;
+
+import jakarta.annotation.Nullable;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Persists the schedule of each mirror, so that a restart of the server does not trigger a synchronization of
+ * mirrors which are not due yet.
+ */
+@Singleton
+class MirrorScheduleStore {
+
+  private static final String STORE_NAME = "mirrorSchedule";
+
+  private final DataStore<ScheduleState> store;
+
+  @Inject
+  MirrorScheduleStore(DataStoreFactory storeFactory) {
+    this.store = storeFactory.withType(ScheduleState.class).withName(STORE_NAME).build();
+  }
+
+  void set(String repositoryId, ScheduleState state) {
+    store.put(repositoryId, state);
+  }
+
+  Optional<ScheduleState> get(String repositoryId) {
+    return store.getOptional(repositoryId);
+  }
+
+  Map<String, ScheduleState> getAll() {
+    return store.getAll();
+  }
+
+  void remove(String repositoryId) {
+    store.remove(repositoryId);
+  }
+
+  @Getter
+  @EqualsAndHashCode
+  @NoArgsConstructor(access = AccessLevel.PRIVATE)
+  @XmlRootElement(name = "mirror-schedule")
+  @XmlAccessorType(XmlAccessType.FIELD)
+  public static class ScheduleState {
+
+    @Nullable
+    @XmlJavaTypeAdapter(XmlInstantAdapter.class)
+    private Instant lastCompleted;
+    @XmlJavaTypeAdapter(XmlInstantAdapter.class)
+    private Instant nextDue;
+    private int consecutiveFailures;
+    /**
+     * The adapted synchronization period in seconds, or 0 if the period is not adapted.
+     */
+    private long adaptivePeriodSeconds;
+
+    ScheduleState(@Nullable Instant lastCompleted, Instant nextDue) {
+      this(lastCompleted, nextDue, 0);
+    }
+
+    ScheduleState(@Nullable Instant lastCompleted, Instant nextDue, int consecutiveFailures) {
+      this(lastCompleted, nextDue, consecutiveFailures, null);
+    }
+
+    ScheduleState(@Nullable Instant lastCompleted, Instant nextDue, int consecutiveFailures, @Nullable Duration adaptivePeriod) {
+      this.lastCompleted = lastCompleted;
+      this.nextDue = nextDue;
+      this.consecutiveFailures = consecutiveFailures;
+      this.adaptivePeriodSeconds = adaptivePeriod == null ? 0 : adaptivePeriod.getSeconds();
+    }
+
+    @Nullable
+    Duration getAdaptivePeriod() {
+      return adaptivePeriodSeconds > 0 ? Duration.ofSeconds(adaptivePeriodSeconds) : null;
+    }
+  }
+}
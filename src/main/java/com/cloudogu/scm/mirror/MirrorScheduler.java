@@ -16,39 +16,271 @@
 
 package com.cloudogu.scm.mirror;
 
+import com.cloudogu.scm.mirror.MirrorScheduleStore.ScheduleState;
+import com.google.common.hash.Hashing;
 import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import sonia.scm.repository.Repository;
 
 import jakarta.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Singleton
 class MirrorScheduler  {
 
+  private static final Logger LOG = LoggerFactory.getLogger(MirrorScheduler.class);
+
+  /**
+   * No mirror will be synchronized earlier than this after a start of the server.
+   */
+  private static final Duration STARTUP_GRACE_PERIOD = Duration.ofMinutes(1);
+  /**
+   * Mirrors which became due while the server was down, are synchronized within this time after the start.
+   */
+  private static final Duration OVERDUE_SPREAD = Duration.ofMinutes(10);
+  /**
+   * The interval of a failing mirror is doubled for every further failure, but it does not grow beyond this (or the
+   * synchronization period, if this is longer).
+   */
+  static final Duration MAXIMUM_BACKOFF = Duration.ofDays(1);
+
   private final MirrorWorker worker;
+  private final MirrorScheduleStore scheduleStore;
+  private final MirrorStatusStore statusStore;
+  private final MirrorResultWriter resultWriter;
+  private final UpstreamCircuitBreaker circuitBreaker;
+
+  private final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
 
-  private final Map<String, MirrorWorker.CancelableSchedule> schedules = new ConcurrentHashMap<>();
+  private volatile AdaptiveSchedulingPolicy adaptivePolicy = AdaptiveSchedulingPolicy.DISABLED;
 
   @Inject
-  MirrorScheduler(MirrorWorker worker) {
+  MirrorScheduler(MirrorWorker worker, MirrorScheduleStore scheduleStore, MirrorStatusStore statusStore, MirrorResultWriter resultWriter, UpstreamCircuitBreaker circuitBreaker) {
     this.worker = worker;
+    this.scheduleStore = scheduleStore;
+    this.statusStore = statusStore;
+    this.resultWriter = resultWriter;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+  /**
+   * Schedules the mirror after a start of the server. Mirrors which are not due yet, are scheduled for their
+   * persisted due time. To prevent all other mirrors from being synchronized at the same time, their first
+   * synchronization is delayed by an offset. The offset is derived from the repository id, so that it is stable
+   * over restarts. The status of the mirror is read into the snapshot of the {@link MirrorStatusStore}. The stores
+   * are accessed without holding the lock of the scheduler, so that the mirrors can be scheduled by several threads,
+   * and a persisted schedule is only written again, if it has changed.
+   */
+  void scheduleAtStartup(Repository repository, MirrorConfiguration configuration) {
+    statusStore.preload(repository);
+    Instant now = Instant.now();
+    Optional<ScheduleState> persistedState = scheduleStore.get(repository.getId());
+    Optional<ScheduleState> state = persistedState.isPresent() ? persistedState : deriveState(repository, configuration);
+    Duration adaptivePeriod = state.map(ScheduleState::getAdaptivePeriod).orElse(null);
+    Duration period = adaptivePolicy.effectivePeriod(configuredPeriod(configuration), adaptivePeriod);
+    Optional<Instant> nextDue = state.map(ScheduleState::getNextDue);
+    Instant startupDue;
+    if (nextDue.isPresent() && nextDue.get().isAfter(now.plus(STARTUP_GRACE_PERIOD))) {
+      LOG.debug("mirror {} is not due until {}", repository, nextDue.get());
+      startupDue = nextDue.get();
+    } else if (nextDue.isPresent()) {
+      Duration spread = period.compareTo(OVERDUE_SPREAD) < 0 ? period : OVERDUE_SPREAD;
+      startupDue = now.plus(STARTUP_GRACE_PERIOD).plus(startupOffset(repository.getId(), spread));
+    } else {
+      startupDue = now.plus(STARTUP_GRACE_PERIOD).plus(startupOffset(repository.getId(), period));
+    }
+    ScheduleState startupState = new ScheduleState(
+      state.map(ScheduleState::getLastCompleted).orElse(null),
+      startupDue,
+      state.map(ScheduleState::getConsecutiveFailures).orElse(0),
+      adaptivePolicy.isEnabled() ? adaptivePeriod : null
+    );
+    Optional<Schedule> schedule = registerAtStartup(repository, configuration, startupState);
+    if (schedule.isPresent() && !persistedState.map(startupState::equals).orElse(false)) {
+      persist(repository.getId(), schedule.get());
+    }
   }
 
-  void scheduleNow(Repository repository, MirrorConfiguration configuration) {
-    schedule(repository, configuration, 5);
+  private synchronized Optional<Schedule> registerAtStartup(Repository repository, MirrorConfiguration configuration, ScheduleState state) {
+    if (schedules.containsKey(repository.getId())) {
+      LOG.debug("mirror {} has been scheduled with a changed configuration in the meantime", repository);
+      return Optional.empty();
+    }
+    return Optional.of(register(repository, configuration, state));
   }
 
+  /**
+   * Schedules the mirror with a new or changed configuration. A previous backoff due to failures and a previously
+   * adapted period are reset.
+   */
   void schedule(Repository repository, MirrorConfiguration configuration) {
-    schedule(repository, configuration, configuration.getSynchronizationPeriod());
+    Instant lastCompleted = scheduleStore.get(repository.getId()).map(ScheduleState::getLastCompleted).orElse(null);
+    Duration period = adaptivePolicy.effectivePeriod(configuredPeriod(configuration), null);
+    Schedule schedule = register(repository, configuration, new ScheduleState(lastCompleted, Instant.now().plus(period)));
+    persist(repository.getId(), schedule);
+  }
+
+  void configure(GlobalMirrorConfiguration configuration) {
+    worker.configure(configuration);
+    adaptivePolicy = AdaptiveSchedulingPolicy.of(configuration);
+  }
+
+  synchronized void cancel(Repository repository) {
+    cancelSchedule(repository);
+    scheduleStore.remove(repository.getId());
+    // pending results would read the old status back into the snapshot and store a status for the removed mirror
+    resultWriter.discard(repository.getId());
+    statusStore.forget(repository.getId());
+  }
+
+  /**
+   * Returns the time of the next planned synchronization for the given repository, if it is scheduled.
+   */
+  Optional<Instant> getNextRun(String repositoryId) {
+    return Optional.ofNullable(schedules.get(repositoryId)).map(schedule -> schedule.state.getNextDue());
+  }
+
+  /**
+   * Returns the number of failed synchronizations in a row for the given repository.
+   */
+  int getConsecutiveFailures(String repositoryId) {
+    return Optional.ofNullable(schedules.get(repositoryId)).map(schedule -> schedule.state.getConsecutiveFailures()).orElse(0);
+  }
+
+  /**
+   * Returns the adapted synchronization period for the given repository, if adaptive scheduling is enabled.
+   */
+  Optional<Duration> getAdaptivePeriod(String repositoryId) {
+    return Optional.ofNullable(schedules.get(repositoryId)).map(schedule -> schedule.state.getAdaptivePeriod());
+  }
+
+  /**
+   * Returns the interval until the next synchronization after the given number of failures in a row.
+   */
+  static Duration backoff(Duration period, int consecutiveFailures) {
+    if (consecutiveFailures <= 1) {
+      return period;
+    }
+    Duration maximum = period.compareTo(MAXIMUM_BACKOFF) > 0 ? period : MAXIMUM_BACKOFF;
+    Duration backoff = period.multipliedBy(1L << Math.min(consecutiveFailures - 1, 20));
+    return backoff.compareTo(maximum) > 0 ? maximum : backoff;
   }
 
-  void cancel(Repository repository) {
-    schedules.getOrDefault(repository.getId(), () -> {}).cancel();
+  static Duration startupOffset(String repositoryId, Duration spread) {
+    long hash = Hashing.murmur3_128().hashString(repositoryId, StandardCharsets.UTF_8).asLong();
+    return Duration.ofSeconds(Math.floorMod(hash, Math.max(1, spread.getSeconds())));
   }
 
-  private void schedule(Repository repository, MirrorConfiguration configuration, int delay) {
-    cancel(repository);
-    schedules.put(repository.getId(), worker.scheduleUpdate(repository, configuration, delay));
+  private Optional<ScheduleState> deriveState(Repository repository, MirrorConfiguration configuration) {
+    // there is no persisted schedule yet, so we derive it from the end of the last synchronization
+    MirrorStatus status = statusStore.getStatus(repository);
+    if (status != null && status.getEnded() != null) {
+      Instant nextDue = status.getEnded().plus(Duration.ofMinutes(configuration.getSynchronizationPeriod()));
+      return Optional.of(new ScheduleState(status.getEnded(), nextDue));
+    }
+    return Optional.empty();
+  }
+
+  private synchronized Schedule register(Repository repository, MirrorConfiguration configuration, ScheduleState state) {
+    cancelSchedule(repository);
+    LOG.debug("next synchronization of mirror {} planned at {}", repository, state.getNextDue());
+    Schedule schedule = new Schedule(state);
+    schedules.put(repository.getId(), schedule);
+    Duration delay = Duration.between(Instant.now(), state.getNextDue());
+    schedule.cancelable = worker.scheduleUpdate(
+      repository,
+      configuration,
+      delay.isNegative() ? Duration.ZERO : delay,
+      status -> completed(repository, configuration, schedule, status)
+    );
+    return schedule;
+  }
+
+  /**
+   * Writes the state of the given schedule to the store, unless the schedule has been replaced or cancelled. The
+   * state is written while holding the entry of the repository in the map of schedules, so that an outdated schedule
+   * cannot overwrite the state of a newer one and the lock of the scheduler is not needed.
+   */
+  private void persist(String repositoryId, Schedule schedule) {
+    schedules.computeIfPresent(repositoryId, (id, current) -> {
+      if (current == schedule) {
+        scheduleStore.set(id, schedule.state);
+      }
+      return current;
+    });
+  }
+
+  private void completed(Repository repository, MirrorConfiguration configuration, Schedule schedule, MirrorStatus status) {
+    try {
+      reschedule(repository, configuration, schedule, status)
+        .ifPresent(nextSchedule -> persist(repository.getId(), nextSchedule));
+    } catch (Exception e) {
+      LOG.error("failed to reschedule mirror {}", repository, e);
+    }
+  }
+
+  private synchronized Optional<Schedule> reschedule(Repository repository, MirrorConfiguration configuration, Schedule schedule, MirrorStatus status) {
+    if (schedules.get(repository.getId()) != schedule) {
+      LOG.debug("schedule for mirror {} has been replaced or cancelled; not rescheduling", repository);
+      return Optional.empty();
+    }
+    Instant now = Instant.now();
+    Duration currentPeriod = adaptivePolicy.effectivePeriod(configuredPeriod(configuration), schedule.state.getAdaptivePeriod());
+    Duration period = adaptivePolicy.adapt(configuredPeriod(configuration), currentPeriod, status);
+    if (!period.equals(currentPeriod)) {
+      LOG.debug("adapted synchronization period of mirror {} to {} minutes", repository, period.toMinutes());
+    }
+    int consecutiveFailures = countFailures(schedule.state.getConsecutiveFailures(), status);
+    Instant nextDue;
+    if (status != null && consecutiveFailures > 0) {
+      Duration backoff = backoff(period, consecutiveFailures);
+      LOG.info("synchronization of mirror {} failed {} times in a row; next try in {} minutes", repository, consecutiveFailures, backoff.toMinutes());
+      nextDue = now.plus(backoff);
+    } else {
+      nextDue = schedule.state.getNextDue().plus(period);
+      if (nextDue.isBefore(now)) {
+        nextDue = now;
+      }
+    }
+    Optional<Instant> circuitOpenUntil = circuitBreaker.getOpenUntil(configuration.getUrl());
+    if (circuitOpenUntil.isPresent() && circuitOpenUntil.get().isAfter(nextDue)) {
+      nextDue = circuitOpenUntil.get();
+    }
+    Instant lastCompleted = status != null ? status.getEnded() : schedule.state.getLastCompleted();
+    return Optional.of(register(repository, configuration, new ScheduleState(lastCompleted, nextDue, consecutiveFailures, adaptivePolicy.isEnabled() ? period : null)));
+  }
+
+  private static Duration configuredPeriod(MirrorConfiguration configuration) {
+    return Duration.ofMinutes(configuration.getSynchronizationPeriod());
+  }
+
+  private static int countFailures(int previousFailures, MirrorStatus status) {
+    if (status == null) {
+      // the synchronization has been skipped
+      return previousFailures;
+    }
+    return status.getResult() == MirrorStatus.Result.FAILED ? previousFailures + 1 : 0;
+  }
+
+  private void cancelSchedule(Repository repository) {
+    Schedule schedule = schedules.remove(repository.getId());
+    if (schedule != null && schedule.cancelable != null) {
+      schedule.cancelable.cancel();
+    }
+  }
+
+  private static class Schedule {
+    private final ScheduleState state;
+    private volatile MirrorWorker.CancelableSchedule cancelable;
+
+    Schedule(ScheduleState state) {
+      this.state = state;
+    }
   }
 }
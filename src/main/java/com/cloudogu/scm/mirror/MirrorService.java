@@ -30,8 +30,14 @@ import sonia.scm.repository.api.Command;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static java.util.Collections.singletonList;
 import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
@@ -44,14 +50,26 @@ public class MirrorService {
   private final RepositoryManager manager;
   private final MirrorConfigurationStore configurationStore;
   private final MirrorWorker mirrorWorker;
+  private final MirrorScheduler scheduler;
+  private final UpstreamCircuitBreaker circuitBreaker;
+  private final MirrorRepositoryRegistry mirrorRepositories;
+  private final MirrorStatusStore statusStore;
 
   @Inject
   MirrorService(RepositoryManager manager,
                 MirrorConfigurationStore configurationStore,
-                MirrorWorker mirrorWorker) {
+                MirrorWorker mirrorWorker,
+                MirrorScheduler scheduler,
+                UpstreamCircuitBreaker circuitBreaker,
+                MirrorRepositoryRegistry mirrorRepositories,
+                MirrorStatusStore statusStore) {
     this.manager = manager;
     this.mirrorWorker = mirrorWorker;
     this.configurationStore = configurationStore;
+    this.scheduler = scheduler;
+    this.circuitBreaker = circuitBreaker;
+    this.mirrorRepositories = mirrorRepositories;
+    this.statusStore = statusStore;
   }
 
   public Repository createMirror(MirrorConfiguration configuration, Repository repository) {
@@ -85,6 +103,62 @@ public class MirrorService {
     configurationStore.deleteConfiguration(repository);
   }
 
+  /**
+   * Returns the time of the next planned synchronization for the given mirror, if it is scheduled.
+   */
+  public Optional<Instant> getNextSynchronization(Repository repository) {
+    return scheduler.getNextRun(repository.getId());
+  }
+
+  /**
+   * Returns the number of failed synchronizations in a row for the given mirror. The synchronization period is
+   * stretched accordingly.
+   */
+  public int getConsecutiveFailures(Repository repository) {
+    return scheduler.getConsecutiveFailures(repository.getId());
+  }
+
+  /**
+   * Returns the time until scheduled synchronizations are skipped, because synchronizations against the upstream of
+   * the mirror failed repeatedly.
+   */
+  public Optional<Instant> getCircuitOpenUntil(Repository repository, MirrorConfiguration configuration) {
+    return circuitBreaker.getOpenUntil(configuration.getUrl());
+  }
+
+  /**
+   * Returns the status of all mirrors the current user may read, ordered by namespace and name. Everything is taken
+   * from memory: the repositories from the {@link MirrorRepositoryRegistry}, the configurations from the cache of the
+   * {@link MirrorConfigurationStore}, the status from the snapshot of the {@link MirrorStatusStore} and the schedule
+   * from the {@link MirrorScheduler}. The summaries are created lazily, while the stream is consumed, so that they can
+   * be written one by one.
+   */
+  public Stream<MirrorStatusSummary> getStatusSummaries() {
+    Collection<Repository> mirrors = manager.getAll(
+      repository -> mirrorRepositories.contains(repository.getId()),
+      Comparator.comparing(Repository::getNamespace).thenComparing(Repository::getName)
+    );
+    return mirrors.stream()
+      .map(this::summarize)
+      .flatMap(Optional::stream);
+  }
+
+  private Optional<MirrorStatusSummary> summarize(Repository repository) {
+    return configurationStore.getConfiguration(repository).map(configuration -> {
+      Duration period = null;
+      if (configuration.getSynchronizationPeriod() != null) {
+        period = scheduler.getAdaptivePeriod(repository.getId())
+          .orElse(Duration.ofMinutes(configuration.getSynchronizationPeriod()));
+      }
+      return new MirrorStatusSummary(
+        repository,
+        statusStore.getStatus(repository),
+        period,
+        scheduler.getNextRun(repository.getId()).orElse(null)
+      );
+    });
+  }
+
   private Consumer<Repository> createMirrorCallback(MirrorConfiguration configuration) {
     return repository -> {
       LOG.info("created new repository {} as mirror; initializing", repository);
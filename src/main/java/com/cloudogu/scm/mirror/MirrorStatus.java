@@ -45,6 +45,16 @@ public class MirrorStatus {
   @Nullable
   @XmlJavaTypeAdapter(XmlInstantAdapter.class)
   private Instant ended;
+  /**
+   * Number of branch and tag updates taken over from upstream.
+   */
+  private int acceptedUpdates;
+  /**
+   * End of the latest successful synchronization, which may be this one.
+   */
+  @Nullable
+  @XmlJavaTypeAdapter(XmlInstantAdapter.class)
+  private Instant lastSuccess;
 
   public MirrorStatus(Result result) {
     this.result = result;
@@ -61,12 +71,45 @@ public class MirrorStatus {
     return withBaseValues(status, startTime);
   }
 
+  static MirrorStatus create(Result type, Instant startTime, int acceptedUpdates) {
+    MirrorStatus status = create(type, startTime);
+    status.acceptedUpdates = acceptedUpdates;
+    return status;
+  }
+
+  /**
+   * Creates the status of a synchronization, which takes over the time of the latest successful synchronization from
+   * the given previous status, unless this synchronization is successful itself.
+   */
+  static MirrorStatus create(Result type, Instant startTime, int acceptedUpdates, @Nullable MirrorStatus previous) {
+    MirrorStatus status = create(type, startTime, acceptedUpdates);
+    if (type != Result.SUCCESS && previous != null) {
+      status.lastSuccess = previous.getLastSuccess();
+    }
+    return status;
+  }
+
   private static MirrorStatus withBaseValues(MirrorStatus status, Instant startTime) {
     status.started = startTime;
     status.ended = Instant.now();
+    if (status.result == Result.SUCCESS) {
+      status.lastSuccess = status.ended;
+    }
     return status;
   }
 
+  /**
+   * Returns the end of the latest successful synchronization, or {@code null} if there has been none. For a status
+   * stored before this has been recorded, only the end of a successful synchronization itself is known.
+   */
+  @Nullable
+  public Instant getLastSuccess() {
+    if (lastSuccess == null && result == Result.SUCCESS) {
+      return ended;
+    }
+    return lastSuccess;
+  }
+
   public enum Result {
     SUCCESS("mirrorSuccess", Type.SUCCESS, "com/cloudogu/mail/emailnotification/mirror_success.mustache", "mirrorSuccess"),
     FAILED_UPDATES("mirrorUpdatesRejected", Type.WARNING, "com/cloudogu/mail/emailnotification/mirror_rejected_updates.mustache", "mirrorRejectedUpdates"),
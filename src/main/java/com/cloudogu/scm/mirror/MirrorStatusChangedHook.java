@@ -27,20 +27,22 @@ import jakarta.inject.Inject;
 @Extension
 public class MirrorStatusChangedHook {
 
-  private final MirrorStatusStore mirrorStatusStore;
   private final ScmEventBus scmEventBus;
 
   @Inject
-  public MirrorStatusChangedHook(MirrorStatusStore mirrorStatusStore, ScmEventBus scmEventBus) {
-    this.mirrorStatusStore = mirrorStatusStore;
+  public MirrorStatusChangedHook(ScmEventBus scmEventBus) {
     this.scmEventBus = scmEventBus;
   }
 
 
+  /**
+   * Compares the result with the previous status of the event. The snapshot of the {@link MirrorStatusStore} already
+   * holds the new status at this point, so an event without previous status is the first result of the mirror.
+   */
   @Subscribe(async = false)
   public void handleEvent(MirrorSyncEvent event) {
-    MirrorStatus status = mirrorStatusStore.getStatus(event.getRepository());
-    MirrorStatus.Result previousResult = status.getResult();
+    MirrorStatus status = event.getPreviousStatus();
+    MirrorStatus.Result previousResult = status == null ? null : status.getResult();
     MirrorStatus.Result newResult = event.getStatus().getResult();
     if (previousResult != newResult) {
       scmEventBus.post(new MirrorStatusChangedEvent(event.getRepository(), previousResult, newResult));
@@ -16,17 +16,30 @@
 
 package com.cloudogu.scm.mirror;
 
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
 import sonia.scm.repository.Repository;
 import sonia.scm.store.DataStore;
 import sonia.scm.store.DataStoreFactory;
 
-import jakarta.inject.Inject;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Stores the status of the latest synchronization of each mirror. The latest status of every mirror is kept in memory,
+ * so that lists of repositories can be enriched without reading a store per repository. The snapshot is filled when the
+ * mirrors are scheduled at startup (or on first access) and updated as soon as a synchronization has finished, while
+ * the status is written to the store in the background (see {@link MirrorResultWriter}). Mirrors which have not been
+ * synchronized yet are kept as empty optionals, so that their store is not read again on every access.
+ */
+@Singleton
 public class MirrorStatusStore {
 
   private static final String STORE_ID = "status";
 
   private final DataStoreFactory storeFactory;
+  private final Map<String, Optional<MirrorStatus>> snapshot = new ConcurrentHashMap<>();
 
   @Inject
   MirrorStatusStore(DataStoreFactory storeFactory) {
@@ -34,11 +47,40 @@ public class MirrorStatusStore {
   }
 
   void setStatus(Repository repository, MirrorStatus status) {
+    snapshot.put(repository.getId(), Optional.ofNullable(status));
+    persist(repository, status);
+  }
+
+  /**
+   * Updates the snapshot with the given status without writing it to the store, and returns the status it replaced.
+   * The new status has to be {@link #persist(Repository, MirrorStatus) persisted} afterwards.
+   */
+  MirrorStatus update(Repository repository, MirrorStatus status) {
+    MirrorStatus previous = getStatus(repository);
+    snapshot.put(repository.getId(), Optional.ofNullable(status));
+    return previous;
+  }
+
+  void persist(Repository repository, MirrorStatus status) {
     createStore(repository).put(STORE_ID, status);
   }
 
+  /**
+   * Reads the status of the given mirror into the snapshot, unless it is already there.
+   */
+  void preload(Repository repository) {
+    getStatus(repository);
+  }
+
+  /**
+   * Removes the given repository from the snapshot.
+   */
+  void forget(String repositoryId) {
+    snapshot.remove(repositoryId);
+  }
+
   public MirrorStatus getStatus(Repository repository) {
-    return createStore(repository).get(STORE_ID);
+    return snapshot.computeIfAbsent(repository.getId(), id -> createStore(repository).getOptional(STORE_ID)).orElse(null);
   }
 
   private DataStore<MirrorStatus> createStore(Repository repository) {
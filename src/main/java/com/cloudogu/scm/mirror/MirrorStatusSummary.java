@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import jakarta.annotation.Nullable;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import sonia.scm.repository.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Status of a mirror as kept in memory, see {@link MirrorService#getStatusSummaries()}.
+ */
+@Getter
+@AllArgsConstructor
+public class MirrorStatusSummary {
+
+  private final Repository repository;
+  /**
+   * Status of the latest synchronization, or {@code null} if there is none.
+   */
+  @Nullable
+  private final MirrorStatus status;
+  /**
+   * Current synchronization period, which may differ from the configured one with adaptive synchronization, or
+   * {@code null} if periodic synchronization is disabled.
+   */
+  @Nullable
+  private final Duration period;
+  @Nullable
+  private final Instant nextSynchronization;
+
+  public boolean isDisabled() {
+    return period == null;
+  }
+}
@@ -21,6 +21,11 @@ import sonia.scm.event.Event;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.api.MirrorCommandResult;
 
+import java.time.Duration;
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+
 @Event
 @Getter
 @SuppressWarnings("UnstableApiUsage")
@@ -29,10 +34,28 @@ public class MirrorSyncEvent {
   private final Repository repository;
   private final MirrorCommandResult result;
   private final MirrorStatus status;
+  /**
+   * Status of the synchronization before this one, or {@code null} if it is not known.
+   */
+  private final MirrorStatus previousStatus;
+  /**
+   * Durations of the phases of the synchronization; phases, which have not been reached, are missing.
+   */
+  private final Map<SynchronizationPhase, Duration> phases;
 
   public MirrorSyncEvent(Repository repository, MirrorCommandResult result, MirrorStatus status) {
+    this(repository, result, status, null);
+  }
+
+  public MirrorSyncEvent(Repository repository, MirrorCommandResult result, MirrorStatus status, MirrorStatus previousStatus) {
+    this(repository, result, status, previousStatus, emptyMap());
+  }
+
+  public MirrorSyncEvent(Repository repository, MirrorCommandResult result, MirrorStatus status, MirrorStatus previousStatus, Map<SynchronizationPhase, Duration> phases) {
     this.repository = repository;
     this.result = result;
     this.status = status;
+    this.previousStatus = previousStatus;
+    this.phases = phases;
   }
 }
@@ -16,15 +16,10 @@
 
 package com.cloudogu.scm.mirror;
 
-import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sonia.scm.event.ScmEventBus;
-import sonia.scm.metrics.Metrics;
-import sonia.scm.notifications.Notification;
-import sonia.scm.notifications.NotificationSender;
-import sonia.scm.notifications.Type;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.api.MirrorCommandBuilder;
 import sonia.scm.repository.api.MirrorCommandResult;
@@ -33,13 +28,15 @@ import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static com.cloudogu.scm.mirror.MirrorStatus.Result.FAILED;
@@ -53,79 +50,106 @@ class MirrorWorker {
 
   private static final Logger LOG = LoggerFactory.getLogger(MirrorWorker.class);
 
-  private final ScheduledExecutorService executor;
+  private final MirrorExecutor executor;
   private final MirrorStatusStore statusStore;
-  private final NotificationSender notificationSender;
-  private final ScmEventBus eventBus;
+  private final MirrorResultWriter resultWriter;
   private final MirrorCommandCaller mirrorCommandCaller;
   private final TaskDecoratorFactory taskDecoratorFactory;
+  private final UpstreamCircuitBreaker circuitBreaker;
+  private final UpstreamRefsCheck refsCheck;
 
-  private final Set<String> runningSynchronizations = Collections.synchronizedSet(new HashSet<>());
+  private final Counter coalescedRequests;
+  private final Counter followUpSynchronizations;
+  private final SynchronizationMetrics synchronizationMetrics;
 
-  @Inject
-  MirrorWorker(MeterRegistry registry,
-               MirrorStatusStore statusStore,
-               NotificationSender notificationSender,
-               ScmEventBus eventBus,
-               MirrorCommandCaller mirrorCommandCaller,
-               TaskDecoratorFactory taskDecoratorFactory) {
-    this(registry, Executors.newScheduledThreadPool(4), statusStore, notificationSender, eventBus, mirrorCommandCaller, taskDecoratorFactory);
-  }
+  /**
+   * Ids of repositories with a running synchronization. Guarded by itself, as is {@link #pendingSynchronizations}.
+   */
+  private final Set<String> runningSynchronizations = new HashSet<>();
+  /**
+   * Synchronization requests which arrived while another synchronization of the same repository was running. All
+   * requests for one repository collapse into a single follow-up synchronization with the latest request.
+   */
+  private final Map<String, SynchronizationRequest> pendingSynchronizations = new HashMap<>();
 
-  @VisibleForTesting
-  MirrorWorker(MeterRegistry registry,
-               ScheduledExecutorService executor,
+  @Inject
+  MirrorWorker(MirrorExecutor executor,
                MirrorStatusStore statusStore,
-               NotificationSender notificationSender,
-               ScmEventBus eventBus,
+               MirrorResultWriter resultWriter,
                MirrorCommandCaller mirrorCommandCaller,
-               TaskDecoratorFactory taskDecoratorFactory) {
+               TaskDecoratorFactory taskDecoratorFactory,
+               UpstreamCircuitBreaker circuitBreaker,
+               UpstreamRefsCheck refsCheck,
+               MeterRegistry registry) {
     this.executor = executor;
     this.statusStore = statusStore;
-    this.notificationSender = notificationSender;
-    this.eventBus = eventBus;
+    this.resultWriter = resultWriter;
     this.mirrorCommandCaller = mirrorCommandCaller;
     this.taskDecoratorFactory = taskDecoratorFactory;
-    Metrics.executor(registry, executor, "mirror", "fixed");
+    this.circuitBreaker = circuitBreaker;
+    this.refsCheck = refsCheck;
+    this.coalescedRequests = Counter.builder("mirror.requests.coalesced")
+      .description("Number of synchronization requests which arrived during a running synchronization and have been merged into a follow-up synchronization")
+      .register(registry);
+    this.followUpSynchronizations = Counter.builder("mirror.synchronizations.followup")
+      .description("Number of follow-up synchronizations run for coalesced requests")
+      .register(registry);
+    this.synchronizationMetrics = new SynchronizationMetrics(registry);
+  }
+
+  void configure(GlobalMirrorConfiguration configuration) {
+    executor.configure(configuration);
   }
 
   void startInitialSync(Repository repository, MirrorConfiguration configuration) {
     taskDecoratorFactory.decorate(() -> statusStore.setStatus(repository, MirrorStatus.initialStatus())).run();
     LOG.info("enqueuing initial sync for mirror {} from url {}", repository, configuration.getUrl());
-    startAsynchronously(repository, configuration, MirrorCommandBuilder::initialCall);
+    startAsynchronously(repository, configuration, MirrorJobClass.INITIAL, MirrorCommandBuilder::initialCall);
   }
 
   void startUpdate(Repository repository, MirrorConfiguration configuration) {
     LOG.info("enqueuing update for mirror {} from url {}", repository, configuration.getUrl());
-    startAsynchronously(repository, configuration, MirrorCommandBuilder::update);
+    startAsynchronously(repository, configuration, MirrorJobClass.INTERACTIVE, MirrorCommandBuilder::update);
   }
 
 
-  CancelableSchedule scheduleUpdate(Repository repository, MirrorConfiguration configuration, int delay) {
-    LOG.info("scheduling update for mirror {} from url {} in {} minutes every {} minutes", repository, configuration.getUrl(), delay, configuration.getSynchronizationPeriod());
+  CancelableSchedule scheduleUpdate(Repository repository, MirrorConfiguration configuration, Duration delay, Consumer<MirrorStatus> onCompletion) {
+    LOG.debug("scheduling update for mirror {} from url {} in {} seconds", repository, configuration.getUrl(), delay.getSeconds());
+    String host = HostConcurrencyLimiter.hostOf(configuration.getUrl());
     ScheduledFuture<?> scheduledFuture =
-      executor.scheduleAtFixedRate(
+      executor.schedule(
+        host,
         () -> {
+          AtomicReference<MirrorStatus> status = new AtomicReference<>();
           try {
-            taskDecoratorFactory.decorate(() -> startSynchronously(repository, configuration, MirrorCommandBuilder::update)).run();
+            if (!circuitBreaker.allowRequest(configuration.getUrl())) {
+              LOG.info("skipping scheduled sync for mirror {}; circuit for upstream {} is open", repository, configuration.getUrl());
+              return;
+            }
+            SynchronizationRequest request = new SynchronizationRequest(configuration, MirrorCommandBuilder::update, MirrorJobClass.PERIODIC, true);
+            taskDecoratorFactory.decorate(() -> status.set(startSynchronously(repository, request))).run();
           } catch (Exception e) {
             LOG.error("got exception running scheduled mirror call", e);
+          } finally {
+            onCompletion.accept(status.get());
           }
         },
-        delay,
-        configuration.getSynchronizationPeriod(),
-        TimeUnit.MINUTES);
+        delay.getSeconds(),
+        TimeUnit.SECONDS);
     return () -> {
-      LOG.info("cancelling schedule for repository {}", repository);
+      LOG.debug("cancelling schedule for repository {}", repository);
       scheduledFuture.cancel(false);
     };
   }
 
-  private void startAsynchronously(Repository repository, MirrorConfiguration configuration, Function<MirrorCommandBuilder, MirrorCommandResult> callback) {
-    executor.submit(
+  private void startAsynchronously(Repository repository, MirrorConfiguration configuration, MirrorJobClass jobClass, Function<MirrorCommandBuilder, MirrorCommandResult> callback) {
+    executor.execute(
+      jobClass,
+      HostConcurrencyLimiter.hostOf(configuration.getUrl()),
       () -> {
         try {
-          taskDecoratorFactory.decorate(() -> startSynchronously(repository, configuration, callback)).run();
+          SynchronizationRequest request = new SynchronizationRequest(configuration, callback, jobClass, false);
+          taskDecoratorFactory.decorate(() -> startSynchronously(repository, request)).run();
         } catch (Exception e) {
           LOG.error("got exception running asynchronous mirror call", e);
         }
@@ -133,33 +157,129 @@ class MirrorWorker {
     );
   }
 
-  private void startSynchronously(Repository repository, MirrorConfiguration configuration, Function<MirrorCommandBuilder, MirrorCommandResult> callback) {
+  private MirrorStatus startSynchronously(Repository repository, SynchronizationRequest request) {
     LOG.debug("running sync for mirror {}", repository);
-    if (runningSynchronizations.add(repository.getId())) {
-      Instant startTime = Instant.now();
-      try {
-        MirrorCommandCaller.CallResult<MirrorCommandResult> callResult = mirrorCommandCaller.call(repository, configuration, callback);
-        MirrorCommandResult commandResult = callResult.getResultFromCallback();
-        ConfigurableFilter appliedFilter = callResult.getAppliedFilter();
-        LOG.debug("got result {} for sync of {}", commandResult.getResult(), repository);
-        handleResult(repository, configuration, startTime, commandResult, appliedFilter);
-      } catch (Exception e) {
-        LOG.error("got exception while syncing {}", repository, e);
-        MirrorCommandResult errorResult = new MirrorCommandResult(MirrorCommandResult.ResultType.FAILED, singletonList(e.getMessage()), Duration.ZERO);
-        handleResult(repository, configuration, startTime, errorResult, null);
-      } finally {
+    if (!tryStart(repository, request)) {
+      LOG.info("sync for mirror {} still running; request will be handled by a follow-up sync", repository);
+      return null;
+    }
+    MirrorStatus status = null;
+    try {
+      while (request != null) {
+        status = synchronize(repository, request);
+        request = finishOrContinue(repository);
+        if (request != null) {
+          LOG.debug("running follow-up sync for mirror {}", repository);
+          followUpSynchronizations.increment();
+        }
+      }
+      return status;
+    } finally {
+      if (request != null) {
+        // the synchronization failed unexpectedly; do not block further synchronizations
+        abort(repository);
+      }
+    }
+  }
+
+  private boolean tryStart(Repository repository, SynchronizationRequest request) {
+    synchronized (runningSynchronizations) {
+      if (runningSynchronizations.add(repository.getId())) {
+        return true;
+      }
+      pendingSynchronizations.put(repository.getId(), request);
+      coalescedRequests.increment();
+      return false;
+    }
+  }
+
+  /**
+   * Returns the pending request for the repository, if there is one. Otherwise, the repository is marked as no
+   * longer running.
+   */
+  private SynchronizationRequest finishOrContinue(Repository repository) {
+    synchronized (runningSynchronizations) {
+      SynchronizationRequest pending = pendingSynchronizations.remove(repository.getId());
+      if (pending == null) {
         runningSynchronizations.remove(repository.getId());
       }
+      return pending;
+    }
+  }
+
+  private void abort(Repository repository) {
+    synchronized (runningSynchronizations) {
+      pendingSynchronizations.remove(repository.getId());
+      runningSynchronizations.remove(repository.getId());
+    }
+  }
+
+  private MirrorStatus synchronize(Repository repository, SynchronizationRequest request) {
+    MirrorConfiguration configuration = request.configuration;
+    Instant startTime = Instant.now();
+    long startNanos = System.nanoTime();
+    SynchronizationTimings timings = new SynchronizationTimings();
+    Optional<String> fingerprint = request.precheck ? precheck(repository, configuration, timings) : Optional.empty();
+    if (fingerprint.isPresent() && refsCheck.isUnchanged(repository, fingerprint.get())) {
+      LOG.debug("upstream refs of mirror {} unchanged; skipping sync", repository);
+      MirrorCommandResult unchangedResult = new MirrorCommandResult(
+        MirrorCommandResult.ResultType.OK,
+        singletonList("upstream unchanged; skipped synchronization"),
+        Duration.between(startTime, Instant.now())
+      );
+      MirrorStatus status = handleResult(repository, configuration, startTime, unchangedResult, null, timings);
+      synchronizationMetrics.recordUnchanged(request.jobClass, startNanos);
+      return status;
+    }
+    MirrorCommandResult commandResult;
+    ConfigurableFilter appliedFilter;
+    try {
+      MirrorCommandCaller.CallResult<MirrorCommandResult> callResult = mirrorCommandCaller.call(repository, configuration, request.callback, timings);
+      commandResult = callResult.getResultFromCallback();
+      appliedFilter = callResult.getAppliedFilter();
+      LOG.debug("got result {} for sync of {}", commandResult.getResult(), repository);
+    } catch (Exception e) {
+      LOG.error("got exception while syncing {}", repository, e);
+      commandResult = new MirrorCommandResult(MirrorCommandResult.ResultType.FAILED, singletonList(e.getMessage()), Duration.ZERO);
+      appliedFilter = null;
+    }
+    // the result is handled only once; a failure while handling it ends the synchronization
+    MirrorStatus status = handleResult(repository, configuration, startTime, commandResult, appliedFilter, timings);
+    rememberFingerprint(repository, fingerprint, status);
+    synchronizationMetrics.record(request.jobClass, commandResult, appliedFilter, startNanos);
+    return status;
+  }
+
+  private Optional<String> precheck(Repository repository, MirrorConfiguration configuration, SynchronizationTimings timings) {
+    long start = System.nanoTime();
+    Optional<String> fingerprint = refsCheck.fingerprint(repository, configuration);
+    timings.recordSince(SynchronizationPhase.PRECHECK, start);
+    return fingerprint;
+  }
+
+  /**
+   * Only a successful synchronization leaves the mirror in the state described by the fingerprint. Otherwise, the
+   * next scheduled synchronization has to run in full, even if the upstream does not change.
+   */
+  private void rememberFingerprint(Repository repository, Optional<String> fingerprint, MirrorStatus status) {
+    if (fingerprint.isPresent() && status.getResult() == SUCCESS) {
+      refsCheck.remember(repository, fingerprint.get());
     } else {
-      LOG.info("skipping sync for mirror {}; other sync still running", repository);
+      refsCheck.forget(repository);
     }
   }
 
-  private void handleResult(Repository repository, MirrorConfiguration configuration, Instant startTime, MirrorCommandResult result, ConfigurableFilter appliedFilter) {
-    MirrorStatus status = MirrorStatus.create(getFor(result.getResult(), appliedFilter), startTime);
-    eventBus.post(new MirrorSyncEvent(repository, result, status));
-    sendNotificationWhenChanged(repository, configuration, status.getResult());
-    statusStore.setStatus(repository, status);
+  private MirrorStatus handleResult(Repository repository, MirrorConfiguration configuration, Instant startTime, MirrorCommandResult result, ConfigurableFilter appliedFilter, SynchronizationTimings timings) {
+    long start = System.nanoTime();
+    int acceptedUpdates = appliedFilter == null ? 0 : appliedFilter.getAcceptedUpdates();
+    MirrorStatus status = MirrorStatus.create(getFor(result.getResult(), appliedFilter), startTime, acceptedUpdates, statusStore.getStatus(repository));
+    circuitBreaker.recordResult(configuration.getUrl(), status.getResult());
+    MirrorStatus previousStatus = statusStore.update(repository, status);
+    timings.recordSince(SynchronizationPhase.RESULT, start);
+    Map<SynchronizationPhase, Duration> phases = timings.getDurations();
+    synchronizationMetrics.recordPhases(phases);
+    resultWriter.write(repository, configuration, result, previousStatus, status, phases);
+    return status;
   }
 
   static MirrorStatus.Result getFor(MirrorCommandResult.ResultType type, ConfigurableFilter appliedFilter) {
@@ -185,33 +305,25 @@ class MirrorWorker {
     }
   }
 
-  private void sendNotificationWhenChanged(Repository repository, MirrorConfiguration configuration, MirrorStatus.Result status) {
-    if (getLatestStatus(repository) != status) {
-      sendNotifications(repository, configuration, status.getNotificationType(), status.getNotificationKey());
-    }
-  }
-
-  private void sendNotifications(Repository repository, MirrorConfiguration configuration, Type type, String mirrorUpdatesRejected) {
-    for (String user : configuration.getManagingUsers()) {
-      notificationSender.send(buildNotification(repository, type, mirrorUpdatesRejected), user);
-    }
+  interface CancelableSchedule {
+    void cancel();
   }
 
-  private Notification buildNotification(Repository repository, Type error, String mirrorFailed) {
-    return new Notification(error, "/repo/" + repository.getNamespaceAndName() + "/mirror-logs", mirrorFailed);
-  }
+  private static class SynchronizationRequest {
+    private final MirrorConfiguration configuration;
+    private final Function<MirrorCommandBuilder, MirrorCommandResult> callback;
+    private final MirrorJobClass jobClass;
+    /**
+     * Whether the upstream refs should be checked before running the full synchronization (see
+     * {@link UpstreamRefsCheck}).
+     */
+    private final boolean precheck;
 
-  private MirrorStatus.Result getLatestStatus(Repository repository) {
-    MirrorStatus status = statusStore.getStatus(repository);
-    if (status == null) {
-      return null;
-    } else {
-      return status.getResult();
+    SynchronizationRequest(MirrorConfiguration configuration, Function<MirrorCommandBuilder, MirrorCommandResult> callback, MirrorJobClass jobClass, boolean precheck) {
+      this.configuration = configuration;
+      this.callback = callback;
+      this.jobClass = jobClass;
+      this.precheck = precheck;
     }
   }
-
-
-  interface CancelableSchedule {
-    void cancel();
-  }
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.annotations.VisibleForTesting;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Append only log of binary records in a directory. Records are written to numbered segment files; a new segment is
+ * started, whenever the current one reaches the maximum number of records or the maximum size. Whole segments, which
+ * only contain records older than the ones to keep, are deleted by {@link #reclaim(int)}.
+ * <p>
+ * Each record is stored as its length followed by its bytes. A record which has not been written completely, e.g.
+ * because of a crash, is cut off, when the log is opened for writing. Reading stops at a length, which is negative or
+ * exceeds the rest of the segment, as it does at an incomplete record.
+ * <p>
+ * Every record is identified by its position, which combines the sequence number of its segment with its index
+ * inside the segment. Positions only grow, so they can be used as cursor to read older records page by page.
+ */
+class SegmentedLog {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SegmentedLog.class);
+
+  @VisibleForTesting
+  static final long MAXIMUM_SEGMENT_SIZE = 1024L * 1024L;
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private final Path directory;
+  private final int maximumSegmentRecords;
+
+  private boolean opened = false;
+  private long currentSegment = -1;
+  private int currentRecords;
+  private long currentSize;
+
+  SegmentedLog(Path directory, int maximumSegmentRecords) {
+    this.directory = directory;
+    this.maximumSegmentRecords = maximumSegmentRecords;
+  }
+
+  /**
+   * Appends the given record.
+   *
+   * @return {@code true}, if a new segment has been started for the record
+   */
+  synchronized boolean append(byte[] record) throws IOException {
+    open();
+    boolean rolled = false;
+    if (currentSegment < 0 || currentRecords >= maximumSegmentRecords || currentSize >= MAXIMUM_SEGMENT_SIZE) {
+      currentSegment++;
+      currentRecords = 0;
+      currentSize = 0;
+      rolled = true;
+    }
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+      Files.newOutputStream(segment(currentSegment), StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+    ))) {
+      output.writeInt(record.length);
+      output.write(record);
+    }
+    currentRecords++;
+    currentSize += Integer.BYTES + record.length;
+    return rolled;
+  }
+
+  /**
+   * Returns the newest records, at most the given number, starting with the newest one.
+   */
+  synchronized List<byte[]> readNewest(int limit) throws IOException {
+    List<byte[]> newest = new ArrayList<>();
+    for (Record record : readNewest(limit, Long.MAX_VALUE)) {
+      newest.add(record.getData());
+    }
+    return newest;
+  }
+
+  /**
+   * Returns the newest records with a position lower than the given one, at most the given number, starting with
+   * the newest one.
+   */
+  synchronized List<Record> readNewest(int limit, long before) throws IOException {
+    List<Record> newest = new ArrayList<>();
+    long beforeSegment = segmentOf(before);
+    for (Path segment : segmentsNewestFirst()) {
+      long sequence = sequenceOf(segment);
+      if (sequence > beforeSegment) {
+        continue;
+      }
+      List<byte[]> records = read(segment);
+      int index = records.size() - 1;
+      if (sequence == beforeSegment) {
+        index = Math.min(index, indexOf(before) - 1);
+      }
+      for (; index >= 0; --index) {
+        if (newest.size() >= limit) {
+          return newest;
+        }
+        newest.add(new Record(position(sequence, index), records.get(index)));
+      }
+    }
+    return newest;
+  }
+
+  /**
+   * Returns the record at the given position, if it still exists.
+   */
+  synchronized Optional<byte[]> read(long position) throws IOException {
+    if (position < 0) {
+      return Optional.empty();
+    }
+    Path segment = segment(segmentOf(position));
+    if (!Files.exists(segment)) {
+      return Optional.empty();
+    }
+    List<byte[]> records = read(segment);
+    int index = indexOf(position);
+    if (index >= records.size()) {
+      return Optional.empty();
+    }
+    return Optional.of(records.get(index));
+  }
+
+  synchronized boolean isEmpty() throws IOException {
+    return segmentsNewestFirst().isEmpty();
+  }
+
+  /**
+   * Deletes all segments, which are not needed to keep the given number of newest records.
+   */
+  synchronized void reclaim(int keep) throws IOException {
+    reclaim(keep, 0, null);
+  }
+
+  /**
+   * Deletes the oldest segments, which are not needed to keep the given number of newest records, which exceed the
+   * given total size or which have not been written since the given instant. A limit of {@code 0} or {@code null}
+   * is not checked. The segment of the newest record is always kept, so that the log is not cut off while it is
+   * written; therefore the limits are only met at segment granularity.
+   *
+   * @return the total size of the remaining segments in bytes
+   */
+  synchronized long reclaim(int keep, long maximumBytes, Instant expiry) throws IOException {
+    List<Path> segments = segmentsNewestFirst();
+    int records = 0;
+    long size = 0;
+    boolean deleting = false;
+    for (int i = 0; i < segments.size(); ++i) {
+      Path segment = segments.get(i);
+      long segmentSize = Files.size(segment);
+      if (i > 0 && !deleting) {
+        deleting = (keep > 0 && records >= keep)
+          || (maximumBytes > 0 && size + segmentSize > maximumBytes)
+          || (expiry != null && Files.getLastModifiedTime(segment).toInstant().isBefore(expiry));
+      }
+      if (deleting) {
+        LOG.trace("deleting log segment {}", segment);
+        Files.deleteIfExists(segment);
+      } else {
+        if (keep > 0) {
+          records += read(segment).size();
+        }
+        size += segmentSize;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Returns the total size of all segments in bytes.
+   */
+  synchronized long size() throws IOException {
+    long size = 0;
+    for (Path segment : segmentsNewestFirst()) {
+      size += Files.size(segment);
+    }
+    return size;
+  }
+
+  private void open() throws IOException {
+    if (opened) {
+      return;
+    }
+    Files.createDirectories(directory);
+    List<Path> segments = segmentsNewestFirst();
+    if (!segments.isEmpty()) {
+      Path newest = segments.get(0);
+      currentSegment = sequenceOf(newest);
+      long validSize = scan(newest);
+      if (validSize < Files.size(newest)) {
+        LOG.warn("cutting off incomplete record at the end of log segment {}", newest);
+        try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+          channel.truncate(validSize);
+        }
+      }
+      currentSize = validSize;
+    }
+    opened = true;
+  }
+
+  /**
+   * Counts the complete records of the given segment and returns the size they take.
+   */
+  private long scan(Path segment) throws IOException {
+    long size = 0;
+    long segmentSize = Files.size(segment);
+    currentRecords = 0;
+    try (DataInputStream input = input(segment)) {
+      while (true) {
+        int length = input.readInt();
+        if (!isValidLength(length, segmentSize - size - Integer.BYTES)) {
+          // the corrupt rest of the segment is cut off like an incomplete record
+          break;
+        }
+        input.skipNBytes(length);
+        size += Integer.BYTES + length;
+        currentRecords++;
+      }
+    } catch (EOFException e) {
+      // end of the segment or incomplete record
+    }
+    return size;
+  }
+
+  private List<byte[]> read(Path segment) throws IOException {
+    List<byte[]> records = new ArrayList<>();
+    long remaining = Files.size(segment);
+    try (DataInputStream input = input(segment)) {
+      while (true) {
+        int length = input.readInt();
+        remaining -= Integer.BYTES;
+        if (!isValidLength(length, remaining)) {
+          LOG.warn("stopping at record with invalid length {} in log segment {}", length, segment);
+          break;
+        }
+        byte[] record = new byte[length];
+        input.readFully(record);
+        records.add(record);
+        remaining -= length;
+      }
+    } catch (EOFException e) {
+      // end of the segment or incomplete record
+    }
+    return records;
+  }
+
+  private static boolean isValidLength(int length, long remaining) {
+    return length >= 0 && length <= remaining;
+  }
+
+  private DataInputStream input(Path segment) throws IOException {
+    InputStream input = Files.newInputStream(segment);
+    return new DataInputStream(new BufferedInputStream(input));
+  }
+
+  private List<Path> segmentsNewestFirst() throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return Collections.emptyList();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      List<Path> segments = new ArrayList<>();
+      files.filter(SegmentedLog::isSegment).forEach(segments::add);
+      segments.sort((a, b) -> Long.compare(sequenceOf(b), sequenceOf(a)));
+      return segments;
+    }
+  }
+
+  private static boolean isSegment(Path file) {
+    String name = file.getFileName().toString();
+    return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+  }
+
+  private static long sequenceOf(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static long position(long sequence, int index) {
+    return (sequence << Integer.SIZE) | index;
+  }
+
+  private static long segmentOf(long position) {
+    return position >>> Integer.SIZE;
+  }
+
+  private static int indexOf(long position) {
+    return (int) (position & 0xFFFFFFFFL);
+  }
+
+  private Path segment(long sequence) {
+    return directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+  }
+
+  @Getter
+  @AllArgsConstructor
+  static class Record {
+    private final long position;
+    private final byte[] data;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.cloudogu.scm.mirror.ConfigurableFilter.RejectReason;
+import com.cloudogu.scm.mirror.ConfigurableFilter.UpdateType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import sonia.scm.repository.api.MirrorCommandResult;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the metrics of single synchronizations: the time of the whole synchronization by result and
+ * {@link MirrorJobClass}, the time of the mirror command itself as reported by the {@link MirrorCommandResult}, the
+ * branch and tag updates accepted and rejected by the {@link ConfigurableFilter}, and the durations of the single
+ * {@link SynchronizationPhase phases}. All tags have a fixed set of values, so the number of time series does not
+ * grow with the number of mirrors.
+ */
+@SuppressWarnings("UnstableApiUsage")
+class SynchronizationMetrics {
+
+  /**
+   * Result tag of synchronizations, which have been skipped because the upstream did not change (see
+   * {@link UpstreamRefsCheck}).
+   */
+  static final String RESULT_UNCHANGED = "unchanged";
+
+  private final MeterRegistry registry;
+
+  SynchronizationMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    // register all update counters up front, so that they are exported before the first rejection
+    for (UpdateType type : UpdateType.values()) {
+      updateCounter(type, "accepted", "none");
+      for (RejectReason reason : RejectReason.values()) {
+        updateCounter(type, "rejected", tag(reason));
+      }
+    }
+  }
+
+  /**
+   * Records a synchronization, which did not run the mirror command, because the upstream is unchanged.
+   */
+  void recordUnchanged(MirrorJobClass jobClass, long startNanos) {
+    recordSynchronization(jobClass, RESULT_UNCHANGED, startNanos);
+  }
+
+  /**
+   * Records a finished synchronization.
+   *
+   * @param appliedFilter filter of the synchronization, or {@code null} if the command failed before it has been
+   *                      applied
+   */
+  void record(MirrorJobClass jobClass, MirrorCommandResult result, ConfigurableFilter appliedFilter, long startNanos) {
+    String resultTag = tag(result.getResult());
+    recordSynchronization(jobClass, resultTag, startNanos);
+    Duration commandDuration = result.getDuration();
+    // commands failing with an exception do not report a duration
+    if (commandDuration != null && !commandDuration.isZero()) {
+      Timer.builder("mirror.command.duration")
+        .description("Duration of mirror commands as reported by the repository type")
+        .tag("result", resultTag)
+        .register(registry)
+        .record(commandDuration);
+    }
+    if (appliedFilter != null) {
+      recordUpdates(appliedFilter);
+    }
+  }
+
+  /**
+   * Records the durations of the phases of a synchronization.
+   */
+  void recordPhases(Map<SynchronizationPhase, Duration> phases) {
+    phases.forEach((phase, duration) -> Timer.builder("mirror.phase")
+      .description("Duration of the phases of mirror synchronizations")
+      .tag("phase", tag(phase))
+      .publishPercentileHistogram()
+      .register(registry)
+      .record(duration));
+  }
+
+  private void recordSynchronization(MirrorJobClass jobClass, String result, long startNanos) {
+    Timer.builder("mirror.synchronization")
+      .description("Duration of mirror synchronizations including the upstream check and the filters")
+      .tag("result", result)
+      .tag("class", tag(jobClass))
+      .register(registry)
+      .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void recordUpdates(ConfigurableFilter filter) {
+    for (UpdateType type : UpdateType.values()) {
+      updateCounter(type, "accepted", "none").increment(filter.getAcceptedUpdates(type));
+      for (RejectReason reason : RejectReason.values()) {
+        updateCounter(type, "rejected", tag(reason)).increment(filter.getRejectedUpdates(type, reason));
+      }
+    }
+  }
+
+  private Counter updateCounter(UpdateType type, String outcome, String reason) {
+    return Counter.builder("mirror.updates")
+      .description("Number of branch and tag updates accepted and rejected by the mirror filters")
+      .tag("type", tag(type))
+      .tag("outcome", outcome)
+      .tag("reason", reason)
+      .register(registry);
+  }
+
+  private static String tag(Enum<?> value) {
+    return value.name().toLowerCase(Locale.ENGLISH);
+  }
+}
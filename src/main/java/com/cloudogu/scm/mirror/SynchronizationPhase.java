@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+/**
+ * Phases of a synchronization, whose durations are recorded with every {@link LogEntry}.
+ */
+public enum SynchronizationPhase {
+  /**
+   * Listing of the upstream refs by the {@link UpstreamRefsCheck} before a scheduled synchronization.
+   */
+  PRECHECK,
+  /**
+   * Creation of the repository service for the mirror.
+   */
+  REPOSITORY_SERVICE,
+  /**
+   * Parsing of the allowed gpg keys.
+   */
+  KEYS,
+  /**
+   * Preparation of the credentials for the upstream.
+   */
+  CREDENTIALS,
+  /**
+   * Fetching the upstream, except for the time spent in the filter.
+   */
+  TRANSFER,
+  /**
+   * Evaluation of the filter for all branch and tag updates.
+   */
+  FILTER,
+  /**
+   * Computation of the new status and handing it over to the {@link MirrorResultWriter}.
+   */
+  RESULT
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Collects the durations of the {@link SynchronizationPhase phases} of a single synchronization. Phases, which have
+ * not been reached (for example because the synchronization failed early), are missing.
+ */
+class SynchronizationTimings {
+
+  private final Map<SynchronizationPhase, Long> nanos = new EnumMap<>(SynchronizationPhase.class);
+
+  /**
+   * Records the time since the given start (taken from {@link System#nanoTime()}) for the given phase.
+   */
+  void recordSince(SynchronizationPhase phase, long startNanos) {
+    record(phase, System.nanoTime() - startNanos);
+  }
+
+  void record(SynchronizationPhase phase, long durationNanos) {
+    nanos.merge(phase, Math.max(0, durationNanos), Long::sum);
+  }
+
+  Map<SynchronizationPhase, Duration> getDurations() {
+    Map<SynchronizationPhase, Duration> durations = new EnumMap<>(SynchronizationPhase.class);
+    nanos.forEach((phase, duration) -> durations.put(phase, Duration.ofNanos(duration)));
+    return Collections.unmodifiableMap(durations);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker for upstream repositories. After {@link #FAILURE_THRESHOLD} failed synchronizations in a row against
+ * the same upstream url, the circuit for this url opens and scheduled synchronizations of mirrors of this url are
+ * skipped until it closes again. The circuit is kept per url and not per host, so that broken repositories (for
+ * example deleted upstreams or revoked tokens) do not pause the healthy mirrors of a shared host.
+ * Every time the circuit opens again after a further failure, it stays open twice as long, up to
+ * {@link #MAXIMUM_OPEN_DURATION}. The next successful synchronization (for example, triggered manually) closes the
+ * circuit.
+ */
+@Singleton
+class UpstreamCircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UpstreamCircuitBreaker.class);
+
+  static final int FAILURE_THRESHOLD = 5;
+  static final Duration INITIAL_OPEN_DURATION = Duration.ofMinutes(30);
+  static final Duration MAXIMUM_OPEN_DURATION = Duration.ofHours(12);
+
+  private final Clock clock;
+  private final Map<String, UpstreamState> upstreams = new ConcurrentHashMap<>();
+
+  @Inject
+  UpstreamCircuitBreaker() {
+    this(Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  UpstreamCircuitBreaker(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Returns {@code true}, if a synchronization against the given upstream url may be started.
+   */
+  boolean allowRequest(String url) {
+    return getOpenUntil(url).isEmpty();
+  }
+
+  /**
+   * Returns the time until the circuit for the given upstream url is open, if it is open.
+   */
+  Optional<Instant> getOpenUntil(String url) {
+    String upstream = normalize(url);
+    if (upstream == null) {
+      return Optional.empty();
+    }
+    UpstreamState state = upstreams.get(upstream);
+    if (state == null || state.openUntil == null || !state.openUntil.isAfter(clock.instant())) {
+      return Optional.empty();
+    }
+    return Optional.of(state.openUntil);
+  }
+
+  void recordResult(String url, MirrorStatus.Result result) {
+    String upstream = normalize(url);
+    if (upstream == null) {
+      return;
+    }
+    if (result != MirrorStatus.Result.FAILED) {
+      if (upstreams.remove(upstream) != null) {
+        LOG.info("synchronization against {} succeeded; closing circuit", upstream);
+      }
+      return;
+    }
+    upstreams.compute(upstream, (u, state) -> {
+      UpstreamState newState = state == null ? new UpstreamState() : state;
+      newState.failures++;
+      if (newState.failures >= FAILURE_THRESHOLD) {
+        newState.open(clock.instant());
+        LOG.warn("{} synchronizations against {} failed in a row; skipping scheduled synchronizations until {}", newState.failures, upstream, newState.openUntil);
+      }
+      return newState;
+    });
+  }
+
+  /**
+   * Mirrors of the same upstream may be configured with or without trailing slashes.
+   */
+  private static String normalize(String url) {
+    if (Strings.isNullOrEmpty(url)) {
+      return null;
+    }
+    String upstream = url.trim();
+    while (upstream.endsWith("/")) {
+      upstream = upstream.substring(0, upstream.length() - 1);
+    }
+    return upstream.isEmpty() ? null : upstream;
+  }
+
+  private static class UpstreamState {
+    private int failures;
+    private int trips;
+    private Instant openUntil;
+
+    void open(Instant now) {
+      Duration duration = INITIAL_OPEN_DURATION.multipliedBy(1L << Math.min(trips, 10));
+      if (duration.compareTo(MAXIMUM_OPEN_DURATION) > 0) {
+        duration = MAXIMUM_OPEN_DURATION;
+      }
+      openUntil = now.plus(duration);
+      trips++;
+    }
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sonia.scm.repository.Repository;
+import sonia.scm.store.DataStore;
+import sonia.scm.store.DataStoreFactory;
+
+import jakarta.xml.bind.annotation.XmlAccessType;
+import jakarta.xml.bind.annotation.XmlAccessorType;
+import jakarta.xml.bind.annotation.XmlRootElement;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cheap check, whether the upstream of a mirror has changed since the last successful synchronization. The refs
+ * advertised by the upstream are condensed into a fingerprint, which is compared with the fingerprint stored after
+ * the last successful synchronization. The fingerprint includes the settings that decide which refs are taken over,
+ * so a changed filter configuration is never mistaken for an unchanged upstream.
+ * <p>
+ * If the refs of a mirror cannot be listed (for example because the upstream uses a certificate, which is only
+ * trusted by the mirror command), the check is skipped for this mirror for {@link #RETRY_AFTER_FAILURE}, so that
+ * synchronizations do not wait for a failing check every time.
+ */
+@Singleton
+class UpstreamRefsCheck {
+
+  private static final Logger LOG = LoggerFactory.getLogger(UpstreamRefsCheck.class);
+
+  private static final String STORE_NAME = "mirrorRefFingerprint";
+  private static final String STORE_ID = "fingerprint";
+
+  static final Duration RETRY_AFTER_FAILURE = Duration.ofHours(24);
+
+  private final Set<UpstreamRefsProvider> providers;
+  private final DataStoreFactory storeFactory;
+
+  private final Counter unchanged;
+  private final Counter changed;
+  private final Counter unavailable;
+
+  /**
+   * Mirrors, whose refs could not be listed, with their upstream url and the time of the next try.
+   */
+  private final Map<String, FailedCheck> failedChecks = new ConcurrentHashMap<>();
+
+  @Inject
+  UpstreamRefsCheck(Set<UpstreamRefsProvider> providers, DataStoreFactory storeFactory, MeterRegistry registry) {
+    this.providers = providers;
+    this.storeFactory = storeFactory;
+    this.unchanged = counter(registry, "unchanged");
+    this.changed = counter(registry, "changed");
+    this.unavailable = counter(registry, "unavailable");
+  }
+
+  private static Counter counter(MeterRegistry registry, String result) {
+    return Counter.builder("mirror.precheck")
+      .description("Results of the upstream ref check before periodic synchronizations")
+      .tag("result", result)
+      .register(registry);
+  }
+
+  /**
+   * Computes the current fingerprint of the upstream refs of the given mirror. The result is empty, if the refs
+   * cannot be listed, e.g. because no provider supports the mirror or the upstream could not be reached.
+   */
+  Optional<String> fingerprint(Repository repository, MirrorConfiguration configuration) {
+    if (configuration.isHttpsOnly() && !configuration.getUrl().startsWith("https")) {
+      return Optional.empty();
+    }
+    Optional<UpstreamRefsProvider> provider = providers.stream()
+      .filter(p -> p.isSupported(repository, configuration))
+      .findFirst();
+    if (provider.isEmpty() || hasFailedRecently(repository, configuration)) {
+      return Optional.empty();
+    }
+    try {
+      Optional<String> fingerprint = Optional.of(fingerprint(configuration, provider.get().listRefs(repository, configuration)));
+      failedChecks.remove(repository.getId());
+      return fingerprint;
+    } catch (Exception e) {
+      LOG.debug("could not list upstream refs of mirror {}; running full synchronizations for {}", repository, RETRY_AFTER_FAILURE, e);
+      unavailable.increment();
+      failedChecks.put(repository.getId(), new FailedCheck(configuration.getUrl(), Instant.now().plus(RETRY_AFTER_FAILURE)));
+      return Optional.empty();
+    }
+  }
+
+  private boolean hasFailedRecently(Repository repository, MirrorConfiguration configuration) {
+    FailedCheck failedCheck = failedChecks.get(repository.getId());
+    return failedCheck != null
+      && failedCheck.url.equals(configuration.getUrl())
+      && Instant.now().isBefore(failedCheck.retryAfter);
+  }
+
+  /**
+   * Returns {@code true}, if the given fingerprint equals the one of the last successful synchronization.
+   */
+  boolean isUnchanged(Repository repository, String fingerprint) {
+    boolean result = createStore(repository).getOptional(STORE_ID)
+      .map(stored -> fingerprint.equals(stored.getValue()))
+      .orElse(false);
+    (result ? unchanged : changed).increment();
+    return result;
+  }
+
+  void remember(Repository repository, String fingerprint) {
+    createStore(repository).put(STORE_ID, new Fingerprint(fingerprint));
+  }
+
+  void forget(Repository repository) {
+    createStore(repository).remove(STORE_ID);
+  }
+
+  static String fingerprint(MirrorConfiguration configuration, Map<String, String> refs) {
+    Hasher hasher = Hashing.sha256().newHasher()
+      .putString(configuration.getUrl(), StandardCharsets.UTF_8)
+      .putBoolean(configuration.isFastForwardOnly())
+      .putBoolean(configuration.isIgnoreLfs())
+      .putString(String.valueOf(configuration.getGpgVerificationType()), StandardCharsets.UTF_8);
+    if (configuration.getBranchesAndTagsPatterns() != null) {
+      configuration.getBranchesAndTagsPatterns().forEach(pattern -> putTerminated(hasher, pattern));
+    }
+    if (configuration.getAllowedGpgKeys() != null) {
+      configuration.getAllowedGpgKeys().forEach(key -> putTerminated(hasher, key.getRaw()));
+    }
+    new TreeMap<>(refs).forEach((name, id) -> {
+      putTerminated(hasher, name);
+      putTerminated(hasher, id);
+    });
+    return hasher.hash().toString();
+  }
+
+  private static void putTerminated(Hasher hasher, String value) {
+    hasher.putString(String.valueOf(value), StandardCharsets.UTF_8).putByte((byte) 0);
+  }
+
+  private DataStore<Fingerprint> createStore(Repository repository) {
+    return storeFactory.withType(Fingerprint.class).withName(STORE_NAME).forRepository(repository).build();
+  }
+
+  private static class FailedCheck {
+    private final String url;
+    private final Instant retryAfter;
+
+    FailedCheck(String url, Instant retryAfter) {
+      this.url = url;
+      this.retryAfter = retryAfter;
+    }
+  }
+
+  @Getter
+  @NoArgsConstructor(access = AccessLevel.PRIVATE)
+  @XmlRootElement(name = "ref-fingerprint")
+  @XmlAccessorType(XmlAccessType.FIELD)
+  static class Fingerprint {
+    private String value;
+
+    Fingerprint(String value) {
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import sonia.scm.plugin.ExtensionPoint;
+import sonia.scm.repository.Repository;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Lists the refs advertised by the upstream of a mirror, without fetching any objects. This is used to skip
+ * periodic synchronizations, when nothing has changed upstream (see {@link UpstreamRefsCheck}).
+ */
+@ExtensionPoint
+public interface UpstreamRefsProvider {
+
+  /**
+   * Returns {@code true}, if this provider can list the refs for the given mirror.
+   */
+  boolean isSupported(Repository repository, MirrorConfiguration configuration);
+
+  /**
+   * Returns the advertised refs of the upstream of the given mirror, mapped from the ref names to their object ids.
+   */
+  Map<String, String> listRefs(Repository repository, MirrorConfiguration configuration) throws IOException;
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every task on its own (virtual) thread. The number of tasks running at the same time is limited by a
+ * semaphore, so waiting tasks only park their virtual thread instead of occupying a platform thread. Whenever a
+ * thread gets a permit, it runs the most urgent waiting job (see {@link MirrorJob}), not necessarily its own.
+ */
+class VirtualThreadEngine {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadEngine.class);
+
+  private final ExecutorService threads;
+  private final ResizableSemaphore permits;
+  private final PriorityBlockingQueue<MirrorJob> queue = new PriorityBlockingQueue<>();
+  /**
+   * Counted explicitly, because the available permits do not reflect the running jobs while the limit is changed.
+   */
+  private final AtomicInteger running = new AtomicInteger();
+
+  private int limit;
+
+  VirtualThreadEngine(MeterRegistry registry, ExecutorService threads, int limit) {
+    this.threads = threads;
+    this.limit = limit;
+    this.permits = new ResizableSemaphore(limit);
+    Gauge.builder("mirror.virtual.running", running, AtomicInteger::get)
+      .description("Number of mirror synchronizations running on virtual threads")
+      .register(registry);
+    Gauge.builder("mirror.virtual.waiting", queue, PriorityBlockingQueue::size)
+      .description("Number of mirror synchronizations waiting for a free slot")
+      .register(registry);
+  }
+
+  /**
+   * Creates an executor starting a new virtual thread for each task, if the running jvm supports virtual threads.
+   */
+  static Optional<ExecutorService> createVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return Optional.of((ExecutorService) factory.invoke(null));
+    } catch (ReflectiveOperationException e) {
+      LOG.debug("virtual threads are not supported by this jvm", e);
+      return Optional.empty();
+    }
+  }
+
+  void execute(MirrorJob job) {
+    queue.add(job);
+    threads.execute(() -> {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        LOG.warn("interrupted while waiting for a free slot for mirror synchronization");
+        Thread.currentThread().interrupt();
+        return;
+      }
+      try {
+        // every enqueued job has its own thread, so there is always a job to take
+        MirrorJob next = queue.poll();
+        if (next != null) {
+          running.incrementAndGet();
+          try {
+            next.run();
+          } finally {
+            running.decrementAndGet();
+          }
+        }
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  synchronized void setLimit(int newLimit) {
+    int delta = newLimit - limit;
+    if (delta > 0) {
+      permits.release(delta);
+    } else if (delta < 0) {
+      permits.reducePermits(-delta);
+    }
+    limit = newLimit;
+  }
+
+  int getRunning() {
+    return running.get();
+  }
+
+  private static class ResizableSemaphore extends Semaphore {
+
+    ResizableSemaphore(int permits) {
+      super(permits, true);
+    }
+
+    @Override
+    protected void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+}
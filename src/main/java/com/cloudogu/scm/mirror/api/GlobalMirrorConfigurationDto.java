@@ -16,11 +16,15 @@
 
 package com.cloudogu.scm.mirror.api;
 
+import com.cloudogu.scm.mirror.MirrorExecutionMode;
 import de.otto.edison.hal.Links;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import jakarta.validation.constraints.Min;
+import java.util.Map;
+
 @Getter
 @Setter
 @NoArgsConstructor
@@ -29,6 +33,29 @@ public class GlobalMirrorConfigurationDto extends MirrorFilterConfigurationDto {
 
   private boolean httpsOnly;
   private boolean disableRepositoryFilterOverwrite;
+  @Min(1)
+  private Integer minimumWorkers;
+  @Min(1)
+  private Integer maximumWorkers;
+  private MirrorExecutionMode executionMode;
+  @Min(1)
+  private Integer maximumVirtualThreadSynchronizations;
+  @Min(0)
+  private Integer maximumSynchronizationsPerHost;
+  private Map<String, @Min(1) Integer> hostLimits;
+  private boolean adaptiveSynchronization;
+  @Min(1)
+  private Integer minimumAdaptivePeriod;
+  @Min(1)
+  private Integer maximumAdaptivePeriod;
+  @Min(0)
+  private Integer logRetentionEntries;
+  @Min(0)
+  private Long logRetentionBytes;
+  @Min(0)
+  private Integer logRetentionDays;
+  @Min(0)
+  private Integer maximumLagGauges;
 
   GlobalMirrorConfigurationDto(Links links) {
     super(links);
@@ -17,21 +17,36 @@
 package com.cloudogu.scm.mirror.api;
 
 import com.cloudogu.scm.mirror.MirrorStatus.Result;
+import com.cloudogu.scm.mirror.SynchronizationPhase;
 import de.otto.edison.hal.HalRepresentation;
+import de.otto.edison.hal.Links;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 @Getter
 @Setter
 @SuppressWarnings("java:S2160") // we don't need equals for dto
 public class LogEntryDto extends HalRepresentation {
 
+  private String id;
   private Result result;
   private Instant started;
   private Instant ended;
   private List<String> log;
+  /**
+   * Durations of the phases of the synchronization in milliseconds.
+   */
+  private Map<SynchronizationPhase, Long> phases;
+
+  LogEntryDto() {
+  }
+
+  LogEntryDto(Links links) {
+    super(links);
+  }
 
 }
@@ -17,18 +17,42 @@
 package com.cloudogu.scm.mirror.api;
 
 import com.cloudogu.scm.mirror.LogEntry;
+import com.cloudogu.scm.mirror.SynchronizationPhase;
+import de.otto.edison.hal.Links;
+import org.mapstruct.Context;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
+import org.mapstruct.ObjectFactory;
 
 import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
 
 @Mapper
 public interface LogEntryMapper {
 
   @Mapping(ignore = true, target = "attributes")
-  LogEntryDto map(LogEntry entry);
+  LogEntryDto map(LogEntry entry, @Context Links links);
+
+  /**
+   * Maps the entry without its log lines, so that they do not have to be decoded.
+   */
+  @Mapping(ignore = true, target = "attributes")
+  @Mapping(ignore = true, target = "log")
+  LogEntryDto mapWithoutLog(LogEntry entry, @Context Links links);
+
+  @ObjectFactory
+  default LogEntryDto createDto(@Context Links links) {
+    return new LogEntryDto(links);
+  }
 
   default long map(Duration duration) {
     return duration.toMillis();
   }
+
+  default Map<SynchronizationPhase, Long> mapPhases(Map<SynchronizationPhase, Duration> phases) {
+    Map<SynchronizationPhase, Long> millis = new EnumMap<>(SynchronizationPhase.class);
+    phases.forEach((phase, duration) -> millis.put(phase, map(duration)));
+    return millis;
+  }
 }
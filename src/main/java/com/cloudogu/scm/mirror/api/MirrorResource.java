@@ -18,10 +18,12 @@ package com.cloudogu.scm.mirror.api;
 
 import com.cloudogu.scm.mirror.LocalFilterConfiguration;
 import com.cloudogu.scm.mirror.LogEntry;
+import com.cloudogu.scm.mirror.LogRetentionConfiguration;
 import com.cloudogu.scm.mirror.LogStore;
 import com.cloudogu.scm.mirror.MirrorAccessConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfigurationStore;
+import com.cloudogu.scm.mirror.MirrorPermissions;
 import com.cloudogu.scm.mirror.MirrorService;
 import com.cloudogu.scm.mirror.NotConfiguredForMirrorException;
 import de.otto.edison.hal.Embedded;
@@ -35,23 +37,34 @@ import sonia.scm.web.api.DtoValidator;
 
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import static de.otto.edison.hal.Link.link;
 import static org.mapstruct.factory.Mappers.getMapper;
 
 public class MirrorResource {
 
+  private static final int MAXIMUM_LOG_PAGE_SIZE = 100;
+
   private final MirrorConfigurationStore configurationService;
   private final MirrorService mirrorService;
   private final RepositoryManager repositoryManager;
@@ -63,6 +76,7 @@ public class MirrorResource {
   private final MirrorFilterConfigurationToDtoMapper toFiltersDtoMapper;
 
   private final LogEntryMapper logEntryMapper = getMapper(LogEntryMapper.class);
+  private final LogRetentionMapper logRetentionMapper = getMapper(LogRetentionMapper.class);
 
   @Inject
   public MirrorResource(MirrorConfigurationStore configurationService,
@@ -127,6 +141,31 @@ public class MirrorResource {
     configurationService.setFilterConfiguration(repository, configuration);
   }
 
+  @GET
+  @Path("/logRetention")
+  @Produces("application/json")
+  public LogRetentionDto getLogRetention(@Context UriInfo uriInfo, @PathParam("namespace") String namespace, @PathParam("name") String name) {
+    Repository repository = loadRepository(namespace, name);
+    MirrorConfiguration configuration =
+      configurationService.getConfiguration(repository)
+        .orElseThrow(() -> new NotConfiguredForMirrorException(repository));
+    String url = uriInfo.getAbsolutePath().toASCIIString();
+    Links.Builder links = Links.linkingTo().self(url);
+    if (MirrorPermissions.hasRepositoryMirrorPermission(repository)) {
+      links.single(link("update", url));
+    }
+    LogRetentionConfiguration logRetention = configuration.getLogRetention();
+    return logRetentionMapper.map(logRetention == null ? new LogRetentionConfiguration() : logRetention, links.build());
+  }
+
+  @PUT
+  @Path("/logRetention")
+  @Consumes("application/json")
+  public void setLogRetention(@PathParam("namespace") String namespace, @PathParam("name") String name, @Valid LogRetentionDto logRetentionDto) {
+    Repository repository = loadRepository(namespace, name);
+    configurationService.setLogRetention(repository, logRetentionMapper.map(logRetentionDto));
+  }
+
   @POST
   @Path("/sync")
   public void syncMirror(@PathParam("namespace") String namespace, @PathParam("name") String name) {
@@ -142,15 +181,62 @@ public class MirrorResource {
   @GET
   @Path("/logs")
   @Produces("application/json")
-  public HalRepresentation getLogs(@Context UriInfo uriInfo, @PathParam("namespace") String namespace, @PathParam("name") String name) {
+  public HalRepresentation getLogs(@Context UriInfo uriInfo,
+                                   @PathParam("namespace") String namespace,
+                                   @PathParam("name") String name,
+                                   @QueryParam("limit") @DefaultValue("20") int limit,
+                                   @QueryParam("cursor") String cursor,
+                                   @QueryParam("includeLog") @DefaultValue("true") boolean includeLog) {
     Repository repository = loadRepository(namespace, name);
-    List<LogEntry> entries = logStore.get(repository);
-    List<LogEntryDto> dtos = entries.stream().map(logEntryMapper::map).collect(Collectors.toList());
-
-    Links links = Links.linkingTo().self(uriInfo.getAbsolutePath().toASCIIString()).build();
+    int pageSize = Math.min(Math.max(1, limit), MAXIMUM_LOG_PAGE_SIZE);
+    LogStore.Page page;
+    try {
+      page = logStore.get(repository, pageSize, cursor);
+    } catch (IllegalArgumentException e) {
+      throw new BadRequestException("invalid cursor " + cursor, e);
+    }
+    List<LogEntryDto> dtos = page.getEntries().stream()
+      .map(entry -> map(uriInfo, entry, includeLog))
+      .collect(Collectors.toList());
+
+    Links.Builder links = Links.linkingTo().self(uriInfo.getRequestUri().toASCIIString());
+    if (page.getNext() != null) {
+      links.single(link("next", uriInfo.getAbsolutePathBuilder()
+        .queryParam("limit", pageSize)
+        .queryParam("cursor", page.getNext())
+        .queryParam("includeLog", includeLog)
+        .build()
+        .toASCIIString()));
+    }
     Embedded embedded = Embedded.embedded("entries", dtos);
 
-    return new HalRepresentation(links, embedded);
+    return new HalRepresentation(links.build(), embedded);
+  }
+
+  private LogEntryDto map(UriInfo uriInfo, LogEntry entry, boolean includeLog) {
+    Links.Builder links = Links.linkingTo();
+    if (entry.getId() != null) {
+      links.single(link("lines", uriInfo.getAbsolutePathBuilder().path(entry.getId()).path("lines").build().toASCIIString()));
+    }
+    if (includeLog) {
+      return logEntryMapper.map(entry, links.build());
+    }
+    return logEntryMapper.mapWithoutLog(entry, links.build());
+  }
+
+  @GET
+  @Path("/logs/{id}/lines")
+  @Produces("text/plain")
+  public StreamingOutput getLogLines(@PathParam("namespace") String namespace,
+                                     @PathParam("name") String name,
+                                     @PathParam("id") String id) {
+    Repository repository = loadRepository(namespace, name);
+    LogStore.Lines lines = logStore.getLines(repository, id);
+    return output -> {
+      Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+      lines.writeTo(writer);
+      writer.flush();
+    };
   }
 
   private Repository loadRepository(String namespace, String name) {
@@ -20,6 +20,11 @@ import com.cloudogu.scm.mirror.GlobalMirrorConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfigurationStore;
 import com.cloudogu.scm.mirror.MirrorService;
+import com.cloudogu.scm.mirror.MirrorStatus;
+import com.cloudogu.scm.mirror.MirrorStatusSummary;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.base.Strings;
 import org.mapstruct.factory.Mappers;
 import sonia.scm.api.v2.resources.RepositoryLinkProvider;
@@ -28,6 +33,7 @@ import sonia.scm.repository.Repository;
 import jakarta.inject.Inject;
 import jakarta.inject.Provider;
 import jakarta.validation.Valid;
+import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
@@ -35,8 +41,20 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.IOException;
 import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static org.mapstruct.factory.Mappers.getMapper;
 import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
@@ -44,6 +62,8 @@ import static sonia.scm.ScmConstraintViolationException.Builder.doThrow;
 @Path("v2/mirror/")
 public class MirrorRootResource {
 
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
   private final Provider<MirrorResource> mirrorResource;
   private final RepositoryLinkProvider repositoryLinkProvider;
   private final MirrorService mirrorService;
@@ -95,6 +115,113 @@ public class MirrorRootResource {
   @Consumes("application/json")
   public void setGlobalMirrorConfiguration(@Valid GlobalMirrorConfigurationDto configurationDto) {
     GlobalMirrorConfiguration configuration = fromDtoMapper.map(configurationDto);
+    doThrow().violation("maximum workers must not be lower than minimum workers", "maximumWorkers")
+      .when(configuration.getMaximumWorkers() < configuration.getMinimumWorkers());
+    doThrow().violation("maximum adaptive period must not be lower than minimum adaptive period", "maximumAdaptivePeriod")
+      .when(configuration.getMaximumAdaptivePeriod() < configuration.getMinimumAdaptivePeriod());
     configurationService.setGlobalConfiguration(configuration);
   }
+
+  /**
+   * Streams the status of all mirrors the current user may read. The status is served from memory, so that the
+   * status of thousands of mirrors can be polled with a single request.
+   *
+   * @param results         only mirrors with one of these results (including {@code DISABLED})
+   * @param namespace       only mirrors in this namespace
+   * @param staleForMinutes only mirrors without successful synchronization within this number of minutes (including
+   *                        mirrors which have never been synchronized successfully)
+   */
+  @GET
+  @Path("/status")
+  @Produces("application/json")
+  public StreamingOutput getStatus(@QueryParam("result") List<String> results,
+                                   @QueryParam("namespace") String namespace,
+                                   @QueryParam("staleForMinutes") Integer staleForMinutes) {
+    Predicate<MirrorStatusSummary> filter = resultFilter(results)
+      .and(namespaceFilter(namespace))
+      .and(stalenessFilter(staleForMinutes));
+    Stream<MirrorStatusSummary> summaries = mirrorService.getStatusSummaries();
+    return output -> {
+      try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("mirrors");
+        Iterator<MirrorStatusSummary> iterator = summaries.filter(filter).iterator();
+        while (iterator.hasNext()) {
+          writeSummary(generator, iterator.next());
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+    };
+  }
+
+  private static Predicate<MirrorStatusSummary> resultFilter(List<String> results) {
+    if (results == null || results.isEmpty()) {
+      return summary -> true;
+    }
+    Set<MirrorStatusDto.Result> accepted = EnumSet.noneOf(MirrorStatusDto.Result.class);
+    for (String result : results) {
+      try {
+        accepted.add(MirrorStatusDto.Result.valueOf(result.toUpperCase(Locale.ENGLISH)));
+      } catch (IllegalArgumentException e) {
+        throw new BadRequestException("unknown result: " + result);
+      }
+    }
+    return summary -> accepted.contains(resultOf(summary));
+  }
+
+  private static Predicate<MirrorStatusSummary> namespaceFilter(String namespace) {
+    if (Strings.isNullOrEmpty(namespace)) {
+      return summary -> true;
+    }
+    return summary -> namespace.equals(summary.getRepository().getNamespace());
+  }
+
+  private static Predicate<MirrorStatusSummary> stalenessFilter(Integer staleForMinutes) {
+    if (staleForMinutes == null) {
+      return summary -> true;
+    }
+    if (staleForMinutes < 0) {
+      throw new BadRequestException("staleForMinutes must not be negative");
+    }
+    Instant threshold = Instant.now().minus(Duration.ofMinutes(staleForMinutes));
+    return summary -> {
+      // failed synchronizations do not count, so that mirrors which fail for a long time are found as well
+      Instant lastSuccess = summary.getStatus() == null ? null : summary.getStatus().getLastSuccess();
+      return lastSuccess == null || !lastSuccess.isAfter(threshold);
+    };
+  }
+
+  private static MirrorStatusDto.Result resultOf(MirrorStatusSummary summary) {
+    if (summary.isDisabled()) {
+      return MirrorStatusDto.Result.DISABLED;
+    }
+    if (summary.getStatus() == null) {
+      return MirrorStatusDto.Result.NOT_YET_RUN;
+    }
+    return MirrorStatusDto.Result.valueOf(summary.getStatus().getResult().name());
+  }
+
+  private static void writeSummary(JsonGenerator generator, MirrorStatusSummary summary) throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("namespace", summary.getRepository().getNamespace());
+    generator.writeStringField("name", summary.getRepository().getName());
+    generator.writeStringField("result", resultOf(summary).name());
+    MirrorStatus status = summary.getStatus();
+    if (status != null) {
+      writeInstant(generator, "started", status.getStarted());
+      writeInstant(generator, "ended", status.getEnded());
+    }
+    if (summary.getPeriod() != null) {
+      generator.writeNumberField("period", summary.getPeriod().toMinutes());
+    }
+    writeInstant(generator, "nextSynchronization", summary.getNextSynchronization());
+    generator.writeEndObject();
+  }
+
+  private static void writeInstant(JsonGenerator generator, String field, Instant instant) throws IOException {
+    if (instant != null) {
+      generator.writeStringField(field, instant.toString());
+    }
+  }
 }
@@ -17,14 +17,21 @@
 package com.cloudogu.scm.mirror.api;
 
 import de.otto.edison.hal.HalRepresentation;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
 
 @Getter
-@AllArgsConstructor
+@Setter
+@RequiredArgsConstructor
 @SuppressWarnings("java:S2160") // equals not needed here
 public class MirrorStatusDto extends HalRepresentation {
   private final Result result;
+  private Instant nextSynchronization;
+  private int consecutiveFailures;
+  private Instant circuitOpenUntil;
 
   enum Result {
     SUCCESS,
@@ -19,6 +19,7 @@ package com.cloudogu.scm.mirror.api;
 import com.cloudogu.scm.mirror.MirrorConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfigurationStore;
 import com.cloudogu.scm.mirror.MirrorPermissions;
+import com.cloudogu.scm.mirror.MirrorService;
 import com.cloudogu.scm.mirror.MirrorStatus;
 import com.cloudogu.scm.mirror.MirrorStatusStore;
 import sonia.scm.api.v2.resources.Enrich;
@@ -40,12 +41,14 @@ public class RepositoryEnricher implements HalEnricher {
   private final Provider<ScmPathInfoStore> scmPathInfoStore;
   private final MirrorConfigurationStore configurationService;
   private final MirrorStatusStore statusStore;
+  private final MirrorService mirrorService;
 
   @Inject
-  public RepositoryEnricher(Provider<ScmPathInfoStore> scmPathInfoStore, MirrorConfigurationStore configurationService, MirrorStatusStore statusStore) {
+  public RepositoryEnricher(Provider<ScmPathInfoStore> scmPathInfoStore, MirrorConfigurationStore configurationService, MirrorStatusStore statusStore, MirrorService mirrorService) {
     this.scmPathInfoStore = scmPathInfoStore;
     this.configurationService = configurationService;
     this.statusStore = statusStore;
+    this.mirrorService = mirrorService;
   }
 
   @Override
@@ -68,7 +71,11 @@ public class RepositoryEnricher implements HalEnricher {
       appender.appendEmbedded("mirrorStatus", new MirrorStatusDto(MirrorStatusDto.Result.DISABLED));
     } else {
       MirrorStatus status = statusStore.getStatus(repository);
-      appender.appendEmbedded("mirrorStatus", new MirrorStatusDto(MirrorStatusDto.Result.valueOf(status.getResult().name())));
+      MirrorStatusDto statusDto = new MirrorStatusDto(MirrorStatusDto.Result.valueOf(status.getResult().name()));
+      mirrorService.getNextSynchronization(repository).ifPresent(statusDto::setNextSynchronization);
+      statusDto.setConsecutiveFailures(mirrorService.getConsecutiveFailures(repository));
+      mirrorService.getCircuitOpenUntil(repository, configuration).ifPresent(statusDto::setCircuitOpenUntil);
+      appender.appendEmbedded("mirrorStatus", statusDto);
     }
   }
 
@@ -79,6 +86,7 @@ public class RepositoryEnricher implements HalEnricher {
       String filterConfigurationLink = linkBuilder.method("getFilterConfiguration").parameters().href();
       appender.appendLink("mirrorFilterConfiguration", filterConfigurationLink);
     }
+    appender.appendLink("mirrorLogRetention", linkBuilder.method("getLogRetention").parameters().href());
     appender.appendLink("unmirror", linkBuilder.method("unmirror").parameters().href());
   }
 
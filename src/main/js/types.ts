@@ -89,6 +89,7 @@ export type LogEntry = HalRepresentation & {
   started: string;
   ended: string;
   log?: string[] | null;
+  phases?: Record<string, number>;
 };
 
 type EmbeddedLogEntries = Embedded & {
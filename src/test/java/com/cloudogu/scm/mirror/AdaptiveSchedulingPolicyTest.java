@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveSchedulingPolicyTest {
+
+  private final AdaptiveSchedulingPolicy policy =
+    new AdaptiveSchedulingPolicy(true, Duration.ofMinutes(5), Duration.ofHours(24));
+
+  @Test
+  void shouldUseConfiguredPeriodIfDisabled() {
+    assertThat(AdaptiveSchedulingPolicy.DISABLED.effectivePeriod(Duration.ofMinutes(60), Duration.ofMinutes(5)))
+      .isEqualTo(Duration.ofMinutes(60));
+    assertThat(AdaptiveSchedulingPolicy.DISABLED.adapt(Duration.ofMinutes(60), Duration.ofMinutes(60), status(MirrorStatus.Result.SUCCESS, 0)))
+      .isEqualTo(Duration.ofMinutes(60));
+  }
+
+  @Test
+  void shouldStartWithConfiguredPeriod() {
+    assertThat(policy.effectivePeriod(Duration.ofMinutes(60), null)).isEqualTo(Duration.ofMinutes(60));
+  }
+
+  @Test
+  void shouldUseAdaptedPeriod() {
+    assertThat(policy.effectivePeriod(Duration.ofMinutes(60), Duration.ofMinutes(90))).isEqualTo(Duration.ofMinutes(90));
+  }
+
+  @Test
+  void shouldLimitConfiguredPeriodToBounds() {
+    assertThat(policy.effectivePeriod(Duration.ofMinutes(1), null)).isEqualTo(Duration.ofMinutes(5));
+    assertThat(policy.effectivePeriod(Duration.ofDays(7), null)).isEqualTo(Duration.ofHours(24));
+  }
+
+  @Test
+  void shouldShortenPeriodAfterChanges() {
+    assertThat(policy.adapt(Duration.ofMinutes(60), Duration.ofMinutes(60), status(MirrorStatus.Result.SUCCESS, 2))).isEqualTo(Duration.ofMinutes(30));
+    assertThat(policy.adapt(Duration.ofMinutes(6), Duration.ofMinutes(6), status(MirrorStatus.Result.SUCCESS, 2))).isEqualTo(Duration.ofMinutes(5));
+  }
+
+  @Test
+  void shouldNotShortenPeriodBelowFractionOfConfiguredPeriod() {
+    Duration daily = Duration.ofDays(1);
+    Duration period = daily;
+    for (int i = 0; i < 20; ++i) {
+      period = policy.adapt(daily, period, status(MirrorStatus.Result.SUCCESS, 1));
+    }
+
+    assertThat(period).isEqualTo(daily.dividedBy(AdaptiveSchedulingPolicy.MAXIMUM_SPEEDUP));
+    assertThat(policy.effectivePeriod(daily, Duration.ofMinutes(5))).isEqualTo(Duration.ofHours(6));
+  }
+
+  @Test
+  void shouldStretchPeriodWithoutChanges() {
+    assertThat(policy.adapt(Duration.ofMinutes(60), Duration.ofMinutes(60), status(MirrorStatus.Result.SUCCESS, 0))).isEqualTo(Duration.ofMinutes(90));
+    assertThat(policy.adapt(Duration.ofHours(20), Duration.ofHours(20), status(MirrorStatus.Result.SUCCESS, 0))).isEqualTo(Duration.ofHours(24));
+  }
+
+  @Test
+  void shouldReachMaximumForDormantMirrorsWithinFewRuns() {
+    Duration period = Duration.ofMinutes(60);
+    for (int i = 0; i < 8; ++i) {
+      period = policy.adapt(Duration.ofMinutes(60), period, status(MirrorStatus.Result.SUCCESS, 0));
+    }
+
+    assertThat(period).isEqualTo(Duration.ofHours(24));
+  }
+
+  @Test
+  void shouldNotAdaptAfterFailuresOrSkippedRuns() {
+    assertThat(policy.adapt(Duration.ofMinutes(60), Duration.ofMinutes(60), status(MirrorStatus.Result.FAILED, 0))).isEqualTo(Duration.ofMinutes(60));
+    assertThat(policy.adapt(Duration.ofMinutes(60), Duration.ofMinutes(60), null)).isEqualTo(Duration.ofMinutes(60));
+  }
+
+  @Test
+  void shouldTreatRejectedUpdatesLikeSuccess() {
+    assertThat(policy.adapt(Duration.ofMinutes(60), Duration.ofMinutes(60), status(MirrorStatus.Result.FAILED_UPDATES, 1))).isEqualTo(Duration.ofMinutes(30));
+  }
+
+  private MirrorStatus status(MirrorStatus.Result result, int acceptedUpdates) {
+    return MirrorStatus.create(result, Instant.now(), acceptedUpdates);
+  }
+}
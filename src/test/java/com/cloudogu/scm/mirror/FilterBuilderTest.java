@@ -449,6 +449,34 @@ class FilterBuilderTest {
       assertThat(filter.acceptTag(tagUpdate).isAccepted()).isFalse();
       assertThat(filter.acceptTag(tagUpdate).getRejectReason()).get().isEqualTo(MESSAGE_PATTERN_NOT_MATCHED);
     }
+
+    @Test
+    void shouldCountAcceptedUpdates() {
+      MirrorFilter.Filter filter = mirrorFilter.getFilter(null);
+
+      filter.acceptBranch(mockBranchUpdate(new Changeset(), "main"));
+      filter.acceptBranch(mockBranchUpdate(new Changeset(), "testing/something"));
+      filter.acceptTag(mockTagUpdate(createSignedTag("release/42.0", "accepted", VERIFIED)));
+
+      assertThat(((ConfigurableFilter) mirrorFilter).getAcceptedUpdates()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCountUpdatesByTypeAndRejectReason() {
+      MirrorFilter.Filter filter = mirrorFilter.getFilter(null);
+
+      filter.acceptBranch(mockBranchUpdate(new Changeset(), "main"));
+      filter.acceptBranch(mockBranchUpdate(new Changeset(), "testing/something"));
+      filter.acceptTag(mockTagUpdate(createSignedTag("release/42.0", "accepted", VERIFIED)));
+      filter.acceptTag(mockTagUpdate(new Tag("beta/0.0.0.1", "abc")));
+
+      ConfigurableFilter configurableFilter = (ConfigurableFilter) mirrorFilter;
+      assertThat(configurableFilter.getAcceptedUpdates(ConfigurableFilter.UpdateType.BRANCH)).isEqualTo(1);
+      assertThat(configurableFilter.getAcceptedUpdates(ConfigurableFilter.UpdateType.TAG)).isEqualTo(1);
+      assertThat(configurableFilter.getRejectedUpdates(ConfigurableFilter.UpdateType.BRANCH, ConfigurableFilter.RejectReason.PATTERN_NOT_MATCHED)).isEqualTo(1);
+      assertThat(configurableFilter.getRejectedUpdates(ConfigurableFilter.UpdateType.TAG, ConfigurableFilter.RejectReason.PATTERN_NOT_MATCHED)).isEqualTo(1);
+      assertThat(configurableFilter.getRejectedUpdates(ConfigurableFilter.UpdateType.TAG, ConfigurableFilter.RejectReason.NO_VALID_SIGNATURE)).isZero();
+    }
   }
 
   @Nested
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+import sonia.scm.config.ScmConfiguration;
+import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryTestData;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GitUpstreamRefsProviderTest {
+
+  private final ScmConfiguration scmConfiguration = new ScmConfiguration();
+  private final GitUpstreamRefsProvider provider = new GitUpstreamRefsProvider(scmConfiguration);
+
+  private final Repository repository = RepositoryTestData.createHeartOfGold("git");
+  private final MirrorConfiguration configuration = new MirrorConfiguration();
+
+  @Test
+  void shouldSupportGitMirrors() {
+    assertThat(provider.isSupported(repository, configuration)).isTrue();
+  }
+
+  @Test
+  void shouldNotSupportOtherRepositoryTypes() {
+    assertThat(provider.isSupported(RepositoryTestData.createHeartOfGold("svn"), configuration)).isFalse();
+  }
+
+  @Test
+  void shouldNotSupportMirrorsWithOwnProxy() {
+    configuration.setProxyConfiguration(new MirrorProxyConfiguration(true, "proxy.hitchhiker.com", 3128, "", ""));
+
+    assertThat(provider.isSupported(repository, configuration)).isFalse();
+  }
+
+  @Test
+  void shouldNotSupportMirrorsIfGlobalProxyIsEnabled() {
+    scmConfiguration.setEnableProxy(true);
+
+    assertThat(provider.isSupported(repository, configuration)).isFalse();
+  }
+}
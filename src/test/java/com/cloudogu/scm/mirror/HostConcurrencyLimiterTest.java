@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HostConcurrencyLimiterTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final AtomicLong clock = new AtomicLong();
+  private final HostConcurrencyLimiter limiter = new HostConcurrencyLimiter(registry, clock::get);
+
+  @Test
+  void shouldExtractNormalizedHost() {
+    assertThat(HostConcurrencyLimiter.hostOf("https://GitHub.com/scm-manager/scm-manager.git")).isEqualTo("github.com");
+    assertThat(HostConcurrencyLimiter.hostOf("http://hog:8080/scm/repo/hitchhiker/hog")).isEqualTo("hog");
+  }
+
+  @Test
+  void shouldIgnoreUrlsWithoutHost() {
+    assertThat(HostConcurrencyLimiter.hostOf(null)).isNull();
+    assertThat(HostConcurrencyLimiter.hostOf("")).isNull();
+    assertThat(HostConcurrencyLimiter.hostOf("not a url")).isNull();
+  }
+
+  @Test
+  void shouldNotLimitJobsWithoutHost() {
+    limiter.configure(1, Map.of());
+
+    assertThat(limiter.tryAcquire(job(null))).isTrue();
+    assertThat(limiter.tryAcquire(job(null))).isTrue();
+  }
+
+  @Test
+  void shouldParkJobsForSaturatedHost() {
+    limiter.configure(2, Map.of());
+
+    assertThat(limiter.tryAcquire(job("hog"))).isTrue();
+    assertThat(limiter.tryAcquire(job("hog"))).isTrue();
+    assertThat(limiter.tryAcquire(job("hog"))).isFalse();
+    assertThat(limiter.tryAcquire(job("vogon"))).isTrue();
+
+    assertThat(limiter.getRunning("hog")).isEqualTo(2);
+    assertThat(limiter.getParked("hog")).isEqualTo(1);
+  }
+
+  @Test
+  void shouldHandBackParkedJobOnRelease() {
+    limiter.configure(1, Map.of());
+    MirrorJob running = job("hog");
+    MirrorJob parked = job("hog");
+    limiter.tryAcquire(running);
+    limiter.tryAcquire(parked);
+
+    assertThat(limiter.release(running)).isSameAs(parked);
+    assertThat(limiter.tryAcquire(parked)).isTrue();
+    assertThat(limiter.release(parked)).isNull();
+    assertThat(limiter.getRunning("hog")).isZero();
+  }
+
+  @Test
+  void shouldReserveSlotForUnparkedJob() {
+    limiter.configure(1, Map.of());
+    MirrorJob running = job("hog");
+    MirrorJob parked = job("hog");
+    limiter.tryAcquire(running);
+    limiter.tryAcquire(parked);
+
+    limiter.release(running);
+
+    assertThat(limiter.tryAcquire(job("hog"))).isFalse();
+    assertThat(limiter.tryAcquire(parked)).isTrue();
+    assertThat(limiter.getRunning("hog")).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotHandOverSlotWhenLimitHasBeenLowered() {
+    limiter.configure(2, Map.of());
+    MirrorJob first = job("hog");
+    limiter.tryAcquire(first);
+    limiter.tryAcquire(job("hog"));
+    limiter.tryAcquire(job("hog"));
+    limiter.configure(1, Map.of());
+
+    assertThat(limiter.release(first)).isNull();
+    assertThat(limiter.getRunning("hog")).isEqualTo(1);
+    assertThat(limiter.getParked("hog")).isEqualTo(1);
+  }
+
+  @Test
+  void shouldHandBackMostUrgentParkedJobFirst() {
+    limiter.configure(1, Map.of());
+    MirrorJob running = job("hog");
+    MirrorJob periodic = job("hog");
+    MirrorJob interactive = new MirrorJob(MirrorJobClass.INTERACTIVE, "hog", () -> {}, 0, job -> true);
+    limiter.tryAcquire(running);
+    limiter.tryAcquire(periodic);
+    limiter.tryAcquire(interactive);
+
+    assertThat(limiter.release(running)).isSameAs(interactive);
+  }
+
+  @Test
+  void shouldUseOverridesForHosts() {
+    limiter.configure(1, Map.of("HOG", 2));
+
+    assertThat(limiter.tryAcquire(job("hog"))).isTrue();
+    assertThat(limiter.tryAcquire(job("hog"))).isTrue();
+    assertThat(limiter.tryAcquire(job("vogon"))).isTrue();
+    assertThat(limiter.tryAcquire(job("vogon"))).isFalse();
+  }
+
+  @Test
+  void shouldNotLimitHostsByDefault() {
+    for (int i = 0; i < 10; ++i) {
+      assertThat(limiter.tryAcquire(job("hog"))).isTrue();
+    }
+    assertThat(limiter.getRunning("hog")).isEqualTo(10);
+  }
+
+  @Test
+  void shouldOnlyLimitOverriddenHostsWithoutDefaultLimit() {
+    limiter.configure(0, Map.of("hog", 1));
+
+    assertThat(limiter.tryAcquire(job("hog"))).isTrue();
+    assertThat(limiter.tryAcquire(job("hog"))).isFalse();
+    assertThat(limiter.tryAcquire(job("vogon"))).isTrue();
+    assertThat(limiter.tryAcquire(job("vogon"))).isTrue();
+  }
+
+  @Test
+  void shouldHandBackParkedJobsWhenLimitIsRaised() {
+    limiter.configure(1, Map.of());
+    limiter.tryAcquire(job("hog"));
+    MirrorJob first = job("hog");
+    MirrorJob second = job("hog");
+    limiter.tryAcquire(first);
+    limiter.tryAcquire(second);
+
+    assertThat(limiter.configure(2, Map.of())).containsExactly(first);
+    assertThat(limiter.configure(1, Map.of("hog", 3))).containsExactly(second);
+  }
+
+  @Test
+  void shouldRecordBlockedTimePerHost() {
+    limiter.configure(1, Map.of());
+    MirrorJob running = job("hog");
+    limiter.tryAcquire(running);
+    limiter.tryAcquire(job("hog"));
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(42));
+
+    limiter.release(running);
+
+    assertThat(registry.get("mirror.host.blocked").tag("host", "hog").timer().totalTime(TimeUnit.SECONDS)).isEqualTo(42);
+  }
+
+  private MirrorJob job(String host) {
+    return new MirrorJob(MirrorJobClass.PERIODIC, host, () -> {}, 0, job -> true);
+  }
+}
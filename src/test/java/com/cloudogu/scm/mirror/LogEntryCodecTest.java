@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LogEntryCodecTest {
+
+  private static final Instant STARTED = Instant.ofEpochSecond(1_600_000_000L, 42);
+  private static final Instant ENDED = Instant.ofEpochSecond(1_600_000_021L);
+
+  @Test
+  void shouldEncodeAndDecodeEntry() {
+    LogEntry entry = new LogEntry(MirrorStatus.Result.FAILED_UPDATES, STARTED, ENDED, Arrays.asList("first", null, "äöü"));
+
+    LogEntry decoded = LogEntryCodec.decode(LogEntryCodec.encode(entry));
+
+    assertThat(decoded.getResult()).isEqualTo(MirrorStatus.Result.FAILED_UPDATES);
+    assertThat(decoded.getStarted()).isEqualTo(STARTED);
+    assertThat(decoded.getEnded()).isEqualTo(ENDED);
+    assertThat(decoded.getLog()).containsExactly("first", null, "äöü");
+  }
+
+  @Test
+  void shouldEncodeEntryWithoutLines() {
+    LogEntry entry = new LogEntry(MirrorStatus.Result.SUCCESS, STARTED, ENDED, (List<String>) null);
+
+    LogEntry decoded = LogEntryCodec.decode(LogEntryCodec.encode(entry));
+
+    assertThat(decoded.getLog()).isEmpty();
+  }
+
+  @Test
+  void shouldDecodeEntryWithoutDictionary() {
+    LogEntry entry = new LogEntry(MirrorStatus.Result.SUCCESS, STARTED, ENDED, filterLines(100));
+
+    LogEntry decoded = LogEntryCodec.decode(LogEntryCodec.encode(entry, LogEntryCodec.NO_DICTIONARY));
+
+    assertThat(decoded.getLog()).isEqualTo(filterLines(100));
+  }
+
+  @Test
+  void shouldCompressRepetitiveLines() {
+    List<String> lines = filterLines(1000);
+    LogEntry entry = new LogEntry(MirrorStatus.Result.SUCCESS, STARTED, ENDED, lines);
+    int plainSize = lines.stream().mapToInt(line -> Integer.BYTES + line.getBytes(StandardCharsets.UTF_8).length).sum();
+
+    byte[] withDictionary = LogEntryCodec.encode(entry);
+    byte[] withoutDictionary = LogEntryCodec.encode(entry, LogEntryCodec.NO_DICTIONARY);
+
+    assertThat(withoutDictionary.length).isLessThan(plainSize / 10);
+    assertThat(withDictionary.length).isLessThanOrEqualTo(withoutDictionary.length);
+  }
+
+  @Test
+  void shouldDecodeLinesOnlyWhenRequested() {
+    byte[] record = LogEntryCodec.encode(new LogEntry(MirrorStatus.Result.SUCCESS, STARTED, ENDED, filterLines(10)));
+    // break the header of the deflated lines, which start after the version (1), the result (4 + 7), the instants
+    // (2 * 13), the phases (1), the line count (4), the dictionary (1) and the lengths (2 * 4)
+    record[52] = 0;
+
+    LogEntry decoded = LogEntryCodec.decode(record);
+
+    assertThat(decoded.getResult()).isEqualTo(MirrorStatus.Result.SUCCESS);
+    assertThrows(UncheckedIOException.class, decoded::getLog);
+  }
+
+  @Test
+  void shouldTreatLinesWithMismatchingDictionaryAsCorrupt() {
+    byte[] record = LogEntryCodec.encode(new LogEntry(MirrorStatus.Result.SUCCESS, STARTED, ENDED, filterLines(10)));
+    // change the id of the dictionary in the header of the deflated lines, which follows the two header bytes
+    record[54] ^= 1;
+
+    LogEntry decoded = LogEntryCodec.decode(record);
+
+    assertThrows(UncheckedIOException.class, decoded::getLog);
+    assertThrows(IOException.class, () -> LogEntryCodec.writeLines(record, new StringWriter()));
+  }
+
+  @Test
+  void shouldDecodeFormerPlainFormat() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(1);
+      writeString(output, "SUCCESS");
+      output.writeBoolean(true);
+      output.writeLong(STARTED.getEpochSecond());
+      output.writeInt(STARTED.getNano());
+      output.writeBoolean(false);
+      output.writeInt(2);
+      writeString(output, "first");
+      writeString(output, "second");
+    }
+
+    LogEntry decoded = LogEntryCodec.decode(bytes.toByteArray());
+    StringWriter lines = new StringWriter();
+    LogEntryCodec.writeLines(bytes.toByteArray(), lines);
+
+    assertThat(decoded.getResult()).isEqualTo(MirrorStatus.Result.SUCCESS);
+    assertThat(decoded.getStarted()).isEqualTo(STARTED);
+    assertThat(decoded.getEnded()).isNull();
+    assertThat(decoded.getLog()).containsExactly("first", "second");
+    assertThat(lines).hasToString("first\nsecond\n");
+  }
+
+  @Test
+  void shouldDecodeFormerDeflatedFormatWithoutPhases() throws IOException {
+    byte[] plainLines = encodeLines("first", "second");
+    byte[] deflated = deflate(plainLines);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(2);
+      writeString(output, "FAILED");
+      output.writeBoolean(false);
+      output.writeBoolean(false);
+      output.writeInt(2);
+      output.writeByte(LogEntryCodec.NO_DICTIONARY);
+      output.writeInt(plainLines.length);
+      output.writeInt(deflated.length);
+      output.write(deflated);
+    }
+
+    LogEntry decoded = LogEntryCodec.decode(bytes.toByteArray());
+    StringWriter lines = new StringWriter();
+    LogEntryCodec.writeLines(bytes.toByteArray(), lines);
+
+    assertThat(decoded.getResult()).isEqualTo(MirrorStatus.Result.FAILED);
+    assertThat(decoded.getPhases()).isEmpty();
+    assertThat(decoded.getLog()).containsExactly("first", "second");
+    assertThat(lines).hasToString("first\nsecond\n");
+  }
+
+  @Test
+  void shouldEncodeAndDecodePhases() throws IOException {
+    Map<SynchronizationPhase, Duration> phases = Map.of(
+      SynchronizationPhase.TRANSFER, Duration.ofMillis(4200),
+      SynchronizationPhase.FILTER, Duration.ofNanos(42)
+    );
+    byte[] record = LogEntryCodec.encode(new LogEntry(MirrorStatus.Result.SUCCESS, STARTED, ENDED, Arrays.asList("first", "second"), phases));
+
+    LogEntry decoded = LogEntryCodec.decode(record);
+    StringWriter lines = new StringWriter();
+    LogEntryCodec.writeLines(record, lines);
+
+    assertThat(decoded.getPhases()).isEqualTo(phases);
+    assertThat(decoded.getLog()).containsExactly("first", "second");
+    assertThat(lines).hasToString("first\nsecond\n");
+  }
+
+  @Test
+  void shouldSkipUnknownPhases() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeByte(3);
+      writeString(output, "SUCCESS");
+      output.writeBoolean(false);
+      output.writeBoolean(false);
+      output.writeByte(2);
+      writeString(output, "TELEPORTATION");
+      output.writeLong(42);
+      writeString(output, "KEYS");
+      output.writeLong(21);
+      output.writeInt(0);
+      output.writeByte(LogEntryCodec.NO_DICTIONARY);
+      output.writeInt(0);
+      byte[] deflated = deflate(new byte[0]);
+      output.writeInt(deflated.length);
+      output.write(deflated);
+    }
+
+    LogEntry decoded = LogEntryCodec.decode(bytes.toByteArray());
+
+    assertThat(decoded.getPhases()).containsOnly(entry(SynchronizationPhase.KEYS, Duration.ofNanos(21)));
+    assertThat(decoded.getLog()).isEmpty();
+  }
+
+  @Test
+  void shouldWriteDeflatedLines() throws IOException {
+    byte[] record = LogEntryCodec.encode(new LogEntry(MirrorStatus.Result.SUCCESS, STARTED, ENDED, Arrays.asList("first", "second")));
+
+    StringWriter lines = new StringWriter();
+    LogEntryCodec.writeLines(record, lines);
+
+    assertThat(lines).hasToString("first\nsecond\n");
+  }
+
+  private List<String> filterLines(int count) {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < count; ++i) {
+      lines.add("rejected branch feature/" + i + ": " + ConfigurableFilter.MESSAGE_PATTERN_NOT_MATCHED);
+    }
+    return lines;
+  }
+
+  private byte[] encodeLines(String... lines) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      for (String line : lines) {
+        writeString(output, line);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private void writeString(DataOutputStream output, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+}
@@ -18,6 +18,7 @@ package com.cloudogu.scm.mirror;
 
 import com.github.legman.EventBus;
 import com.google.common.collect.Iterables;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.shiro.authz.AuthorizationException;
 import org.github.sdorra.jse.ShiroExtension;
 import org.github.sdorra.jse.SubjectAware;
@@ -25,33 +26,76 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import sonia.scm.NotFoundException;
 import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryLocationResolver;
 import sonia.scm.repository.RepositoryTestData;
 import sonia.scm.repository.api.MirrorCommandResult;
 import sonia.scm.repository.api.MirrorCommandResult.ResultType;
 import sonia.scm.store.InMemoryByteDataStoreFactory;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(ShiroExtension.class)
 @SuppressWarnings("UnstableApiUsage")
 class LogStoreTest {
 
+  private final InMemoryByteDataStoreFactory storeFactory = new InMemoryByteDataStoreFactory();
+  private final RepositoryLocationResolver locationResolver = mock(RepositoryLocationResolver.class);
+  private final MirrorConfigurationStore configurationStore = mock(MirrorConfigurationStore.class);
+  private final MirrorRepositoryRegistry mirrorRepositories = mock(MirrorRepositoryRegistry.class);
+  private final ScheduledExecutorService retentionExecutor = mock(ScheduledExecutorService.class);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final Clock clock = mock(Clock.class);
+  private LogRetentionConfiguration retention = new LogRetentionConfiguration(LogStore.ENTRY_LIMIT, 0L, 0);
+
   private LogStore logStore;
   private EventBus eventBus;
 
   private Repository heartOfGold;
 
+  @TempDir
+  private Path repositoryDirectory;
+
   @BeforeEach
+  @SuppressWarnings("unchecked")
   void setup() {
+    RepositoryLocationResolver.RepositoryLocationResolverInstance<Path> locations = mock(RepositoryLocationResolver.RepositoryLocationResolverInstance.class);
+    when(locationResolver.forClass(Path.class)).thenReturn(locations);
+    when(locations.getLocation("42")).thenReturn(repositoryDirectory);
+    lenient().when(configurationStore.getApplicableLogRetention("42")).thenAnswer(invocation -> retention);
+    lenient().doAnswer(invocation -> {
+      invocation.getArgument(0, Runnable.class).run();
+      return null;
+    }).when(retentionExecutor).execute(any());
+    lenient().when(clock.instant()).thenReturn(Instant.now());
+
     eventBus = EventBus.builder().build();
-    logStore = new LogStore(new InMemoryByteDataStoreFactory());
+    logStore = createLogStore();
     eventBus.register(logStore);
 
     heartOfGold = RepositoryTestData.createHeartOfGold();
@@ -109,6 +153,162 @@ class LogStoreTest {
     assertThat(last.getLog()).containsOnly("sync 5");
   }
 
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldReadLogsAfterRestart() {
+    eventBus.post(event(MirrorStatus.Result.SUCCESS, 42L, "first sync"));
+    eventBus.post(event(MirrorStatus.Result.FAILED, 42L, "second sync"));
+
+    List<LogEntry> entries = createLogStore().get(heartOfGold);
+
+    assertThat(entries).extracting(LogEntry::getResult)
+      .containsExactly(MirrorStatus.Result.FAILED, MirrorStatus.Result.SUCCESS);
+    assertThat(entries.get(0).getLog()).containsOnly("second sync");
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldDeleteSegmentsNoLongerNeeded() throws IOException {
+    for (int i = 0; i < LogStore.ENTRY_LIMIT * 3; i++) {
+      eventBus.post(event(MirrorStatus.Result.SUCCESS, 21L, "sync " + i));
+    }
+
+    try (Stream<Path> segments = Files.list(repositoryDirectory.resolve("mirror-log"))) {
+      assertThat(segments.count()).isEqualTo(2);
+    }
+    assertThat(logStore.get(heartOfGold)).hasSize(LogStore.ENTRY_LIMIT);
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldReadPages() {
+    for (int i = 0; i < 5; i++) {
+      eventBus.post(event(MirrorStatus.Result.SUCCESS, 21L, "sync " + i));
+    }
+
+    LogStore.Page first = logStore.get(heartOfGold, 2, null);
+    LogStore.Page second = logStore.get(heartOfGold, 2, first.getNext());
+    LogStore.Page last = logStore.get(heartOfGold, 2, second.getNext());
+
+    assertThat(first.getEntries()).flatExtracting(LogEntry::getLog).containsExactly("sync 4", "sync 3");
+    assertThat(second.getEntries()).flatExtracting(LogEntry::getLog).containsExactly("sync 2", "sync 1");
+    assertThat(last.getEntries()).flatExtracting(LogEntry::getLog).containsExactly("sync 0");
+    assertThat(last.getNext()).isNull();
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldFailForInvalidCursor() {
+    assertThrows(IllegalArgumentException.class, () -> logStore.get(heartOfGold, 2, "earth"));
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldWriteLinesOfEntry() throws IOException {
+    eventBus.post(event(MirrorStatus.Result.SUCCESS, 42L, "first line", "second line"));
+    eventBus.post(event(MirrorStatus.Result.SUCCESS, 42L, "other sync"));
+    String id = logStore.get(heartOfGold).get(1).getId();
+
+    StringWriter writer = new StringWriter();
+    logStore.getLines(heartOfGold, id).writeTo(writer);
+
+    assertThat(writer).hasToString("first line\nsecond line\n");
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldFailForUnknownEntry() {
+    eventBus.post(event(MirrorStatus.Result.SUCCESS, 42L, "sync"));
+
+    assertThrows(NotFoundException.class, () -> logStore.getLines(heartOfGold, "4711"));
+    assertThrows(NotFoundException.class, () -> logStore.getLines(heartOfGold, "vogon"));
+  }
+
+  @Test
+  @SubjectAware("trillian")
+  void shouldFailToReadLinesWithoutPermission() {
+    assertThrows(AuthorizationException.class, () -> logStore.getLines(heartOfGold, "0"));
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldMoveLegacyEntries() {
+    LogStore.LogEntries legacyEntries = new LogStore.LogEntries();
+    legacyEntries.add(new LogEntry(MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now()), "old sync"));
+    storeFactory.withType(LogStore.LogEntries.class).withName("mirrorSyncLog").forRepository("42").build()
+      .put("main", legacyEntries);
+
+    eventBus.post(event(MirrorStatus.Result.FAILED, 42L, "new sync"));
+
+    List<LogEntry> entries = logStore.get(heartOfGold);
+    assertThat(entries).hasSize(2);
+    assertThat(entries.get(0).getLog()).containsOnly("new sync");
+    assertThat(entries.get(1).getLog()).containsOnly("old sync");
+    assertThat(storeFactory.withType(LogStore.LogEntries.class).withName("mirrorSyncLog").forRepository("42").build().getAll()).isEmpty();
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldKeepEntriesConfiguredForMirror() throws IOException {
+    retention = new LogRetentionConfiguration(50, 0L, 0);
+
+    for (int i = 0; i < LogStore.ENTRY_LIMIT * 3; i++) {
+      eventBus.post(event(MirrorStatus.Result.SUCCESS, 21L, "sync " + i));
+    }
+
+    assertThat(segmentCount()).isEqualTo(3);
+  }
+
+  @Test
+  @SubjectAware(value = "trillian", permissions = "repository:mirror:42")
+  void shouldDeleteSegmentsExceedingMaximumBytes() throws IOException {
+    retention = new LogRetentionConfiguration(0, 1L, 0);
+
+    for (int i = 0; i < LogStore.ENTRY_LIMIT * 3; i++) {
+      eventBus.post(event(MirrorStatus.Result.SUCCESS, 21L, "sync " + i));
+    }
+
+    assertThat(segmentCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldDeleteExpiredSegmentsOfAllMirrorsPeriodically() throws IOException {
+    for (int i = 0; i < LogStore.ENTRY_LIMIT + 1; i++) {
+      eventBus.post(event(MirrorStatus.Result.SUCCESS, 21L, "sync " + i));
+    }
+    assertThat(segmentCount()).isEqualTo(2);
+    retention = new LogRetentionConfiguration(0, 0L, 7);
+    when(clock.instant()).thenReturn(Instant.now().plus(Duration.ofDays(8)));
+    when(mirrorRepositories.getAll()).thenReturn(Set.of("42"));
+
+    ArgumentCaptor<Runnable> sweep = ArgumentCaptor.forClass(Runnable.class);
+    verify(retentionExecutor).scheduleWithFixedDelay(sweep.capture(), anyLong(), anyLong(), eq(TimeUnit.MINUTES));
+    sweep.getValue().run();
+
+    assertThat(segmentCount()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldReportTotalLogSize() throws IOException {
+    eventBus.post(event(MirrorStatus.Result.SUCCESS, 21L, "sync"));
+
+    long size;
+    try (Stream<Path> segments = Files.list(repositoryDirectory.resolve("mirror-log"))) {
+      size = segments.mapToLong(segment -> segment.toFile().length()).sum();
+    }
+    assertThat(meterRegistry.get("mirror.log.size").gauge().value()).isEqualTo(size);
+  }
+
+  private long segmentCount() throws IOException {
+    try (Stream<Path> segments = Files.list(repositoryDirectory.resolve("mirror-log"))) {
+      return segments.count();
+    }
+  }
+
+  private LogStore createLogStore() {
+    return new LogStore(storeFactory, locationResolver, () -> configurationStore, mirrorRepositories, meterRegistry, retentionExecutor, clock);
+  }
+
   private MirrorCommandResult result(ResultType result, long duration, String... logs) {
     return new MirrorCommandResult(result, Arrays.asList(logs), Duration.ofMillis(duration));
   }
@@ -23,6 +23,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import sonia.scm.HandlerEventType;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryEvent;
+import sonia.scm.repository.RepositoryImportEvent;
 import sonia.scm.repository.RepositoryTestData;
 
 import static com.google.inject.util.Providers.of;
@@ -36,18 +37,35 @@ class MirrorCleanupHookTest {
 
   @Mock
   private MirrorScheduler scheduler;
+  @Mock
+  private MirrorConfigurationStore configurationStore;
 
   @Test
   void shouldCancelScheduleForDeletedRepository() {
-    new MirrorCleanupHook(of(scheduler)).cleanupSchedules(new RepositoryEvent(HandlerEventType.DELETE, repository));
+    new MirrorCleanupHook(of(scheduler), of(configurationStore)).cleanupSchedules(new RepositoryEvent(HandlerEventType.DELETE, repository));
 
     verify(scheduler).cancel(repository);
+    verify(configurationStore).forget(repository.getId());
   }
 
   @Test
   void shouldIgnoreOtherEvents() {
-    new MirrorCleanupHook(of(scheduler)).cleanupSchedules(new RepositoryEvent(HandlerEventType.BEFORE_DELETE, repository));
+    new MirrorCleanupHook(of(scheduler), of(configurationStore)).cleanupSchedules(new RepositoryEvent(HandlerEventType.BEFORE_DELETE, repository));
 
     verify(scheduler, never()).cancel(repository);
   }
+
+  @Test
+  void shouldReloadConfigurationOfImportedRepository() {
+    new MirrorCleanupHook(of(scheduler), of(configurationStore)).registerImportedMirrors(new RepositoryImportEvent(repository, false));
+
+    verify(configurationStore).reload(repository.getId());
+  }
+
+  @Test
+  void shouldIgnoreFailedImports() {
+    new MirrorCleanupHook(of(scheduler), of(configurationStore)).registerImportedMirrors(new RepositoryImportEvent(repository, true));
+
+    verify(configurationStore, never()).reload(repository.getId());
+  }
 }
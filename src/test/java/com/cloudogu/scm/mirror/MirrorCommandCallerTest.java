@@ -32,6 +32,7 @@ import sonia.scm.repository.api.RepositoryServiceFactory;
 import sonia.scm.security.PublicKey;
 import sonia.scm.security.PublicKeyParser;
 
+import java.time.Duration;
 import java.util.Collection;
 
 import static java.util.Collections.emptyList;
@@ -63,6 +64,7 @@ class MirrorCommandCallerTest {
   private MirrorCommandCaller caller;
 
   private final Repository repository = RepositoryTestData.createHeartOfGold();
+  private final SynchronizationTimings timings = new SynchronizationTimings();
 
   @BeforeEach
   void supportMirrorCommand() {
@@ -190,8 +192,48 @@ class MirrorCommandCallerTest {
     verify(mirrorCommandBuilder).setIgnoreLfs(eq(true));
   }
 
+  @Test
+  void shouldRecordPhases() {
+    MirrorConfiguration configuration = createMirrorConfig();
+
+    invokeCaller(configuration, null);
+
+    assertThat(timings.getDurations()).containsOnlyKeys(
+      SynchronizationPhase.REPOSITORY_SERVICE,
+      SynchronizationPhase.KEYS,
+      SynchronizationPhase.CREDENTIALS,
+      SynchronizationPhase.TRANSFER,
+      SynchronizationPhase.FILTER
+    );
+  }
+
+  @Test
+  void shouldSeparateFilterFromTransfer() {
+    MirrorConfiguration configuration = createMirrorConfig();
+    ConfigurableFilter filter = mock(ConfigurableFilter.class);
+    when(filterBuilder.createFilter(configuration, emptyList())).thenReturn(filter);
+    when(filter.getEvaluationNanos()).thenReturn(Duration.ofHours(1).toNanos());
+
+    invokeCaller(configuration, null);
+
+    assertThat(timings.getDurations())
+      .containsEntry(SynchronizationPhase.FILTER, Duration.ofHours(1))
+      .containsEntry(SynchronizationPhase.TRANSFER, Duration.ZERO);
+  }
+
+  @Test
+  void shouldRecordTransferOfFailingCommand() {
+    MirrorConfiguration configuration = createMirrorConfig();
+
+    Assert.assertThrows(IllegalStateException.class, () -> caller.call(repository, configuration, command -> {
+      throw new IllegalStateException("upstream gone");
+    }, timings));
+
+    assertThat(timings.getDurations()).containsKey(SynchronizationPhase.TRANSFER);
+  }
+
   private MirrorCommandCaller.CallResult<Object> invokeCaller(MirrorConfiguration configuration, Object mockedResult) {
-    return caller.call(repository, configuration, mirrorCommandBuilder1 -> mockedResult);
+    return caller.call(repository, configuration, mirrorCommandBuilder1 -> mockedResult, timings);
   }
 
   private MirrorConfiguration createMirrorConfig() {
@@ -16,6 +16,7 @@
 
 package com.cloudogu.scm.mirror;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.shiro.authz.UnauthorizedException;
 import org.github.sdorra.jse.ShiroExtension;
 import org.github.sdorra.jse.SubjectAware;
@@ -30,6 +31,7 @@ import sonia.scm.ScmConstraintViolationException;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryManager;
 import sonia.scm.repository.RepositoryTestData;
+import sonia.scm.store.InMemoryByteDataStoreFactory;
 import sonia.scm.store.InMemoryConfigurationStoreFactory;
 import sonia.scm.web.security.AdministrationContext;
 import sonia.scm.web.security.PrivilegedAction;
@@ -37,7 +39,7 @@ import sonia.scm.web.security.PrivilegedAction;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
-import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -47,6 +49,8 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -67,12 +71,14 @@ class MirrorConfigurationStoreTest {
   @Mock
   private AdministrationContext administrationContext;
 
-  private final InMemoryConfigurationStoreFactory storeFactory = new InMemoryConfigurationStoreFactory();
+  private final InMemoryConfigurationStoreFactory storeFactory = spy(new InMemoryConfigurationStoreFactory());
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final MirrorRepositoryRegistry mirrorRepositories = new MirrorRepositoryRegistry(new InMemoryByteDataStoreFactory());
   private MirrorConfigurationStore store;
 
   @BeforeEach
   void createService() {
-    store = new MirrorConfigurationStore(storeFactory, scheduler, repositoryManager, administrationContext);
+    store = new MirrorConfigurationStore(storeFactory, scheduler, repositoryManager, administrationContext, mirrorRepositories, registry);
   }
 
   @BeforeAll
@@ -525,7 +531,7 @@ class MirrorConfigurationStoreTest {
     @Test
     void shouldBeReadOnlyByDefaultForMirro() {
       MirrorConfiguration existingMirrorConfiguration = new MirrorConfiguration();
-      storeFactory.get("mirror", REPOSITORY.getId()).set(existingMirrorConfiguration);
+      mockExistingConfiguration(existingMirrorConfiguration);
 
       boolean readOnly = store.isReadOnly(REPOSITORY.getId());
 
@@ -536,12 +542,183 @@ class MirrorConfigurationStoreTest {
     void shouldNotBeReadOnlyForMirrorIfDeactivated() {
       MirrorConfiguration existingMirrorConfiguration = new MirrorConfiguration();
       existingMirrorConfiguration.setAllBranchesProtected(false);
-      storeFactory.get("mirror", REPOSITORY.getId()).set(existingMirrorConfiguration);
+      mockExistingConfiguration(existingMirrorConfiguration);
 
       boolean readOnly = store.isReadOnly(REPOSITORY.getId());
 
       assertThat(readOnly).isFalse();
     }
+
+    @Test
+    void shouldReadConfigurationFromStoreOnlyOnce() {
+      mockExistingConfiguration(new MirrorConfiguration());
+
+      for (int i = 0; i < 3; ++i) {
+        assertThat(store.isReadOnly(REPOSITORY.getId())).isTrue();
+        assertThat(store.hasConfiguration(REPOSITORY.getId())).isTrue();
+      }
+
+      verify(storeFactory, times(1)).withType(MirrorConfiguration.class);
+      assertThat(registry.get("cache.gets").tag("cache", "mirror.configuration").tag("result", "hit").functionCounter().count()).isEqualTo(3);
+      assertThat(registry.get("cache.gets").tag("cache", "mirror.configuration").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReturnDefaultGlobalConfigurationWithoutStoredConfiguration() {
+      assertThat(store.getGlobalConfiguration().getMinimumWorkers()).isEqualTo(GlobalMirrorConfiguration.DEFAULT_MINIMUM_WORKERS);
+    }
+
+    @Test
+    void shouldReplaceGlobalConfiguration() {
+      GlobalMirrorConfiguration first = new GlobalMirrorConfiguration();
+      GlobalMirrorConfiguration second = new GlobalMirrorConfiguration();
+
+      store.setGlobalConfiguration(first);
+      store.setGlobalConfiguration(second);
+
+      assertThat(store.getGlobalConfiguration()).isSameAs(second);
+      verify(scheduler).configure(second);
+    }
+
+    @Test
+    void shouldLoadStoredGlobalConfigurationOnce() {
+      GlobalMirrorConfiguration globalConfiguration = new GlobalMirrorConfiguration();
+      globalConfiguration.setHttpsOnly(true);
+      store.setGlobalConfiguration(globalConfiguration);
+
+      MirrorConfigurationStore restartedStore = new MirrorConfigurationStore(storeFactory, scheduler, repositoryManager, administrationContext, mirrorRepositories, new SimpleMeterRegistry());
+
+      assertThat(restartedStore.getGlobalConfiguration().isHttpsOnly()).isTrue();
+    }
+
+    @Test
+    void shouldRegisterImportedMirror() {
+      storeFactory.get("mirror", "imported").set(new MirrorConfiguration());
+
+      store.reload("imported");
+
+      assertThat(mirrorRepositories.contains("imported")).isTrue();
+      assertThat(store.isReadOnly("imported")).isTrue();
+    }
+
+    @Test
+    void shouldNotBeReadOnlyAfterForget() {
+      mockExistingConfiguration(new MirrorConfiguration());
+      assertThat(store.isReadOnly(REPOSITORY.getId())).isTrue();
+
+      store.forget(REPOSITORY.getId());
+
+      assertThat(store.isReadOnly(REPOSITORY.getId())).isFalse();
+    }
+
+    @Test
+    void shouldNotReadOrCacheConfigurationOfOrdinaryRepository() {
+      store.hasConfiguration(REPOSITORY.getId());
+      store.isReadOnly(REPOSITORY.getId());
+      store.getApplicableLogRetention(REPOSITORY.getId());
+
+      verify(storeFactory, never()).withType(MirrorConfiguration.class);
+      assertThat(registry.get("cache.size").tag("cache", "mirror.configuration").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldUpdateCachedConfigurationOnChange() {
+      MirrorConfiguration existingConfiguration = new MirrorConfiguration();
+      mockExistingConfiguration(existingConfiguration);
+      assertThat(store.isReadOnly(REPOSITORY.getId())).isTrue();
+
+      MirrorConfiguration newConfiguration = new MirrorConfiguration();
+      newConfiguration.setAllBranchesProtected(false);
+      store.setConfiguration(REPOSITORY, newConfiguration);
+
+      assertThat(store.isReadOnly(REPOSITORY.getId())).isFalse();
+    }
+
+    @Test
+    void shouldNotBeReadOnlyAfterDeleteWithConcurrentCheck() {
+      MirrorRepositoryRegistry registrySpy = spy(mirrorRepositories);
+      MirrorConfigurationStore storeWithSpy = new MirrorConfigurationStore(storeFactory, scheduler, repositoryManager, administrationContext, registrySpy, new SimpleMeterRegistry());
+      mockExistingConfiguration(new MirrorConfiguration());
+      assertThat(storeWithSpy.isReadOnly(REPOSITORY.getId())).isTrue();
+      doAnswer(invocation -> {
+        // a read only check running while the configuration is deleted
+        storeWithSpy.isReadOnly(REPOSITORY.getId());
+        return invocation.callRealMethod();
+      }).when(registrySpy).unregister(REPOSITORY.getId());
+
+      storeWithSpy.deleteConfiguration(REPOSITORY);
+
+      assertThat(storeWithSpy.isReadOnly(REPOSITORY.getId())).isFalse();
+    }
+
+    @Test
+    void shouldRemoveCachedConfigurationOnDelete() {
+      mockExistingConfiguration(new MirrorConfiguration());
+      assertThat(store.hasConfiguration(REPOSITORY.getId())).isTrue();
+
+      store.deleteConfiguration(REPOSITORY);
+
+      assertThat(store.hasConfiguration(REPOSITORY.getId())).isFalse();
+      assertThat(store.isReadOnly(REPOSITORY.getId())).isFalse();
+    }
+
+    @Test
+    void shouldNotChangeCachedConfigurationWhenApplyingGlobalSettings() {
+      GlobalMirrorConfiguration globalConfiguration = new GlobalMirrorConfiguration();
+      globalConfiguration.setHttpsOnly(true);
+      globalConfiguration.setFastForwardOnly(true);
+      mockGlobalConfiguration(globalConfiguration);
+      mockExistingConfiguration(new MirrorConfiguration());
+
+      Optional<MirrorConfiguration> applicableConfiguration = store.getApplicableConfiguration(REPOSITORY);
+
+      assertThat(applicableConfiguration).get().extracting(MirrorConfiguration::isHttpsOnly).isEqualTo(true);
+      assertThat(store.getConfiguration(REPOSITORY)).get().satisfies(configuration -> {
+        assertThat(configuration.isHttpsOnly()).isFalse();
+        assertThat(configuration.isFastForwardOnly()).isFalse();
+      });
+    }
+
+    @Test
+    void shouldUseGlobalLogRetentionWithoutOverwrite() {
+      GlobalMirrorConfiguration globalConfiguration = new GlobalMirrorConfiguration();
+      globalConfiguration.setLogRetentionEntries(100);
+      globalConfiguration.setLogRetentionDays(30);
+      mockGlobalConfiguration(globalConfiguration);
+      mockExistingConfiguration(new MirrorConfiguration());
+
+      LogRetentionConfiguration retention = store.getApplicableLogRetention(REPOSITORY.getId());
+
+      assertThat(retention.getMaximumEntries()).isEqualTo(100);
+      assertThat(retention.getMaximumBytes()).isZero();
+      assertThat(retention.getMaximumAgeInDays()).isEqualTo(30);
+    }
+
+    @Test
+    void shouldOverwriteGlobalLogRetentionForMirror() {
+      GlobalMirrorConfiguration globalConfiguration = new GlobalMirrorConfiguration();
+      globalConfiguration.setLogRetentionEntries(100);
+      globalConfiguration.setLogRetentionDays(30);
+      mockGlobalConfiguration(globalConfiguration);
+      mockExistingConfiguration(new MirrorConfiguration());
+
+      store.setLogRetention(REPOSITORY, new LogRetentionConfiguration(null, 1024L, 0));
+
+      LogRetentionConfiguration retention = store.getApplicableLogRetention(REPOSITORY.getId());
+      assertThat(retention.getMaximumEntries()).isEqualTo(100);
+      assertThat(retention.getMaximumBytes()).isEqualTo(1024L);
+      assertThat(retention.getMaximumAgeInDays()).isZero();
+    }
+
+    @Test
+    void shouldNotRescheduleOnLogRetentionChange() {
+      mockExistingConfiguration(new MirrorConfiguration("https://hog/", 42, emptyList(), null, null, null));
+
+      store.setLogRetention(REPOSITORY, new LogRetentionConfiguration(10, null, null));
+
+      verify(scheduler, never()).schedule(any(), any());
+      verify(scheduler, never()).cancel(any());
+    }
   }
 
   @Nested
@@ -563,32 +740,91 @@ class MirrorConfigurationStoreTest {
 
     @Test
     void shouldScheduleRepositoriesAtStartup() {
-      Repository normalRepository = RepositoryTestData.createHeartOfGold();
       Repository mirrorRepository = RepositoryTestData.create42Puzzle();
-      when(repositoryManager.getAll())
-        .thenReturn(asList(normalRepository, mirrorRepository));
+      mirrorRepository.setId("mirror");
+      when(repositoryManager.get("mirror")).thenReturn(mirrorRepository);
       MirrorConfiguration configuration = mock(MirrorConfiguration.class);
       when(configuration.getSynchronizationPeriod()).thenReturn(5);
       mockExistingConfiguration(configuration, mirrorRepository);
 
       store.init(null);
+      store.getStartup().join();
+
+      verify(scheduler).scheduleAtStartup(mirrorRepository, configuration);
+      verify(repositoryManager, never()).getAll();
+      assertThat(registry.get("mirror.startup").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldReportStartupProgress() {
+      Repository mirrorRepository = RepositoryTestData.create42Puzzle();
+      mirrorRepository.setId("mirror");
+      when(repositoryManager.get("mirror")).thenReturn(mirrorRepository);
+      mockExistingConfiguration(new MirrorConfiguration(), mirrorRepository);
+      mirrorRepositories.register("deleted");
+
+      store.init(null);
+      store.getStartup().join();
+
+      assertThat(registry.get("mirror.startup.total").gauge().value()).isEqualTo(2);
+      assertThat(registry.get("mirror.startup.completed").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldContinueStartupAfterFailingMirror() {
+      Repository mirrorRepository = RepositoryTestData.create42Puzzle();
+      mirrorRepository.setId("mirror");
+      when(repositoryManager.get("broken")).thenThrow(new IllegalStateException("broken"));
+      when(repositoryManager.get("mirror")).thenReturn(mirrorRepository);
+      MirrorConfiguration configuration = new MirrorConfiguration();
+      configuration.setSynchronizationPeriod(5);
+      mockExistingConfiguration(configuration, mirrorRepository);
+      mirrorRepositories.register("broken");
+
+      store.init(null);
+      store.getStartup().join();
 
-      verify(scheduler).scheduleNow(mirrorRepository, configuration);
-      verify(scheduler, never()).scheduleNow(eq(normalRepository), any());
+      verify(scheduler).scheduleAtStartup(mirrorRepository, configuration);
     }
 
     @Test
     void shouldNotScheduleDisabledRepositoriesAtStartup() {
       Repository mirrorRepository = RepositoryTestData.create42Puzzle();
-      when(repositoryManager.getAll())
-        .thenReturn(singletonList(mirrorRepository));
+      mirrorRepository.setId("mirror");
+      when(repositoryManager.get("mirror")).thenReturn(mirrorRepository);
       MirrorConfiguration configuration = mock(MirrorConfiguration.class);
       when(configuration.getSynchronizationPeriod()).thenReturn(null);
       mockExistingConfiguration(configuration, mirrorRepository);
 
       store.init(null);
+      store.getStartup().join();
+
+      verify(scheduler, never()).scheduleAtStartup(any(), any());
+    }
+
+    @Test
+    void shouldIndexReadOnlyRepositoriesAtStartup() {
+      Repository mirrorRepository = RepositoryTestData.create42Puzzle();
+      mirrorRepository.setId("mirror");
+      when(repositoryManager.get("mirror")).thenReturn(mirrorRepository);
+      mockExistingConfiguration(new MirrorConfiguration(), mirrorRepository);
+
+      store.init(null);
+      store.getStartup().join();
+
+      assertThat(store.isReadOnly("normal")).isFalse();
+      assertThat(store.isReadOnly("mirror")).isTrue();
+      verify(storeFactory, times(1)).withType(MirrorConfiguration.class);
+    }
+
+    @Test
+    void shouldUnregisterDeletedRepositoriesAtStartup() {
+      mirrorRepositories.register("deleted");
+
+      store.init(null);
+      store.getStartup().join();
 
-      verify(scheduler, never()).scheduleNow(any(), any());
+      assertThat(mirrorRepositories.contains("deleted")).isFalse();
     }
   }
 
@@ -599,6 +835,7 @@ class MirrorConfigurationStoreTest {
   @SuppressWarnings("unchecked")
   private void mockExistingConfiguration(MirrorConfiguration existingConfiguration, Repository repository) {
     storeFactory.get("mirror", repository.getId()).set(existingConfiguration);
+    mirrorRepositories.register(repository.getId());
   }
 
   private void mockGlobalConfiguration(GlobalMirrorConfiguration globalMirrorConfiguration) {
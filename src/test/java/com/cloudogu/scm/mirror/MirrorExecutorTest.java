@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MirrorExecutorTest {
+
+  @Mock
+  private ScheduledExecutorService timer;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private ThreadPoolExecutor workers;
+  private ExecutorService virtualThreads;
+  private MirrorExecutor executor;
+
+  private final CountDownLatch blocker = new CountDownLatch(1);
+
+  @BeforeEach
+  void createExecutor() {
+    workers = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new PriorityBlockingQueue<>());
+    executor = new MirrorExecutor(registry, timer, workers, () -> Optional.ofNullable(virtualThreads));
+    configure(2, 4);
+  }
+
+  @AfterEach
+  void shutdownWorkers() {
+    blocker.countDown();
+    workers.shutdownNow();
+    if (virtualThreads != null) {
+      virtualThreads.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldGrowWithQueueDepth() {
+    for (int i = 0; i < 6; ++i) {
+      executor.execute(MirrorJobClass.PERIODIC, null, this::block);
+    }
+
+    assertThat(executor.getPoolSize()).isGreaterThan(2);
+  }
+
+  @Test
+  void shouldNotGrowBeyondMaximum() throws InterruptedException {
+    for (int i = 0; i < 6; ++i) {
+      executor.execute(MirrorJobClass.PERIODIC, null, this::block);
+    }
+    awaitBusyWorkers();
+
+    executor.adjustPoolSize();
+
+    assertThat(executor.getPoolSize()).isEqualTo(4);
+  }
+
+  @Test
+  void shouldShrinkToMinimumWhenIdle() {
+    configure(3, 4);
+    assertThat(executor.getPoolSize()).isEqualTo(3);
+
+    configure(1, 4);
+
+    assertThat(executor.getPoolSize()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldShrinkWhenMaximumIsLowered() throws InterruptedException {
+    for (int i = 0; i < 6; ++i) {
+      executor.execute(MirrorJobClass.PERIODIC, null, this::block);
+    }
+    awaitBusyWorkers();
+
+    configure(1, 2);
+
+    assertThat(executor.getPoolSize()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldNeverGoBelowOneWorker() {
+    configure(0, 0);
+
+    assertThat(executor.getPoolSize()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldAdjustPoolSizePeriodically() {
+    ArgumentCaptor<Runnable> adjustment = ArgumentCaptor.forClass(Runnable.class);
+    verify(timer).scheduleWithFixedDelay(adjustment.capture(), anyLong(), anyLong(), eq(TimeUnit.SECONDS));
+    for (int i = 0; i < 6; ++i) {
+      workers.execute(new MirrorJob(MirrorJobClass.PERIODIC, null, this::block, System.nanoTime(), job -> true));
+    }
+
+    adjustment.getValue().run();
+
+    assertThat(executor.getPoolSize()).isEqualTo(4);
+  }
+
+  @Test
+  void shouldSubmitScheduledTasksToWorkers() throws InterruptedException {
+    ArgumentCaptor<Runnable> scheduled = ArgumentCaptor.forClass(Runnable.class);
+    CountDownLatch executed = new CountDownLatch(1);
+
+    executor.schedule(null, executed::countDown, 5, TimeUnit.MINUTES);
+
+    verify(timer).schedule(scheduled.capture(), eq(5L), any());
+    scheduled.getValue().run();
+    assertThat(executed.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void shouldStartInteractiveJobsFirst() throws InterruptedException {
+    configure(1, 1);
+    CountDownLatch running = new CountDownLatch(1);
+    executor.execute(MirrorJobClass.PERIODIC, null, () -> {
+      running.countDown();
+      block();
+    });
+    running.await();
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    CountDownLatch done = new CountDownLatch(3);
+    executor.execute(MirrorJobClass.PERIODIC, null, () -> record(order, "periodic", done));
+    executor.execute(MirrorJobClass.INITIAL, null, () -> record(order, "initial", done));
+    executor.execute(MirrorJobClass.INTERACTIVE, null, () -> record(order, "interactive", done));
+    blocker.countDown();
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(order).containsExactly("interactive", "initial", "periodic");
+  }
+
+  @Test
+  void shouldExposeQueueDepthAndWaitTimePerClass() throws InterruptedException {
+    configure(1, 1);
+    CountDownLatch running = new CountDownLatch(1);
+    executor.execute(MirrorJobClass.INTERACTIVE, null, () -> {
+      running.countDown();
+      block();
+    });
+    running.await();
+
+    executor.execute(MirrorJobClass.PERIODIC, null, () -> {});
+    executor.execute(MirrorJobClass.PERIODIC, null, () -> {});
+
+    assertThat(registry.get("mirror.queue.depth").tag("class", "periodic").gauge().value()).isEqualTo(2);
+    assertThat(registry.get("mirror.queue.depth").tag("class", "interactive").gauge().value()).isZero();
+    assertThat(registry.get("mirror.queue.wait").tag("class", "interactive").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldRunJobsForOtherHostsWhileHostIsSaturated() throws InterruptedException {
+    GlobalMirrorConfiguration configuration = new GlobalMirrorConfiguration();
+    configuration.setMinimumWorkers(2);
+    configuration.setMaximumWorkers(2);
+    configuration.setMaximumSynchronizationsPerHost(1);
+    executor.configure(configuration);
+    CountDownLatch running = new CountDownLatch(1);
+    executor.execute(MirrorJobClass.PERIODIC, "hog", () -> {
+      running.countDown();
+      block();
+    });
+    running.await();
+
+    CountDownLatch sameHost = new CountDownLatch(1);
+    CountDownLatch otherHost = new CountDownLatch(1);
+    executor.execute(MirrorJobClass.INTERACTIVE, "hog", sameHost::countDown);
+    executor.execute(MirrorJobClass.PERIODIC, "vogon", otherHost::countDown);
+
+    assertThat(otherHost.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(sameHost.getCount()).isEqualTo(1);
+
+    blocker.countDown();
+
+    assertThat(sameHost.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void shouldRunOnVirtualThreadsIfConfigured() throws InterruptedException {
+    virtualThreads = Executors.newCachedThreadPool();
+    configure(MirrorExecutionMode.VIRTUAL_THREADS);
+    CountDownLatch executed = new CountDownLatch(1);
+
+    executor.execute(MirrorJobClass.INTERACTIVE, null, executed::countDown);
+
+    assertThat(executor.isUsingVirtualThreads()).isTrue();
+    assertThat(executed.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(workers.getTaskCount()).isZero();
+  }
+
+  @Test
+  void shouldFallBackToWorkersWithoutVirtualThreadSupport() {
+    configure(MirrorExecutionMode.VIRTUAL_THREADS);
+
+    assertThat(executor.isUsingVirtualThreads()).isFalse();
+  }
+
+  @Test
+  void shouldSwitchBackToWorkers() {
+    virtualThreads = Executors.newCachedThreadPool();
+    configure(MirrorExecutionMode.VIRTUAL_THREADS);
+
+    configure(MirrorExecutionMode.PLATFORM_THREADS);
+
+    assertThat(executor.isUsingVirtualThreads()).isFalse();
+  }
+
+  private void configure(int minimumWorkers, int maximumWorkers) {
+    GlobalMirrorConfiguration configuration = new GlobalMirrorConfiguration();
+    configuration.setMinimumWorkers(minimumWorkers);
+    configuration.setMaximumWorkers(maximumWorkers);
+    executor.configure(configuration);
+  }
+
+  private void configure(MirrorExecutionMode mode) {
+    GlobalMirrorConfiguration configuration = new GlobalMirrorConfiguration();
+    configuration.setMinimumWorkers(2);
+    configuration.setMaximumWorkers(4);
+    configuration.setExecutionMode(mode);
+    executor.configure(configuration);
+  }
+
+  private void awaitBusyWorkers() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (workers.getActiveCount() < workers.getPoolSize() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void record(List<String> order, String name, CountDownLatch done) {
+    order.add(name);
+    done.countDown();
+  }
+
+  private void block() {
+    try {
+      blocker.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
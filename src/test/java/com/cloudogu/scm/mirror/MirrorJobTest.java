@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MirrorJobTest {
+
+  private final long now = System.nanoTime();
+
+  @Test
+  void shouldPreferInteractiveJobs() {
+    MirrorJob periodic = job(MirrorJobClass.PERIODIC, now);
+    MirrorJob initial = job(MirrorJobClass.INITIAL, now);
+    MirrorJob interactive = job(MirrorJobClass.INTERACTIVE, now);
+
+    assertThat(poll(periodic, initial, interactive)).containsExactly(interactive, initial, periodic);
+  }
+
+  @Test
+  void shouldKeepOrderWithinClass() {
+    MirrorJob first = job(MirrorJobClass.PERIODIC, now);
+    MirrorJob second = job(MirrorJobClass.PERIODIC, now);
+    MirrorJob third = job(MirrorJobClass.PERIODIC, now);
+
+    assertThat(poll(third, first, second)).containsExactly(first, second, third);
+  }
+
+  @Test
+  void shouldNotStarvePeriodicJobs() {
+    MirrorJob periodic = job(MirrorJobClass.PERIODIC, now - TimeUnit.MINUTES.toNanos(11));
+    MirrorJob interactive = job(MirrorJobClass.INTERACTIVE, now);
+
+    assertThat(poll(interactive, periodic)).containsExactly(periodic, interactive);
+  }
+
+  @Test
+  void shouldPreferInteractiveJobsOverRecentPeriodicJobs() {
+    MirrorJob periodic = job(MirrorJobClass.PERIODIC, now - TimeUnit.MINUTES.toNanos(9));
+    MirrorJob interactive = job(MirrorJobClass.INTERACTIVE, now);
+
+    assertThat(poll(periodic, interactive)).containsExactly(interactive, periodic);
+  }
+
+  @Test
+  void shouldNotifyBeforeStart() {
+    AtomicBoolean notified = new AtomicBoolean();
+    AtomicBoolean notifiedBeforeRun = new AtomicBoolean();
+    MirrorJob job = new MirrorJob(MirrorJobClass.PERIODIC, null, () -> notifiedBeforeRun.set(notified.get()), now, j -> {
+      notified.set(true);
+      return true;
+    });
+
+    job.run();
+
+    assertThat(notifiedBeforeRun).isTrue();
+  }
+
+  @Test
+  void shouldNotRunDeclinedJob() {
+    AtomicBoolean run = new AtomicBoolean();
+    AtomicBoolean finished = new AtomicBoolean();
+    MirrorJob job = new MirrorJob(MirrorJobClass.PERIODIC, null, () -> run.set(true), now, new MirrorJob.Lifecycle() {
+      @Override
+      public boolean starting(MirrorJob job) {
+        return false;
+      }
+
+      @Override
+      public void finished(MirrorJob job) {
+        finished.set(true);
+      }
+    });
+
+    job.run();
+
+    assertThat(run).isFalse();
+    assertThat(finished).isFalse();
+  }
+
+  private List<MirrorJob> poll(MirrorJob... jobs) {
+    PriorityBlockingQueue<MirrorJob> queue = new PriorityBlockingQueue<>(List.of(jobs));
+    List<MirrorJob> result = new ArrayList<>();
+    queue.drainTo(result);
+    return result;
+  }
+
+  private MirrorJob job(MirrorJobClass jobClass, long enqueuedAt) {
+    return new MirrorJob(jobClass, null, () -> {}, enqueuedAt, job -> true);
+  }
+}
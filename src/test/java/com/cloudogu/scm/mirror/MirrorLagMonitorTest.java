@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryTestData;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.FAILED;
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.SUCCESS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MirrorLagMonitorTest {
+
+  @Mock
+  private MirrorService mirrorService;
+  @Mock
+  private MirrorConfigurationStore configurationStore;
+  @Mock
+  private TaskDecoratorFactory taskDecoratorFactory;
+  @Mock
+  private ScheduledExecutorService executor;
+  @Mock
+  private Clock clock;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final GlobalMirrorConfiguration globalConfiguration = new GlobalMirrorConfiguration();
+
+  private final Repository heartOfGold = RepositoryTestData.createHeartOfGold();
+  private final Repository puzzle = RepositoryTestData.create42Puzzle();
+  private final Repository restaurant = RepositoryTestData.createRestaurantAtTheEndOfTheUniverse();
+
+  private final Instant now = Instant.now();
+
+  private MirrorLagMonitor monitor;
+
+  @BeforeEach
+  void createMonitor() {
+    heartOfGold.setId("hog");
+    puzzle.setId("puzzle");
+    restaurant.setId("restaurant");
+    lenient().when(taskDecoratorFactory.decorate(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    lenient().when(configurationStore.getGlobalConfiguration()).thenReturn(globalConfiguration);
+    lenient().when(clock.instant()).thenReturn(now.plus(Duration.ofHours(3)));
+    monitor = new MirrorLagMonitor(() -> mirrorService, () -> configurationStore, taskDecoratorFactory, registry, executor, clock);
+  }
+
+  @Test
+  void shouldSampleEveryMinute() {
+    verify(executor).scheduleWithFixedDelay(any(), eq(60L), eq(60L), eq(TimeUnit.SECONDS));
+  }
+
+  @Test
+  void shouldRecordStalenessOfScheduledMirrors() {
+    when(mirrorService.getStatusSummaries()).thenReturn(Stream.of(
+      summary(heartOfGold, MirrorStatus.create(SUCCESS, now), 60),
+      new MirrorStatusSummary(puzzle, MirrorStatus.create(SUCCESS, now), null, null)
+    ));
+
+    monitor.sample();
+
+    assertThat(registry.get("mirror.staleness.mirrors").gauge().value()).isEqualTo(1);
+    assertThat(registry.get("mirror.staleness.max").gauge().value()).isBetween(3 * 3600d - 5, 3 * 3600d);
+  }
+
+  @Test
+  void shouldMeasureLagSinceLastSuccess() {
+    MirrorStatus success = MirrorStatus.create(SUCCESS, now);
+    MirrorStatus failed = MirrorStatus.create(FAILED, now, 0, success);
+    when(clock.instant()).thenReturn(success.getEnded().plus(Duration.ofHours(1)));
+    when(mirrorService.getStatusSummaries()).thenReturn(Stream.of(summary(heartOfGold, failed, 60)));
+
+    monitor.sample();
+
+    assertThat(failed.getLastSuccess()).isEqualTo(success.getEnded());
+    assertThat(registry.get("mirror.staleness.max").gauge().value()).isEqualTo(3600d);
+  }
+
+  @Test
+  void shouldReplaceStalenessWithLatestSample() {
+    when(mirrorService.getStatusSummaries())
+      .thenReturn(Stream.of(
+        summary(heartOfGold, MirrorStatus.create(FAILED, now), 60),
+        summary(puzzle, MirrorStatus.create(FAILED, now), 60),
+        summary(restaurant, MirrorStatus.create(FAILED, now), 60)
+      ))
+      .thenReturn(Stream.of(
+        summary(heartOfGold, MirrorStatus.create(FAILED, now.plus(Duration.ofHours(2))), 60)
+      ));
+
+    monitor.sample();
+    monitor.sample();
+
+    assertThat(registry.get("mirror.staleness.mirrors").gauge().value()).isEqualTo(1);
+    assertThat(registry.get("mirror.staleness.max").gauge().value()).isEqualTo(3600d);
+    assertThat(registry.get("mirror.staleness").tag("quantile", "0.5").gauge().value()).isEqualTo(3600d);
+  }
+
+  @Test
+  void shouldComputeNearestRankQuantiles() {
+    long[] sorted = {10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+
+    assertThat(MirrorLagMonitor.quantile(sorted, 0.5)).isEqualTo(50);
+    assertThat(MirrorLagMonitor.quantile(sorted, 0.95)).isEqualTo(100);
+    assertThat(MirrorLagMonitor.quantile(sorted, 0.1)).isEqualTo(10);
+    assertThat(MirrorLagMonitor.quantile(new long[0], 0.5)).isZero();
+  }
+
+  @Test
+  void shouldCountMirrorsOverSla() {
+    when(mirrorService.getStatusSummaries()).thenReturn(Stream.of(
+      summary(heartOfGold, MirrorStatus.create(SUCCESS, now), 60),
+      summary(puzzle, MirrorStatus.create(FAILED, now), 60),
+      summary(restaurant, MirrorStatus.create(SUCCESS, now), 240)
+    ));
+
+    monitor.sample();
+
+    assertThat(registry.get("mirror.lag.sla.exceeded").gauge().value()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldExportGaugesForMirrorsWithLargestLag() {
+    globalConfiguration.setMaximumLagGauges(2);
+    when(mirrorService.getStatusSummaries()).thenReturn(Stream.of(
+      summary(heartOfGold, MirrorStatus.create(FAILED, now.plus(Duration.ofHours(2))), 60),
+      summary(puzzle, MirrorStatus.create(FAILED, now), 60),
+      summary(restaurant, MirrorStatus.create(FAILED, now.minus(Duration.ofHours(1))), 60)
+    ));
+
+    monitor.sample();
+
+    assertThat(lagGauges()).containsExactlyInAnyOrder(
+      puzzle.getNamespaceAndName().toString(), restaurant.getNamespaceAndName().toString()
+    );
+    assertThat(registry.get("mirror.lag").tag("repository", restaurant.getNamespaceAndName().toString()).gauge().value())
+      .isGreaterThan(registry.get("mirror.lag").tag("repository", puzzle.getNamespaceAndName().toString()).gauge().value());
+  }
+
+  @Test
+  void shouldRemoveGaugesOfMirrorsNoLongerLagging() {
+    globalConfiguration.setMaximumLagGauges(1);
+    when(mirrorService.getStatusSummaries())
+      .thenReturn(Stream.of(
+        summary(heartOfGold, MirrorStatus.create(FAILED, now.minus(Duration.ofHours(1))), 60),
+        summary(puzzle, MirrorStatus.create(SUCCESS, now), 60)
+      ))
+      .thenReturn(Stream.of(
+        summary(heartOfGold, MirrorStatus.create(FAILED, now.plus(Duration.ofHours(2))), 60),
+        summary(puzzle, MirrorStatus.create(SUCCESS, now), 60)
+      ));
+
+    monitor.sample();
+    assertThat(lagGauges()).containsExactly(heartOfGold.getNamespaceAndName().toString());
+
+    monitor.sample();
+    assertThat(lagGauges()).containsExactly(puzzle.getNamespaceAndName().toString());
+  }
+
+  private List<String> lagGauges() {
+    return registry.find("mirror.lag").gauges().stream()
+      .map(gauge -> gauge.getId().getTag("repository"))
+      .collect(Collectors.toList());
+  }
+
+  private MirrorStatusSummary summary(Repository repository, MirrorStatus status, int periodInMinutes) {
+    return new MirrorStatusSummary(repository, status, Duration.ofMinutes(periodInMinutes), null);
+  }
+}
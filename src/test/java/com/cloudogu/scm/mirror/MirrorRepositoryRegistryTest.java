@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+import sonia.scm.store.InMemoryByteDataStoreFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MirrorRepositoryRegistryTest {
+
+  private final InMemoryByteDataStoreFactory storeFactory = new InMemoryByteDataStoreFactory();
+  private final MirrorRepositoryRegistry registry = new MirrorRepositoryRegistry(storeFactory);
+
+  @Test
+  void shouldRegisterRepository() {
+    registry.register("42");
+
+    assertThat(registry.contains("42")).isTrue();
+    assertThat(registry.getAll()).containsExactly("42");
+  }
+
+  @Test
+  void shouldUnregisterRepository() {
+    registry.register("42");
+
+    registry.unregister("42");
+
+    assertThat(registry.contains("42")).isFalse();
+    assertThat(registry.getAll()).isEmpty();
+  }
+
+  @Test
+  void shouldLoadRegisteredRepositories() {
+    registry.register("42");
+    registry.register("23");
+
+    MirrorRepositoryRegistry restartedRegistry = new MirrorRepositoryRegistry(storeFactory);
+
+    assertThat(restartedRegistry.getAll()).containsExactlyInAnyOrder("42", "23");
+  }
+}
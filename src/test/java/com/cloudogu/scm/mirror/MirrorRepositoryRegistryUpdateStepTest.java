@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.store.InMemoryByteDataStoreFactory;
+import sonia.scm.store.InMemoryConfigurationStoreFactory;
+import sonia.scm.update.RepositoryUpdateIterator;
+
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@ExtendWith(MockitoExtension.class)
+class MirrorRepositoryRegistryUpdateStepTest {
+
+  @Mock
+  private RepositoryUpdateIterator repositoryUpdateIterator;
+
+  private final InMemoryConfigurationStoreFactory storeFactory = new InMemoryConfigurationStoreFactory();
+  private final InMemoryByteDataStoreFactory registryStoreFactory = new InMemoryByteDataStoreFactory();
+  private final MirrorRepositoryRegistry registry = new MirrorRepositoryRegistry(registryStoreFactory);
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void shouldRegisterRepositoriesWithMirrorConfiguration() {
+    storeFactory.get("mirror", "mirror").set(new MirrorConfiguration());
+    doAnswer(invocation -> {
+      Consumer<String> consumer = invocation.getArgument(0, Consumer.class);
+      consumer.accept("mirror");
+      consumer.accept("normal");
+      return null;
+    }).when(repositoryUpdateIterator).forEachRepository(any());
+
+    new MirrorRepositoryRegistryUpdateStep(repositoryUpdateIterator, storeFactory, registry).doUpdate();
+
+    assertThat(registry.getAll()).containsExactly("mirror");
+    assertThat(new MirrorRepositoryRegistry(registryStoreFactory).getAll()).containsExactly("mirror");
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.event.ScmEventBus;
+import sonia.scm.notifications.NotificationSender;
+import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryTestData;
+import sonia.scm.repository.api.MirrorCommandResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.FAILED;
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.SUCCESS;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("UnstableApiUsage")
+@ExtendWith(MockitoExtension.class)
+class MirrorResultWriterTest {
+
+  @Mock
+  private MirrorStatusStore statusStore;
+  @Mock
+  private NotificationSender notificationSender;
+  @Mock
+  private ScmEventBus eventBus;
+  @Mock
+  private TaskDecoratorFactory taskDecoratorFactory;
+  @Mock
+  private ExecutorService executor;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final List<Runnable> scheduledDrains = new ArrayList<>();
+
+  private final Repository repository = RepositoryTestData.createHeartOfGold();
+  private final MirrorConfiguration configuration = new MirrorConfiguration();
+
+  private MirrorResultWriter writer;
+
+  @BeforeEach
+  void createWriter() {
+    lenient().doAnswer(invocation -> scheduledDrains.add(invocation.getArgument(0)))
+      .when(executor).execute(any());
+    lenient().when(taskDecoratorFactory.decorate(any()))
+      .thenAnswer(invocation -> invocation.getArgument(0));
+    writer = new MirrorResultWriter(statusStore, notificationSender, eventBus, taskDecoratorFactory, registry, executor);
+  }
+
+  @Test
+  void shouldNotPersistOnCallingThread() {
+    writer.write(repository, configuration, result(), null, new MirrorStatus(SUCCESS), emptyMap());
+
+    verify(statusStore, never()).persist(any(), any());
+    verify(eventBus, never()).post(any());
+    assertThat(registry.get("mirror.results.pending").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldPostResultsInOrderAndPersistLatestStatus() {
+    MirrorStatus failed = new MirrorStatus(FAILED);
+    MirrorStatus success = new MirrorStatus(SUCCESS);
+    writer.write(repository, configuration, result(), null, failed, emptyMap());
+    writer.write(repository, configuration, result(), null, success, emptyMap());
+
+    runScheduledDrains();
+
+    InOrder inOrder = inOrder(eventBus, statusStore);
+    inOrder.verify(eventBus).post(argThat(event -> ((MirrorSyncEvent) event).getStatus() == failed));
+    inOrder.verify(eventBus).post(argThat(event -> ((MirrorSyncEvent) event).getStatus() == success));
+    inOrder.verify(statusStore).persist(repository, success);
+    verify(statusStore, never()).persist(repository, failed);
+  }
+
+  @Test
+  void shouldPersistStatusOfEveryRepositoryInBatch() {
+    repository.setId("hog");
+    Repository otherRepository = RepositoryTestData.create42Puzzle();
+    otherRepository.setId("puzzle");
+    MirrorStatus failed = new MirrorStatus(FAILED);
+    MirrorStatus success = new MirrorStatus(SUCCESS);
+    writer.write(repository, configuration, result(), null, failed, emptyMap());
+    writer.write(otherRepository, configuration, result(), null, success, emptyMap());
+
+    runScheduledDrains();
+
+    verify(statusStore).persist(repository, failed);
+    verify(statusStore).persist(otherRepository, success);
+  }
+
+  @Test
+  void shouldWriteInBatches() {
+    int count = MirrorResultWriter.MAXIMUM_BATCH_SIZE + 20;
+    for (int i = 0; i < count; ++i) {
+      writer.write(repository, configuration, result(), null, new MirrorStatus(SUCCESS), emptyMap());
+    }
+    assertThat(scheduledDrains).hasSize(1);
+
+    runScheduledDrains();
+
+    verify(eventBus, times(count)).post(any());
+    verify(statusStore, times(2)).persist(eq(repository), any());
+    assertThat(registry.get("mirror.results.batch").summary().count()).isEqualTo(2);
+    assertThat(registry.get("mirror.results.batch").summary().max()).isEqualTo(MirrorResultWriter.MAXIMUM_BATCH_SIZE);
+  }
+
+  @Test
+  void shouldNotifyManagingUsersIfResultChanged() {
+    MirrorConfiguration withUsers = new MirrorConfiguration();
+    withUsers.setManagingUsers(List.of("trillian"));
+
+    writer.write(repository, withUsers, result(), new MirrorStatus(SUCCESS), new MirrorStatus(FAILED), emptyMap());
+    runScheduledDrains();
+
+    verify(notificationSender).send(argThat(notification -> notification.getMessage().equals(FAILED.getNotificationKey())), eq("trillian"));
+  }
+
+  @Test
+  void shouldNotNotifyManagingUsersIfResultIsUnchanged() {
+    MirrorConfiguration withUsers = new MirrorConfiguration();
+    withUsers.setManagingUsers(List.of("trillian"));
+
+    writer.write(repository, withUsers, result(), new MirrorStatus(FAILED), new MirrorStatus(FAILED), emptyMap());
+    runScheduledDrains();
+
+    verify(notificationSender, never()).send(any(), any());
+  }
+
+  @Test
+  void shouldPassPreviousStatusWithEvent() {
+    MirrorStatus previous = new MirrorStatus(FAILED);
+
+    writer.write(repository, configuration, result(), previous, new MirrorStatus(SUCCESS), emptyMap());
+    runScheduledDrains();
+
+    verify(eventBus).post(argThat(event -> ((MirrorSyncEvent) event).getPreviousStatus() == previous));
+  }
+
+  @Test
+  void shouldPassPhasesWithEvent() {
+    Map<SynchronizationPhase, Duration> phases = Map.of(SynchronizationPhase.TRANSFER, Duration.ofSeconds(42));
+
+    writer.write(repository, configuration, result(), null, new MirrorStatus(SUCCESS), phases);
+    runScheduledDrains();
+
+    verify(eventBus).post(argThat(event -> ((MirrorSyncEvent) event).getPhases().equals(phases)));
+  }
+
+  @Test
+  void shouldContinueWithBatchAfterFailure() {
+    repository.setId("hog");
+    Repository otherRepository = RepositoryTestData.create42Puzzle();
+    otherRepository.setId("puzzle");
+    MirrorStatus failing = new MirrorStatus(FAILED);
+    doThrow(new IllegalStateException("disk full")).when(statusStore).persist(repository, failing);
+    MirrorStatus success = new MirrorStatus(SUCCESS);
+
+    writer.write(repository, configuration, result(), null, failing, emptyMap());
+    writer.write(otherRepository, configuration, result(), null, success, emptyMap());
+    runScheduledDrains();
+
+    verify(statusStore).persist(otherRepository, success);
+  }
+
+  @Test
+  void shouldFlushPendingResultsOnShutdown() throws InterruptedException {
+    when(executor.awaitTermination(anyLong(), any())).thenReturn(true);
+    writer.write(repository, configuration, result(), null, new MirrorStatus(FAILED), emptyMap());
+    writer.write(repository, configuration, result(), null, new MirrorStatus(SUCCESS), emptyMap());
+
+    writer.contextDestroyed(null);
+
+    verify(executor).shutdown();
+    verify(eventBus, times(2)).post(any());
+    verify(statusStore).persist(eq(repository), argThat(status -> status.getResult() == SUCCESS));
+  }
+
+  @Test
+  void shouldDiscardPendingResultsOfRepository() {
+    repository.setId("hog");
+    Repository otherRepository = RepositoryTestData.create42Puzzle();
+    otherRepository.setId("puzzle");
+    writer.write(repository, configuration, result(), null, new MirrorStatus(SUCCESS), emptyMap());
+    writer.write(otherRepository, configuration, result(), null, new MirrorStatus(SUCCESS), emptyMap());
+
+    writer.discard("hog");
+    runScheduledDrains();
+
+    verify(statusStore, never()).persist(eq(repository), any());
+    verify(statusStore).persist(eq(otherRepository), any());
+    verify(eventBus).post(any());
+  }
+
+  @Test
+  void shouldWriteSynchronouslyIfWriterHasBeenShutDownConcurrently() {
+    doThrow(RejectedExecutionException.class).when(executor).execute(any());
+
+    writer.write(repository, configuration, result(), null, new MirrorStatus(SUCCESS), emptyMap());
+
+    verify(statusStore).persist(eq(repository), any());
+    assertThat(registry.get("mirror.results.pending").gauge().value()).isZero();
+  }
+
+  @Test
+  void shouldWriteSynchronouslyAfterShutdown() throws InterruptedException {
+    when(executor.awaitTermination(anyLong(), any())).thenReturn(true);
+    writer.shutdown();
+
+    writer.write(repository, configuration, result(), null, new MirrorStatus(SUCCESS), emptyMap());
+
+    verify(statusStore).persist(eq(repository), any());
+    assertThat(scheduledDrains).isEmpty();
+  }
+
+  private void runScheduledDrains() {
+    while (!scheduledDrains.isEmpty()) {
+      scheduledDrains.remove(0).run();
+    }
+  }
+
+  private MirrorCommandResult result() {
+    return new MirrorCommandResult(MirrorCommandResult.ResultType.OK, emptyList(), Duration.ZERO);
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.cloudogu.scm.mirror.MirrorScheduleStore.ScheduleState;
+import org.junit.jupiter.api.Test;
+import sonia.scm.store.InMemoryByteDataStoreFactory;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MirrorScheduleStoreTest {
+
+  private final MirrorScheduleStore store = new MirrorScheduleStore(new InMemoryByteDataStoreFactory());
+
+  @Test
+  void shouldStoreScheduleState() {
+    Instant lastCompleted = Instant.now();
+    Instant nextDue = lastCompleted.plusSeconds(3600);
+
+    store.set("42", new ScheduleState(lastCompleted, nextDue));
+
+    assertThat(store.get("42")).get().satisfies(state -> {
+      assertThat(state.getLastCompleted()).isEqualTo(lastCompleted);
+      assertThat(state.getNextDue()).isEqualTo(nextDue);
+    });
+  }
+
+  @Test
+  void shouldReturnEmptyForUnknownRepository() {
+    assertThat(store.get("unknown")).isEmpty();
+  }
+
+  @Test
+  void shouldRemoveScheduleState() {
+    store.set("42", new ScheduleState(null, Instant.now()));
+
+    store.remove("42");
+
+    assertThat(store.get("42")).isEmpty();
+    assertThat(store.getAll()).isEmpty();
+  }
+}
@@ -14,72 +14,377 @@
  * along with this program. If not, see https://www.gnu.org/licenses/.
  */
 
+
 package com.cloudogu.scm.mirror;
 
+import com.cloudogu.scm.mirror.MirrorScheduleStore.ScheduleState;
 import com.cloudogu.scm.mirror.MirrorWorker.CancelableSchedule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryTestData;
 
-import java.util.Collections;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class MirrorSchedulerTest {
 
   @Mock
   private MirrorWorker worker;
+  @Mock
+  private MirrorScheduleStore scheduleStore;
+  @Mock
+  private MirrorStatusStore statusStore;
+  @Mock
+  private MirrorResultWriter resultWriter;
+  @Mock
+  private UpstreamCircuitBreaker circuitBreaker;
 
   @InjectMocks
   private MirrorScheduler scheduler;
 
   private final Set<String> cancelledSchedules = new HashSet<>();
 
+  private final Repository repository = RepositoryTestData.create42Puzzle();
+
   @BeforeEach
   void mockWorkerCancellation() {
-    doAnswer(
+    repository.setId("42");
+    lenient().doAnswer(
       invocation -> (CancelableSchedule) (() -> cancelledSchedules.add(invocation.getArgument(0, Repository.class).getId()))
-    ).when(worker).scheduleUpdate(any(), any(), anyInt());
+    ).when(worker).scheduleUpdate(any(), any(), any(), any());
   }
 
   @Test
   void shouldSchedule() {
-    Repository repository = RepositoryTestData.create42Puzzle();
-    MirrorConfiguration configuration = mockConfiguration(repository, 42);
+    MirrorConfiguration configuration = mockConfiguration(42);
 
     scheduler.schedule(repository, configuration);
 
-    verify(worker).scheduleUpdate(repository, configuration, 42);
+    verify(worker).scheduleUpdate(eq(repository), eq(configuration), argThat(delayOf(Duration.ofMinutes(42))), any());
   }
 
   @Test
   void shouldCancelExistingSchedule() {
-    Repository repository = RepositoryTestData.create42Puzzle();
-    scheduler.schedule(repository, mockConfiguration(repository, 42));
+    scheduler.schedule(repository, mockConfiguration(42));
 
-    MirrorConfiguration configuration = mockConfiguration(repository, 23);
+    MirrorConfiguration configuration = mockConfiguration(23);
     scheduler.schedule(repository, configuration);
 
-    verify(worker).scheduleUpdate(eq(repository), any(), eq(42));
+    verify(worker).scheduleUpdate(eq(repository), any(), argThat(delayOf(Duration.ofMinutes(42))), any());
     assertThat(cancelledSchedules).contains(repository.getId());
-    verify(worker).scheduleUpdate(repository, configuration, 23);
+    verify(worker).scheduleUpdate(eq(repository), eq(configuration), argThat(delayOf(Duration.ofMinutes(23))), any());
+  }
+
+  @Test
+  void shouldDelayStartupByStableOffsetWithinPeriod() {
+    MirrorConfiguration configuration = mockConfiguration(60);
+
+    scheduler.scheduleAtStartup(repository, configuration);
+
+    Duration expectedDelay = Duration.ofMinutes(1).plus(MirrorScheduler.startupOffset("42", Duration.ofMinutes(60)));
+    verify(worker).scheduleUpdate(eq(repository), eq(configuration), argThat(delayOf(expectedDelay)), any());
+  }
+
+  @Test
+  void shouldCreateStableOffsets() {
+    assertThat(MirrorScheduler.startupOffset("42", Duration.ofMinutes(60)))
+      .isEqualTo(MirrorScheduler.startupOffset("42", Duration.ofMinutes(60)));
+  }
+
+  @Test
+  void shouldSpreadOffsetsOverPeriod() {
+    Set<Long> quarters = new HashSet<>();
+    for (int i = 0; i < 100; ++i) {
+      Duration offset = MirrorScheduler.startupOffset("repository-" + i, Duration.ofMinutes(60));
+      assertThat(offset).isBetween(Duration.ZERO, Duration.ofMinutes(60));
+      quarters.add(offset.toMinutes() / 15);
+    }
+
+    assertThat(quarters).containsExactlyInAnyOrder(0L, 1L, 2L, 3L);
+  }
+
+  @Test
+  void shouldExposePlannedFirstRun() {
+    Instant before = Instant.now();
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    Instant expected = before.plus(Duration.ofMinutes(1)).plus(MirrorScheduler.startupOffset("42", Duration.ofMinutes(60)));
+    assertThat(scheduler.getNextRun("42")).get()
+      .matches(nextRun -> !nextRun.isBefore(expected) && nextRun.isBefore(expected.plusSeconds(5)));
+  }
+
+  @Test
+  void shouldForgetCancelledSchedules() {
+    scheduler.schedule(repository, mockConfiguration(60));
+
+    scheduler.cancel(repository);
+
+    assertThat(scheduler.getNextRun("42")).isEmpty();
+    assertThat(cancelledSchedules).contains("42");
+    verify(scheduleStore).remove("42");
+    verify(statusStore).forget("42");
+  }
+
+  @Test
+  void shouldDiscardPendingResultsBeforeForgettingStatus() {
+    scheduler.schedule(repository, mockConfiguration(60));
+
+    scheduler.cancel(repository);
+
+    InOrder inOrder = inOrder(resultWriter, statusStore);
+    inOrder.verify(resultWriter).discard("42");
+    inOrder.verify(statusStore).forget("42");
+  }
+
+  @Test
+  void shouldPersistNextDueTime() {
+    scheduler.schedule(repository, mockConfiguration(60));
+
+    verify(scheduleStore).set(eq("42"), argThat(state -> {
+      assertThat(state.getNextDue()).isEqualTo(scheduler.getNextRun("42").get());
+      return true;
+    }));
+  }
+
+  @Test
+  void shouldResumePersistedScheduleAtStartup() {
+    Instant nextDue = Instant.now().plus(Duration.ofMinutes(30));
+    when(scheduleStore.get("42")).thenReturn(Optional.of(new ScheduleState(Instant.now().minus(Duration.ofMinutes(30)), nextDue)));
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    verify(worker).scheduleUpdate(eq(repository), any(), argThat(delayOf(Duration.ofMinutes(30))), any());
+    assertThat(scheduler.getNextRun("42")).contains(nextDue);
+  }
+
+  @Test
+  void shouldNotRewriteUnchangedScheduleAtStartup() {
+    when(scheduleStore.get("42")).thenReturn(Optional.of(new ScheduleState(null, Instant.now().plus(Duration.ofMinutes(30)))));
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    verify(scheduleStore, never()).set(any(), any());
+  }
+
+  @Test
+  void shouldPersistStartupScheduleOfOverdueMirror() {
+    when(scheduleStore.get("42")).thenReturn(Optional.of(new ScheduleState(null, Instant.now().minus(Duration.ofHours(5)))));
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    verify(scheduleStore).set(eq("42"), argThat(state -> state.getNextDue().equals(scheduler.getNextRun("42").get())));
+  }
+
+  @Test
+  void shouldKeepScheduleOfConfigurationChangedDuringStartup() {
+    MirrorConfiguration changedConfiguration = mockConfiguration(23);
+    scheduler.schedule(repository, changedConfiguration);
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    verify(worker).scheduleUpdate(eq(repository), any(), any(), any());
+    verify(worker).scheduleUpdate(eq(repository), eq(changedConfiguration), argThat(delayOf(Duration.ofMinutes(23))), any());
+    verify(scheduleStore).set(eq("42"), any());
+  }
+
+  @Test
+  void shouldRunOverdueMirrorsSoonAfterStartup() {
+    when(scheduleStore.get("42")).thenReturn(Optional.of(new ScheduleState(null, Instant.now().minus(Duration.ofHours(5)))));
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    verify(worker).scheduleUpdate(eq(repository), any(), argThat(delay ->
+      delay.compareTo(Duration.ofMinutes(1)) >= 0 && delay.compareTo(Duration.ofMinutes(11)) <= 0
+    ), any());
+  }
+
+  @Test
+  void shouldDeriveDueTimeFromLastStatusWithoutPersistedSchedule() {
+    MirrorStatus status = MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now().minus(Duration.ofMinutes(11)));
+    when(statusStore.getStatus(repository)).thenReturn(status);
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    verify(worker).scheduleUpdate(eq(repository), any(), argThat(delayOf(Duration.ofMinutes(60))), any());
+  }
+
+  @Test
+  void shouldRescheduleAfterCompletion() {
+    MirrorConfiguration configuration = mockConfiguration(60);
+    scheduler.schedule(repository, configuration);
+    Instant firstDue = scheduler.getNextRun("42").get();
+
+    MirrorStatus status = MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now());
+    completionCallback().accept(status);
+
+    verify(worker, times(2)).scheduleUpdate(eq(repository), eq(configuration), any(), any());
+    assertThat(scheduler.getNextRun("42")).contains(firstDue.plus(Duration.ofMinutes(60)));
+    verify(scheduleStore).set(eq("42"), argThat(state -> status.getEnded().equals(state.getLastCompleted())));
+  }
+
+  @Test
+  void shouldNotRescheduleCancelledMirror() {
+    scheduler.schedule(repository, mockConfiguration(60));
+    Consumer<MirrorStatus> callback = completionCallback();
+
+    scheduler.cancel(repository);
+    callback.accept(MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now()));
+
+    verify(worker, times(1)).scheduleUpdate(any(), any(), any(), any());
+    assertThat(scheduler.getNextRun("42")).isEmpty();
+  }
+
+  @Test
+  void shouldBackOffAfterRepeatedFailures() {
+    MirrorConfiguration configuration = mockConfiguration(60);
+    scheduler.schedule(repository, configuration);
+
+    completionCallback().accept(MirrorStatus.create(MirrorStatus.Result.FAILED, Instant.now()));
+    lastCompletionCallback(2).accept(MirrorStatus.create(MirrorStatus.Result.FAILED, Instant.now()));
+
+    verify(worker).scheduleUpdate(eq(repository), eq(configuration), argThat(delayOf(Duration.ofMinutes(120))), any());
+    assertThat(scheduler.getConsecutiveFailures("42")).isEqualTo(2);
+    verify(scheduleStore).set(eq("42"), argThat(state -> state.getConsecutiveFailures() == 2));
+  }
+
+  @Test
+  void shouldResetBackoffOnSuccess() {
+    scheduler.schedule(repository, mockConfiguration(60));
+    completionCallback().accept(MirrorStatus.create(MirrorStatus.Result.FAILED, Instant.now()));
+
+    lastCompletionCallback(2).accept(MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now()));
+
+    assertThat(scheduler.getConsecutiveFailures("42")).isZero();
+  }
+
+  @Test
+  void shouldKeepFailuresOfPersistedScheduleAtStartup() {
+    when(scheduleStore.get("42")).thenReturn(Optional.of(new ScheduleState(null, Instant.now().plus(Duration.ofHours(3)), 3)));
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    assertThat(scheduler.getConsecutiveFailures("42")).isEqualTo(3);
+  }
+
+  @Test
+  void shouldDelayNextRunWhileCircuitIsOpen() {
+    Instant openUntil = Instant.now().plus(Duration.ofHours(5));
+    when(circuitBreaker.getOpenUntil("https://hog/")).thenReturn(Optional.of(openUntil));
+    MirrorConfiguration configuration = new MirrorConfiguration("https://hog/", 60, emptyList(), null, null, null);
+    scheduler.schedule(repository, configuration);
+
+    completionCallback().accept(null);
+
+    assertThat(scheduler.getNextRun("42")).contains(openUntil);
+  }
+
+  @Test
+  void shouldDoubleIntervalUpToMaximum() {
+    Duration period = Duration.ofMinutes(60);
+
+    assertThat(MirrorScheduler.backoff(period, 0)).isEqualTo(period);
+    assertThat(MirrorScheduler.backoff(period, 1)).isEqualTo(period);
+    assertThat(MirrorScheduler.backoff(period, 2)).isEqualTo(Duration.ofHours(2));
+    assertThat(MirrorScheduler.backoff(period, 4)).isEqualTo(Duration.ofHours(8));
+    assertThat(MirrorScheduler.backoff(period, 100)).isEqualTo(MirrorScheduler.MAXIMUM_BACKOFF);
+    assertThat(MirrorScheduler.backoff(Duration.ofDays(3), 5)).isEqualTo(Duration.ofDays(3));
+  }
+
+  @Test
+  void shouldStretchPeriodOfDormantMirrorsInAdaptiveMode() {
+    enableAdaptiveScheduling();
+    MirrorConfiguration configuration = mockConfiguration(60);
+    scheduler.schedule(repository, configuration);
+
+    completionCallback().accept(MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now(), 0));
+
+    assertThat(scheduler.getAdaptivePeriod("42")).contains(Duration.ofMinutes(90));
+    verify(scheduleStore).set(eq("42"), argThat(state -> Duration.ofMinutes(90).equals(state.getAdaptivePeriod())));
+  }
+
+  @Test
+  void shouldShortenPeriodOfChangingMirrorsInAdaptiveMode() {
+    enableAdaptiveScheduling();
+    MirrorConfiguration configuration = mockConfiguration(60);
+    scheduler.schedule(repository, configuration);
+    Instant firstDue = scheduler.getNextRun("42").get();
+
+    completionCallback().accept(MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now(), 3));
+
+    assertThat(scheduler.getAdaptivePeriod("42")).contains(Duration.ofMinutes(30));
+    assertThat(scheduler.getNextRun("42")).contains(firstDue.plus(Duration.ofMinutes(30)));
+  }
+
+  @Test
+  void shouldResumeAdaptedPeriodAtStartup() {
+    enableAdaptiveScheduling();
+    when(scheduleStore.get("42")).thenReturn(Optional.of(new ScheduleState(null, Instant.now().plus(Duration.ofHours(3)), 0, Duration.ofHours(4))));
+
+    scheduler.scheduleAtStartup(repository, mockConfiguration(60));
+
+    assertThat(scheduler.getAdaptivePeriod("42")).contains(Duration.ofHours(4));
+  }
+
+  @Test
+  void shouldNotAdaptPeriodByDefault() {
+    scheduler.schedule(repository, mockConfiguration(60));
+
+    completionCallback().accept(MirrorStatus.create(MirrorStatus.Result.SUCCESS, Instant.now(), 0));
+
+    assertThat(scheduler.getAdaptivePeriod("42")).isEmpty();
+  }
+
+  private void enableAdaptiveScheduling() {
+    GlobalMirrorConfiguration globalConfiguration = new GlobalMirrorConfiguration();
+    globalConfiguration.setAdaptiveSynchronization(true);
+    scheduler.configure(globalConfiguration);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Consumer<MirrorStatus> lastCompletionCallback(int invocations) {
+    ArgumentCaptor<Consumer<MirrorStatus>> captor = ArgumentCaptor.forClass(Consumer.class);
+    verify(worker, times(invocations)).scheduleUpdate(any(), any(), any(), captor.capture());
+    return captor.getValue();
+  }
+
+  @SuppressWarnings("unchecked")
+  private Consumer<MirrorStatus> completionCallback() {
+    ArgumentCaptor<Consumer<MirrorStatus>> captor = ArgumentCaptor.forClass(Consumer.class);
+    verify(worker).scheduleUpdate(any(), any(), any(), captor.capture());
+    return captor.getValue();
+  }
+
+  private ArgumentMatcher<Duration> delayOf(Duration expected) {
+    return delay -> delay.compareTo(expected) <= 0 && delay.compareTo(expected.minusSeconds(5)) > 0;
   }
 
-  private MirrorConfiguration mockConfiguration(Repository repository, int i) {
-    return new MirrorConfiguration(null, i, emptyList(), null, null, null);
+  private MirrorConfiguration mockConfiguration(int period) {
+    return new MirrorConfiguration(null, period, emptyList(), null, null, null);
   }
 }
@@ -33,8 +33,13 @@ import sonia.scm.repository.RepositoryPermission;
 import sonia.scm.repository.RepositoryType;
 import sonia.scm.repository.api.Command;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import static java.util.Collections.emptySet;
 import static java.util.Collections.singleton;
@@ -43,6 +48,7 @@ import static java.util.Optional.of;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -60,6 +66,14 @@ class MirrorServiceTest {
   private MirrorConfigurationStore configurationStore;
   @Mock
   private MirrorWorker mirrorWorker;
+  @Mock
+  private MirrorScheduler scheduler;
+  @Mock
+  private UpstreamCircuitBreaker circuitBreaker;
+  @Mock
+  private MirrorRepositoryRegistry mirrorRepositories;
+  @Mock
+  private MirrorStatusStore statusStore;
 
   private MirrorService service;
 
@@ -67,7 +81,7 @@ class MirrorServiceTest {
 
   @BeforeEach
   void createService() {
-    service = new MirrorService(manager, configurationStore, mirrorWorker);
+    service = new MirrorService(manager, configurationStore, mirrorWorker, scheduler, circuitBreaker, mirrorRepositories, statusStore);
   }
 
   @Test
@@ -176,6 +190,57 @@ class MirrorServiceTest {
     }
   }
 
+  @Nested
+  class StatusSummaries {
+
+    private final Repository disabled = createHeartOfGold("git");
+
+    @BeforeEach
+    void mockMirrors() {
+      repository.setId("mirror");
+      disabled.setId("disabled");
+      when(mirrorRepositories.contains("mirror")).thenReturn(true);
+      when(manager.getAll(argThat(filter -> filter.test(repository)), any()))
+        .thenReturn(List.of(disabled, repository));
+    }
+
+    @Test
+    void shouldSummarizeStatusFromMemory() {
+      MirrorConfiguration configuration = createConfiguration();
+      configuration.setSynchronizationPeriod(60);
+      when(configurationStore.getConfiguration(repository)).thenReturn(of(configuration));
+      when(configurationStore.getConfiguration(disabled)).thenReturn(of(createConfiguration()));
+      MirrorStatus status = new MirrorStatus(MirrorStatus.Result.SUCCESS);
+      when(statusStore.getStatus(repository)).thenReturn(status);
+      Instant nextRun = Instant.now().plusSeconds(60);
+      when(scheduler.getNextRun("mirror")).thenReturn(of(nextRun));
+      when(scheduler.getAdaptivePeriod("mirror")).thenReturn(empty());
+
+      List<MirrorStatusSummary> summaries = service.getStatusSummaries().collect(Collectors.toList());
+
+      assertThat(summaries).hasSize(2);
+      assertThat(summaries.get(0).isDisabled()).isTrue();
+      MirrorStatusSummary summary = summaries.get(1);
+      assertThat(summary.getRepository()).isSameAs(repository);
+      assertThat(summary.getStatus()).isSameAs(status);
+      assertThat(summary.getPeriod()).isEqualTo(Duration.ofMinutes(60));
+      assertThat(summary.getNextSynchronization()).isEqualTo(nextRun);
+    }
+
+    @Test
+    void shouldReportAdaptedPeriod() {
+      MirrorConfiguration configuration = createConfiguration();
+      configuration.setSynchronizationPeriod(60);
+      when(configurationStore.getConfiguration(repository)).thenReturn(of(configuration));
+      when(configurationStore.getConfiguration(disabled)).thenReturn(empty());
+      when(scheduler.getAdaptivePeriod("mirror")).thenReturn(of(Duration.ofMinutes(15)));
+
+      List<MirrorStatusSummary> summaries = service.getStatusSummaries().collect(Collectors.toList());
+
+      assertThat(summaries).extracting(MirrorStatusSummary::getPeriod).containsExactly(Duration.ofMinutes(15));
+    }
+  }
+
   private MirrorConfiguration createConfiguration() {
     MirrorConfiguration request = new MirrorConfiguration();
     request.setUrl("http://hog/");
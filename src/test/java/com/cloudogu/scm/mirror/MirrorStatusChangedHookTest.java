@@ -30,17 +30,15 @@ import java.time.Duration;
 import java.util.Collections;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class MirrorStatusChangedHookTest {
 
   private final Repository repository = RepositoryTestData.create42Puzzle();
 
-  @Mock
-  private MirrorStatusStore store;
   @Mock
   private ScmEventBus scmEventBus;
 
@@ -49,28 +47,31 @@ class MirrorStatusChangedHookTest {
 
   @Test
   void shouldNotSendEvent() {
-    when(store.getStatus(repository)).thenReturn(new MirrorStatus(MirrorStatus.Result.SUCCESS));
-
-    hook.handleEvent(new MirrorSyncEvent(repository, null, new MirrorStatus(MirrorStatus.Result.SUCCESS)));
+    hook.handleEvent(new MirrorSyncEvent(repository, null, new MirrorStatus(MirrorStatus.Result.SUCCESS), new MirrorStatus(MirrorStatus.Result.SUCCESS)));
 
     verify(scmEventBus, never()).post(any(MirrorStatusChangedEvent.class));
   }
 
   @Test
   void shouldSendEventForSuccessfulMirror() {
-    when(store.getStatus(repository)).thenReturn(new MirrorStatus(MirrorStatus.Result.FAILED));
-
-    hook.handleEvent(new MirrorSyncEvent(repository, null, new MirrorStatus(MirrorStatus.Result.SUCCESS)));
+    hook.handleEvent(new MirrorSyncEvent(repository, null, new MirrorStatus(MirrorStatus.Result.SUCCESS), new MirrorStatus(MirrorStatus.Result.FAILED)));
 
     verify(scmEventBus).post(any(MirrorStatusChangedEvent.class));
   }
 
   @Test
   void shouldSendEventForFailedMirror() {
-    when(store.getStatus(repository)).thenReturn(new MirrorStatus(MirrorStatus.Result.SUCCESS));
-
-    hook.handleEvent(new MirrorSyncEvent(repository, null, new MirrorStatus(MirrorStatus.Result.FAILED)));
+    hook.handleEvent(new MirrorSyncEvent(repository, null, new MirrorStatus(MirrorStatus.Result.FAILED), new MirrorStatus(MirrorStatus.Result.SUCCESS)));
 
     verify(scmEventBus).post(any(MirrorStatusChangedEvent.class));
   }
+
+  @Test
+  void shouldSendEventForFirstResult() {
+    hook.handleEvent(new MirrorSyncEvent(repository, null, new MirrorStatus(MirrorStatus.Result.SUCCESS)));
+
+    verify(scmEventBus).post(argThat((MirrorStatusChangedEvent event) ->
+      event.getPreviousResult() == null && event.getNewResult() == MirrorStatus.Result.SUCCESS
+    ));
+  }
 }
@@ -21,6 +21,7 @@ import sonia.scm.repository.Repository;
 import sonia.scm.repository.RepositoryTestData;
 import sonia.scm.store.InMemoryByteDataStoreFactory;
 
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.FAILED;
 import static com.cloudogu.scm.mirror.MirrorStatus.Result.SUCCESS;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -36,4 +37,48 @@ class MirrorStatusStoreTest {
 
     assertThat(statusStore.getStatus(repository).getResult()).isEqualTo(SUCCESS);
   }
+
+  @Test
+  void shouldReadStatusFromSnapshotBeforeItIsPersisted() {
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    statusStore.setStatus(repository, new MirrorStatus(SUCCESS));
+
+    MirrorStatus previous = statusStore.update(repository, new MirrorStatus(FAILED));
+
+    assertThat(previous.getResult()).isEqualTo(SUCCESS);
+    assertThat(statusStore.getStatus(repository).getResult()).isEqualTo(FAILED);
+    assertThat(new MirrorStatusStore(storeFactory).getStatus(repository).getResult()).isEqualTo(SUCCESS);
+  }
+
+  @Test
+  void shouldReadPersistedStatusIntoSnapshot() {
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    new MirrorStatusStore(storeFactory).setStatus(repository, new MirrorStatus(FAILED));
+
+    statusStore.preload(repository);
+
+    assertThat(statusStore.getStatus(repository).getResult()).isEqualTo(FAILED);
+  }
+
+  @Test
+  void shouldReadStoreOfNeverSynchronizedMirrorOnlyOnce() {
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    assertThat(statusStore.getStatus(repository)).isNull();
+
+    // written behind the back of the snapshot, so it is only found, if the store is read again
+    new MirrorStatusStore(storeFactory).persist(repository, new MirrorStatus(SUCCESS));
+
+    assertThat(statusStore.getStatus(repository)).isNull();
+  }
+
+  @Test
+  void shouldReadStatusFromStoreAfterForget() {
+    Repository repository = RepositoryTestData.createHeartOfGold();
+    statusStore.setStatus(repository, new MirrorStatus(SUCCESS));
+    statusStore.update(repository, new MirrorStatus(FAILED));
+
+    statusStore.forget(repository.getId());
+
+    assertThat(statusStore.getStatus(repository).getResult()).isEqualTo(SUCCESS);
+  }
 }
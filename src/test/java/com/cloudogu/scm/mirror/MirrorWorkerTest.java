@@ -17,6 +17,7 @@
 package com.cloudogu.scm.mirror;
 
 import com.google.common.collect.ImmutableList;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -35,14 +36,16 @@ import sonia.scm.repository.api.MirrorCommandBuilder;
 import sonia.scm.repository.api.MirrorCommandResult;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static com.cloudogu.scm.mirror.MirrorStatus.Result.SUCCESS;
+import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 import static com.google.inject.util.Providers.of;
 import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -53,6 +56,7 @@ import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static sonia.scm.repository.api.MirrorCommandResult.ResultType.FAILED;
@@ -73,7 +77,7 @@ class MirrorWorkerTest {
   @Mock
   private NotificationSender notificationSender;
   @Mock
-  private ScheduledExecutorService executor;
+  private MirrorExecutor executor;
   @Mock
   private ScmEventBus eventBus;
   @Mock
@@ -81,6 +85,11 @@ class MirrorWorkerTest {
   private ScheduledFuture cancelableSchedule;
   @Mock
   private MirrorCommandCaller mirrorCommandCaller;
+  @Mock
+  private UpstreamRefsCheck refsCheck;
+
+  private final MeterRegistry registry = new SimpleMeterRegistry();
+  private final UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker();
 
   private MirrorWorker worker;
 
@@ -89,27 +98,65 @@ class MirrorWorkerTest {
   @BeforeEach
   void createService() {
     lenient().doAnswer(invocation -> {
-      invocation.getArgument(0, Runnable.class).run();
+      invocation.getArgument(2, Runnable.class).run();
       return null;
-    }).when(executor).submit(any(Runnable.class));
+    }).when(executor).execute(any(), any(), any(Runnable.class));
     lenient().when(taskDecoratorFactory.decorate(any()))
       .thenAnswer(invocation -> invocation.getArgument(0));
-    worker = new MirrorWorker(new SimpleMeterRegistry(), executor, statusStore, notificationSender, eventBus, mirrorCommandCaller, taskDecoratorFactory);
+    MirrorResultWriter resultWriter = new MirrorResultWriter(
+      statusStore, notificationSender, eventBus, taskDecoratorFactory, registry, newDirectExecutorService()
+    );
+    worker = new MirrorWorker(executor, statusStore, resultWriter, mirrorCommandCaller, taskDecoratorFactory, circuitBreaker, refsCheck, registry);
   }
 
   @Test
   @SuppressWarnings("unchecked")
   void shouldCancelUpdates() {
     MirrorConfiguration configuration = createMirrorConfig();
-    when(executor.scheduleAtFixedRate(any(), anyLong(), anyLong(), any()))
+    when(executor.schedule(any(), any(), anyLong(), any()))
       .thenReturn(cancelableSchedule);
 
-    worker.scheduleUpdate(repository, configuration, 23)
+    worker.scheduleUpdate(repository, configuration, Duration.ofMinutes(23), status -> {})
       .cancel();
 
     verify(cancelableSchedule).cancel(false);
   }
 
+  @Test
+  void shouldSkipScheduledUpdatesWhileCircuitIsOpen() {
+    for (int i = 0; i < UpstreamCircuitBreaker.FAILURE_THRESHOLD; ++i) {
+      circuitBreaker.recordResult("https://hog/", MirrorStatus.Result.FAILED);
+    }
+    ArgumentCaptor<Runnable> runnableArgumentCaptor = forClass(Runnable.class);
+    List<MirrorStatus> completed = new ArrayList<>();
+
+    worker.scheduleUpdate(repository, createMirrorConfig(), Duration.ZERO, completed::add);
+    verify(executor).schedule(any(), runnableArgumentCaptor.capture(), anyLong(), any());
+    runnableArgumentCaptor.getValue().run();
+
+    verify(mirrorCommandCaller, never()).call(any(), any(), any(), any());
+    assertThat(completed).containsExactly((MirrorStatus) null);
+  }
+
+  @Test
+  void shouldSkipScheduledUpdatesWhenUpstreamRefsAreUnchanged() {
+    MirrorConfiguration configuration = createMirrorConfig();
+    when(refsCheck.fingerprint(repository, configuration)).thenReturn(Optional.of("42"));
+    when(refsCheck.isUnchanged(repository, "42")).thenReturn(true);
+    ArgumentCaptor<Runnable> runnableArgumentCaptor = forClass(Runnable.class);
+    List<MirrorStatus> completed = new ArrayList<>();
+
+    worker.scheduleUpdate(repository, configuration, Duration.ZERO, completed::add);
+    verify(executor).schedule(any(), runnableArgumentCaptor.capture(), anyLong(), any());
+    runnableArgumentCaptor.getValue().run();
+
+    verify(mirrorCommandCaller, never()).call(any(), any(), any(), any());
+    assertThat(completed).hasSize(1);
+    assertThat(completed.get(0).getResult()).isEqualTo(SUCCESS);
+    verify(statusStore).persist(eq(repository), argThat(status -> status.getResult().equals(SUCCESS)));
+    assertThat(registry.get("mirror.phase").tag("phase", "precheck").timer().count()).isEqualTo(1);
+  }
+
   @Nested
   class ForRepository {
 
@@ -119,7 +166,7 @@ class MirrorWorkerTest {
 
     @BeforeEach
     void supportMirrorCommand() {
-      when(mirrorCommandCaller.call(eq(repository), any(), any()))
+      when(mirrorCommandCaller.call(eq(repository), any(), any(), any()))
         .thenAnswer(invocation -> new MirrorCommandCaller.CallResult(invocation.getArgument(2, Function.class).apply(mirrorCommandBuilder), appliedFilter));
     }
 
@@ -133,11 +180,23 @@ class MirrorWorkerTest {
       verify(statusStore).setStatus(
         eq(repository),
         argThat(status -> status.getResult().equals(MirrorStatus.Result.NOT_YET_RUN)));
-      verify(statusStore).setStatus(
+      verify(statusStore).persist(
         eq(repository),
         argThat(status -> status.getResult().equals(SUCCESS)));
     }
 
+    @Test
+    void shouldHandleResultOnlyOnceIfHandlingFails() {
+      mockResultFor(mirrorCommandBuilder.update(), OK);
+      when(statusStore.update(eq(repository), any())).thenThrow(new IllegalStateException("snapshot broken"));
+
+      worker.startUpdate(repository, createMirrorConfig());
+
+      verify(circuitBreaker).recordResult(any(), any());
+      verify(statusStore).update(eq(repository), any());
+      verify(statusStore, never()).persist(any(), any());
+    }
+
     @Nested
     class ForSuccessfulUpdate {
 
@@ -153,7 +212,7 @@ class MirrorWorkerTest {
 
         worker.startUpdate(repository, configuration);
 
-        verify(statusStore).setStatus(
+        verify(statusStore).persist(
           eq(repository),
           argThat(status -> status.getResult().equals(SUCCESS)));
         verify(notificationSender).send(argThat(n -> {
@@ -165,6 +224,55 @@ class MirrorWorkerTest {
           eq("trillian")
         );
       }
+
+      @Test
+      void shouldRememberFingerprintAfterSuccessfulScheduledUpdate() {
+        MirrorConfiguration configuration = createMirrorConfig();
+        when(refsCheck.fingerprint(repository, configuration)).thenReturn(Optional.of("42"));
+        ArgumentCaptor<Runnable> runnableArgumentCaptor = forClass(Runnable.class);
+
+        worker.scheduleUpdate(repository, configuration, Duration.ZERO, status -> {});
+        verify(executor).schedule(any(), runnableArgumentCaptor.capture(), anyLong(), any());
+        runnableArgumentCaptor.getValue().run();
+
+        verify(mirrorCommandBuilder).update();
+        verify(refsCheck).remember(repository, "42");
+      }
+
+      @Test
+      void shouldRecordPhasesOfSynchronization() {
+        worker.startUpdate(repository, createMirrorConfig());
+
+        verify(eventBus).post(argThat(event -> ((MirrorSyncEvent) event).getPhases().containsKey(SynchronizationPhase.RESULT)));
+        assertThat(registry.get("mirror.phase").tag("phase", "result").timer().count()).isEqualTo(1);
+        assertThat(registry.find("mirror.phase").tag("phase", "precheck").timer()).isNull();
+      }
+
+      @Test
+      void shouldNotCheckUpstreamRefsForInteractiveUpdates() {
+        worker.startUpdate(repository, createMirrorConfig());
+
+        verify(mirrorCommandBuilder).update();
+        verify(refsCheck, never()).fingerprint(any(), any());
+      }
+    }
+
+    @Test
+    void shouldEnqueueUpdatesAsInteractiveJobsForUpstreamHost() {
+      mockResultFor(mirrorCommandBuilder.update(), OK);
+
+      worker.startUpdate(repository, createMirrorConfig());
+
+      verify(executor).execute(eq(MirrorJobClass.INTERACTIVE), eq("hog"), any());
+    }
+
+    @Test
+    void shouldEnqueueInitialSyncsAsInitialJobs() {
+      mockResultFor(mirrorCommandBuilder.initialCall(), OK);
+
+      worker.startInitialSync(repository, createMirrorConfig());
+
+      verify(executor).execute(eq(MirrorJobClass.INITIAL), eq("hog"), any());
     }
 
     @Nested
@@ -185,7 +293,7 @@ class MirrorWorkerTest {
 
           worker.startUpdate(repository, configuration);
 
-          verify(statusStore).setStatus(
+          verify(statusStore).persist(
             eq(repository),
             argThat(status -> status.getResult().equals(MirrorStatus.Result.FAILED)));
           verify(notificationSender).send(argThat(n -> {
@@ -214,7 +322,7 @@ class MirrorWorkerTest {
         }
 
         @Test
-        void shouldRunOnlyOneUpdateAtATime() throws InterruptedException {
+        void shouldRunOneFollowUpForOverlappingUpdate() throws InterruptedException {
           MirrorConfiguration configuration = createMirrorConfig();
           CountDownLatch startedLatch = new CountDownLatch(1);
           when(mirrorCommandBuilder.update())
@@ -236,28 +344,68 @@ class MirrorWorkerTest {
           // make sure both updates have been triggered
           doneLatch.await();
 
-          // make sure both updates have been run
-          verify(mirrorCommandBuilder).update();
+          // the second update has been run after the first one
+          verify(mirrorCommandBuilder, times(2)).update();
+          assertThat(registry.get("mirror.requests.coalesced").counter().count()).isEqualTo(1);
+        }
+
+        @Test
+        void shouldCollapseAllOverlappingRequestsIntoOneFollowUp() throws InterruptedException {
+          MirrorConfiguration configuration = createMirrorConfig();
+          CountDownLatch runningLatch = new CountDownLatch(1);
+          CountDownLatch releaseLatch = new CountDownLatch(1);
+          when(mirrorCommandBuilder.update())
+            .thenAnswer(invocation -> {
+              runningLatch.countDown();
+              releaseLatch.await();
+              return new MirrorCommandResult(FAILED, emptyList(), Duration.ZERO);
+            });
+
+          Thread running = new Thread(() -> worker.startUpdate(repository, configuration));
+          running.start();
+          runningLatch.await();
+
+          for (int i = 0; i < 3; ++i) {
+            worker.startUpdate(repository, configuration);
+          }
+          releaseLatch.countDown();
+          running.join();
+
+          verify(mirrorCommandBuilder, times(2)).update();
+          assertThat(registry.get("mirror.requests.coalesced").counter().count()).isEqualTo(3);
+          assertThat(registry.get("mirror.synchronizations.followup").counter().count()).isEqualTo(1);
+        }
+
+        @Test
+        void shouldNotRunFollowUpWithoutOverlappingRequest() {
+          worker.startUpdate(repository, createMirrorConfig());
+          worker.startUpdate(repository, createMirrorConfig());
+
+          verify(mirrorCommandBuilder, times(2)).update();
+          assertThat(registry.get("mirror.requests.coalesced").counter().count()).isZero();
         }
 
         @Test
         void shouldScheduleUpdates() {
           ArgumentCaptor<Runnable> runnableArgumentCaptor = forClass(Runnable.class);
           MirrorConfiguration configuration = createMirrorConfig();
-          configuration.setSynchronizationPeriod(42);
+          List<MirrorStatus> completed = new ArrayList<>();
 
-          worker.scheduleUpdate(repository, configuration, 23);
+          worker.scheduleUpdate(repository, configuration, Duration.ofMinutes(23), completed::add);
 
-          verify(executor).scheduleAtFixedRate(
+          verify(executor).schedule(
+            eq("hog"),
             runnableArgumentCaptor.capture(),
-            eq(23L),
-            eq(42L),
-            eq(TimeUnit.MINUTES)
+            eq(23L * 60),
+            eq(TimeUnit.SECONDS)
           );
 
           runnableArgumentCaptor.getValue().run();
 
           verify(mirrorCommandBuilder).update();
+          assertThat(completed).hasSize(1);
+          assertThat(completed.get(0).getResult()).isEqualTo(MirrorStatus.Result.FAILED);
+          verify(refsCheck).forget(repository);
         }
       }
 
@@ -270,7 +418,7 @@ class MirrorWorkerTest {
 
         worker.startUpdate(repository, configuration);
 
-        verify(statusStore).setStatus(
+        verify(statusStore).persist(
           eq(repository),
           argThat(status -> status.getResult().equals(MirrorStatus.Result.FAILED)));
         verify(notificationSender, never()).send(any(), any());
@@ -286,7 +434,7 @@ class MirrorWorkerTest {
 
         worker.startUpdate(repository, configuration);
 
-        verify(statusStore).setStatus(
+        verify(statusStore).persist(
           eq(repository),
           argThat(status -> status.getResult().equals(MirrorStatus.Result.FAILED_UPDATES)));
         verify(notificationSender, never()).send(any(), any());
@@ -301,7 +449,7 @@ class MirrorWorkerTest {
 
         worker.startUpdate(repository, configuration);
 
-        verify(statusStore).setStatus(
+        verify(statusStore).persist(
           eq(repository),
           argThat(status -> status.getResult().equals(SUCCESS)));
         verify(notificationSender, never()).send(any(), any());
@@ -316,7 +464,7 @@ class MirrorWorkerTest {
 
         worker.startUpdate(repository, configuration);
 
-        verify(statusStore).setStatus(
+        verify(statusStore).persist(
           eq(repository),
           argThat(status -> status.getResult().equals(MirrorStatus.Result.FAILED)));
       }
@@ -328,7 +476,7 @@ class MirrorWorkerTest {
   }
 
   private OngoingStubbing<MirrorStatus> mockLastStatus(MirrorStatus.Result lastStatus) {
-    return when(statusStore.getStatus(repository)).thenReturn(new MirrorStatus(lastStatus));
+    return when(statusStore.update(eq(repository), any())).thenReturn(new MirrorStatus(lastStatus));
   }
 
   private MirrorConfiguration createMirrorConfig() {
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentedLogTest {
+
+  @TempDir
+  private Path directory;
+
+  @Test
+  void shouldReadNewestRecordsFirst() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+    for (int i = 0; i < 5; ++i) {
+      log.append(record("record " + i));
+    }
+
+    assertThat(strings(log.readNewest(3))).containsExactly("record 4", "record 3", "record 2");
+  }
+
+  @Test
+  void shouldRollSegments() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+
+    assertThat(log.append(record("a"))).isTrue();
+    assertThat(log.append(record("b"))).isFalse();
+    assertThat(log.append(record("c"))).isTrue();
+
+    assertThat(segmentCount()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldReclaimSegmentsNotNeeded() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+    for (int i = 0; i < 7; ++i) {
+      log.append(record("record " + i));
+    }
+
+    log.reclaim(3);
+
+    assertThat(segmentCount()).isEqualTo(2);
+    assertThat(strings(log.readNewest(10))).containsExactly("record 6", "record 5", "record 4");
+  }
+
+  @Test
+  void shouldReclaimSegmentsExceedingMaximumSize() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+    for (int i = 0; i < 6; ++i) {
+      log.append(record("record " + i));
+    }
+    long segmentSize = 2L * (Integer.BYTES + "record 0".length());
+
+    long size = log.reclaim(0, 2 * segmentSize, null);
+
+    assertThat(size).isEqualTo(2 * segmentSize);
+    assertThat(strings(log.readNewest(10))).containsExactly("record 5", "record 4", "record 3", "record 2");
+  }
+
+  @Test
+  void shouldReclaimExpiredSegments() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+    for (int i = 0; i < 5; ++i) {
+      log.append(record("record " + i));
+    }
+    Instant now = Instant.now();
+    for (Path segment : segments()) {
+      Files.setLastModifiedTime(segment, FileTime.from(now.minus(2, ChronoUnit.DAYS)));
+    }
+
+    log.reclaim(0, 0, now.minus(1, ChronoUnit.DAYS));
+
+    assertThat(strings(log.readNewest(10))).containsExactly("record 4");
+  }
+
+  @Test
+  void shouldContinueCurrentSegmentAfterReopen() throws IOException {
+    new SegmentedLog(directory, 2).append(record("a"));
+
+    SegmentedLog reopened = new SegmentedLog(directory, 2);
+
+    assertThat(reopened.append(record("b"))).isFalse();
+    assertThat(strings(reopened.readNewest(10))).containsExactly("b", "a");
+  }
+
+  @Test
+  void shouldCutOffIncompleteRecord() throws IOException {
+    new SegmentedLog(directory, 10).append(record("complete"));
+    Path segment = segments().get(0);
+    Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+    SegmentedLog reopened = new SegmentedLog(directory, 10);
+    reopened.append(record("next"));
+
+    assertThat(strings(reopened.readNewest(10))).containsExactly("next", "complete");
+  }
+
+  @Test
+  void shouldStopReadingAtNegativeLength() throws IOException {
+    new SegmentedLog(directory, 10).append(record("complete"));
+    Files.write(segments().get(0), new byte[]{-1, -1, -1, -1, 1, 2}, StandardOpenOption.APPEND);
+
+    assertThat(strings(new SegmentedLog(directory, 10).readNewest(10))).containsExactly("complete");
+  }
+
+  @Test
+  void shouldStopReadingAtLengthExceedingSegment() throws IOException {
+    new SegmentedLog(directory, 10).append(record("complete"));
+    Files.write(segments().get(0), new byte[]{0x7f, -1, -1, -1, 1, 2}, StandardOpenOption.APPEND);
+
+    assertThat(strings(new SegmentedLog(directory, 10).readNewest(10))).containsExactly("complete");
+  }
+
+  @Test
+  void shouldCutOffRecordWithInvalidLength() throws IOException {
+    new SegmentedLog(directory, 10).append(record("complete"));
+    Path segment = segments().get(0);
+    Files.write(segment, new byte[]{-1, -1, -1, -1, 1, 2}, StandardOpenOption.APPEND);
+
+    SegmentedLog reopened = new SegmentedLog(directory, 10);
+    reopened.append(record("next"));
+
+    assertThat(strings(reopened.readNewest(10))).containsExactly("next", "complete");
+  }
+
+  @Test
+  void shouldReadRecordsBeforePosition() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+    for (int i = 0; i < 5; ++i) {
+      log.append(record("record " + i));
+    }
+
+    List<SegmentedLog.Record> firstPage = log.readNewest(2, Long.MAX_VALUE);
+    List<SegmentedLog.Record> secondPage = log.readNewest(2, firstPage.get(1).getPosition());
+    List<SegmentedLog.Record> lastPage = log.readNewest(2, secondPage.get(1).getPosition());
+
+    assertThat(strings(data(firstPage))).containsExactly("record 4", "record 3");
+    assertThat(strings(data(secondPage))).containsExactly("record 2", "record 1");
+    assertThat(strings(data(lastPage))).containsExactly("record 0");
+  }
+
+  @Test
+  void shouldReadRecordByPosition() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+    for (int i = 0; i < 3; ++i) {
+      log.append(record("record " + i));
+    }
+    long position = log.readNewest(3, Long.MAX_VALUE).get(1).getPosition();
+
+    assertThat(log.read(position)).hasValueSatisfying(bytes -> assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo("record 1"));
+  }
+
+  @Test
+  void shouldNotReadReclaimedRecord() throws IOException {
+    SegmentedLog log = new SegmentedLog(directory, 2);
+    log.append(record("old"));
+    long position = log.readNewest(1, Long.MAX_VALUE).get(0).getPosition();
+    for (int i = 0; i < 4; ++i) {
+      log.append(record("record " + i));
+    }
+
+    log.reclaim(2);
+
+    assertThat(log.read(position)).isEmpty();
+  }
+
+  @Test
+  void shouldBeEmptyWithoutSegments() throws IOException {
+    assertThat(new SegmentedLog(directory.resolve("missing"), 2).isEmpty()).isTrue();
+  }
+
+  private byte[] record(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private List<String> strings(List<byte[]> records) {
+    return records.stream().map(bytes -> new String(bytes, StandardCharsets.UTF_8)).collect(Collectors.toList());
+  }
+
+  private List<byte[]> data(List<SegmentedLog.Record> records) {
+    return records.stream().map(SegmentedLog.Record::getData).collect(Collectors.toList());
+  }
+
+  private long segmentCount() throws IOException {
+    return segments().size();
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import com.cloudogu.scm.mirror.ConfigurableFilter.RejectReason;
+import com.cloudogu.scm.mirror.ConfigurableFilter.UpdateType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.repository.api.MirrorCommandResult;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+import static sonia.scm.repository.api.MirrorCommandResult.ResultType.FAILED;
+import static sonia.scm.repository.api.MirrorCommandResult.ResultType.REJECTED_UPDATES;
+
+@SuppressWarnings("UnstableApiUsage")
+@ExtendWith(MockitoExtension.class)
+class SynchronizationMetricsTest {
+
+  @Mock
+  private ConfigurableFilter filter;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final SynchronizationMetrics metrics = new SynchronizationMetrics(registry);
+
+  @Test
+  void shouldRecordSynchronizationByResultAndJobClass() {
+    metrics.record(MirrorJobClass.INTERACTIVE, new MirrorCommandResult(FAILED, emptyList(), Duration.ofSeconds(2)), null, System.nanoTime());
+
+    assertThat(registry.get("mirror.synchronization").tag("result", "failed").tag("class", "interactive").timer().count())
+      .isEqualTo(1);
+  }
+
+  @Test
+  void shouldRecordDurationOfCommand() {
+    metrics.record(MirrorJobClass.PERIODIC, new MirrorCommandResult(FAILED, emptyList(), Duration.ofSeconds(2)), null, System.nanoTime());
+
+    assertThat(registry.get("mirror.command.duration").tag("result", "failed").timer().totalTime(TimeUnit.SECONDS))
+      .isEqualTo(2);
+  }
+
+  @Test
+  void shouldNotRecordMissingDurationOfCommand() {
+    metrics.record(MirrorJobClass.PERIODIC, new MirrorCommandResult(FAILED, emptyList(), Duration.ZERO), null, System.nanoTime());
+
+    assertThat(registry.find("mirror.command.duration").timer()).isNull();
+  }
+
+  @Test
+  void shouldRecordUnchangedSynchronizations() {
+    metrics.recordUnchanged(MirrorJobClass.PERIODIC, System.nanoTime());
+
+    assertThat(registry.get("mirror.synchronization").tag("result", "unchanged").tag("class", "periodic").timer().count())
+      .isEqualTo(1);
+    assertThat(registry.find("mirror.command.duration").timer()).isNull();
+  }
+
+  @Test
+  void shouldCountUpdatesByTypeAndReason() {
+    when(filter.getAcceptedUpdates(UpdateType.BRANCH)).thenReturn(3);
+    when(filter.getRejectedUpdates(UpdateType.TAG, RejectReason.NO_VALID_SIGNATURE)).thenReturn(2);
+
+    metrics.record(MirrorJobClass.PERIODIC, new MirrorCommandResult(REJECTED_UPDATES, emptyList(), Duration.ofSeconds(1)), filter, System.nanoTime());
+
+    assertThat(updates("branch", "accepted", "none")).isEqualTo(3);
+    assertThat(updates("tag", "rejected", "no_valid_signature")).isEqualTo(2);
+    assertThat(updates("branch", "rejected", "pattern_not_matched")).isZero();
+  }
+
+  @Test
+  void shouldRecordDurationsOfPhases() {
+    metrics.recordPhases(Map.of(SynchronizationPhase.TRANSFER, Duration.ofSeconds(3), SynchronizationPhase.KEYS, Duration.ofMillis(5)));
+
+    assertThat(registry.get("mirror.phase").tag("phase", "transfer").timer().totalTime(TimeUnit.SECONDS)).isEqualTo(3);
+    assertThat(registry.get("mirror.phase").tag("phase", "keys").timer().count()).isEqualTo(1);
+    assertThat(registry.find("mirror.phase").tag("phase", "filter").timer()).isNull();
+  }
+
+  @Test
+  void shouldRegisterUpdateCountersUpFront() {
+    assertThat(registry.find("mirror.updates").counters()).hasSize(10);
+  }
+
+  private double updates(String type, String outcome, String reason) {
+    return registry.get("mirror.updates").tag("type", type).tag("outcome", outcome).tag("reason", reason).counter().count();
+  }
+}
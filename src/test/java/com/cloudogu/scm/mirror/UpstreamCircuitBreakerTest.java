@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.FAILED;
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.FAILED_UPDATES;
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.SUCCESS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamCircuitBreakerTest {
+
+  private static final String HOG = "https://hog/scm/repo/hitchhiker/hog";
+  private static final String VOGON = "https://hog/scm/repo/hitchhiker/vogon";
+
+  private Instant now = Instant.parse("2021-04-01T10:00:00Z");
+
+  private final UpstreamCircuitBreaker circuitBreaker = new UpstreamCircuitBreaker(new Clock() {
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  });
+
+  @Test
+  void shouldAllowRequestsForUnknownUpstreams() {
+    assertThat(circuitBreaker.allowRequest(HOG)).isTrue();
+    assertThat(circuitBreaker.allowRequest(null)).isTrue();
+  }
+
+  @Test
+  void shouldStayClosedBelowThreshold() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD - 1);
+
+    assertThat(circuitBreaker.allowRequest(HOG)).isTrue();
+  }
+
+  @Test
+  void shouldOpenAfterRepeatedFailures() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD);
+
+    assertThat(circuitBreaker.allowRequest(HOG)).isFalse();
+    assertThat(circuitBreaker.allowRequest(VOGON)).isTrue();
+    assertThat(circuitBreaker.getOpenUntil(HOG)).contains(now.plus(UpstreamCircuitBreaker.INITIAL_OPEN_DURATION));
+  }
+
+  @Test
+  void shouldIgnoreTrailingSlashes() {
+    fail(HOG + "/", UpstreamCircuitBreaker.FAILURE_THRESHOLD);
+
+    assertThat(circuitBreaker.allowRequest(HOG)).isFalse();
+  }
+
+  @Test
+  void shouldNotCloseOnSuccessOfOtherUpstreamOfSameHost() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD - 1);
+
+    circuitBreaker.recordResult(VOGON, SUCCESS);
+    fail(HOG, 1);
+
+    assertThat(circuitBreaker.allowRequest(HOG)).isFalse();
+  }
+
+  @Test
+  void shouldAllowRequestsAfterOpenDuration() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD);
+
+    now = now.plus(UpstreamCircuitBreaker.INITIAL_OPEN_DURATION);
+
+    assertThat(circuitBreaker.allowRequest(HOG)).isTrue();
+  }
+
+  @Test
+  void shouldStayOpenLongerAfterFailedRetry() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD);
+    now = now.plus(UpstreamCircuitBreaker.INITIAL_OPEN_DURATION);
+
+    fail(HOG, 1);
+
+    assertThat(circuitBreaker.getOpenUntil(HOG)).contains(now.plus(UpstreamCircuitBreaker.INITIAL_OPEN_DURATION.multipliedBy(2)));
+  }
+
+  @Test
+  void shouldLimitOpenDuration() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD + 20);
+
+    assertThat(circuitBreaker.getOpenUntil(HOG)).contains(now.plus(UpstreamCircuitBreaker.MAXIMUM_OPEN_DURATION));
+  }
+
+  @Test
+  void shouldCloseOnSuccess() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD);
+
+    circuitBreaker.recordResult(HOG, SUCCESS);
+
+    assertThat(circuitBreaker.allowRequest(HOG)).isTrue();
+    fail(HOG, 1);
+    assertThat(circuitBreaker.allowRequest(HOG)).isTrue();
+  }
+
+  @Test
+  void shouldTreatRejectedUpdatesAsSuccess() {
+    fail(HOG, UpstreamCircuitBreaker.FAILURE_THRESHOLD - 1);
+
+    circuitBreaker.recordResult(HOG, FAILED_UPDATES);
+    fail(HOG, 1);
+
+    assertThat(circuitBreaker.allowRequest(HOG)).isTrue();
+  }
+
+  private void fail(String url, int times) {
+    for (int i = 0; i < times; ++i) {
+      circuitBreaker.recordResult(url, FAILED);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import sonia.scm.repository.Repository;
+import sonia.scm.repository.RepositoryTestData;
+import sonia.scm.store.InMemoryByteDataStoreFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UpstreamRefsCheckTest {
+
+  @Mock
+  private UpstreamRefsProvider provider;
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final Repository repository = RepositoryTestData.createHeartOfGold("git");
+  private final MirrorConfiguration configuration = new MirrorConfiguration();
+
+  private UpstreamRefsCheck check;
+
+  @BeforeEach
+  void createCheck() {
+    configuration.setUrl("https://hog/");
+    lenient().when(provider.isSupported(repository, configuration)).thenReturn(true);
+    check = new UpstreamRefsCheck(Set.of(provider), new InMemoryByteDataStoreFactory(), registry);
+  }
+
+  @Test
+  void shouldDetectUnchangedRefs() throws IOException {
+    when(provider.listRefs(repository, configuration)).thenReturn(Map.of("refs/heads/main", "abc"));
+    String fingerprint = check.fingerprint(repository, configuration).orElseThrow();
+    check.remember(repository, fingerprint);
+
+    assertThat(check.isUnchanged(repository, check.fingerprint(repository, configuration).orElseThrow())).isTrue();
+    assertThat(registry.get("mirror.precheck").tag("result", "unchanged").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldDetectChangedRefs() throws IOException {
+    when(provider.listRefs(repository, configuration))
+      .thenReturn(Map.of("refs/heads/main", "abc"))
+      .thenReturn(Map.of("refs/heads/main", "def"));
+    check.remember(repository, check.fingerprint(repository, configuration).orElseThrow());
+
+    assertThat(check.isUnchanged(repository, check.fingerprint(repository, configuration).orElseThrow())).isFalse();
+    assertThat(registry.get("mirror.precheck").tag("result", "changed").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotTreatUnknownFingerprintAsUnchanged() {
+    assertThat(check.isUnchanged(repository, "42")).isFalse();
+  }
+
+  @Test
+  void shouldForgetFingerprint() {
+    check.remember(repository, "42");
+
+    check.forget(repository);
+
+    assertThat(check.isUnchanged(repository, "42")).isFalse();
+  }
+
+  @Test
+  void shouldChangeFingerprintWithFilterConfiguration() {
+    Map<String, String> refs = Map.of("refs/heads/main", "abc");
+    String before = UpstreamRefsCheck.fingerprint(configuration, refs);
+
+    configuration.setBranchesAndTagsPatterns(List.of("main"));
+
+    assertThat(UpstreamRefsCheck.fingerprint(configuration, refs)).isNotEqualTo(before);
+  }
+
+  @Test
+  void shouldIgnoreOrderOfRefs() {
+    String fingerprint = UpstreamRefsCheck.fingerprint(configuration, Map.of("refs/heads/main", "abc", "refs/tags/v1", "def"));
+
+    assertThat(UpstreamRefsCheck.fingerprint(configuration, Map.of("refs/tags/v1", "def", "refs/heads/main", "abc")))
+      .isEqualTo(fingerprint);
+  }
+
+  @Test
+  void shouldReturnEmptyIfUpstreamIsUnavailable() throws IOException {
+    when(provider.listRefs(repository, configuration)).thenThrow(new IOException("no route to host"));
+
+    assertThat(check.fingerprint(repository, configuration)).isEmpty();
+    assertThat(registry.get("mirror.precheck").tag("result", "unavailable").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotRetryFailedCheckForSameUpstream() throws IOException {
+    when(provider.listRefs(repository, configuration)).thenThrow(new IOException("untrusted certificate"));
+
+    check.fingerprint(repository, configuration);
+
+    assertThat(check.fingerprint(repository, configuration)).isEmpty();
+    verify(provider, times(1)).listRefs(repository, configuration);
+  }
+
+  @Test
+  void shouldRetryFailedCheckAfterUrlChange() throws IOException {
+    when(provider.listRefs(repository, configuration))
+      .thenThrow(new IOException("untrusted certificate"))
+      .thenReturn(Map.of("refs/heads/main", "abc"));
+    check.fingerprint(repository, configuration);
+
+    configuration.setUrl("https://vogon/");
+
+    assertThat(check.fingerprint(repository, configuration)).isPresent();
+  }
+
+  @Test
+  void shouldReturnEmptyWithoutSupportingProvider() throws IOException {
+    when(provider.isSupported(repository, configuration)).thenReturn(false);
+
+    assertThat(check.fingerprint(repository, configuration)).isEmpty();
+    verify(provider, never()).listRefs(any(), any());
+  }
+
+  @Test
+  void shouldNotListRefsOfInsecureUpstreamIfHttpsIsRequired() throws IOException {
+    configuration.setUrl("http://hog/");
+    configuration.setHttpsOnly(true);
+
+    assertThat(check.fingerprint(repository, configuration)).isEmpty();
+    verify(provider, never()).listRefs(any(), any());
+  }
+}
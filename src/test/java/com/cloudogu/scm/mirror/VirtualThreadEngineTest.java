@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2020 - present Cloudogu GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU Affero General Public License as published by the Free
+ * Software Foundation, version 3.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU Affero General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see https://www.gnu.org/licenses/.
+ */
+
+
+package com.cloudogu.scm.mirror;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadEngineTest {
+
+  private final ExecutorService threads = Executors.newCachedThreadPool();
+  private final CountDownLatch blocker = new CountDownLatch(1);
+  private final AtomicInteger started = new AtomicInteger();
+
+  @AfterEach
+  void shutdownThreads() {
+    blocker.countDown();
+    threads.shutdownNow();
+  }
+
+  @Test
+  void shouldLimitConcurrentTasks() throws InterruptedException {
+    VirtualThreadEngine engine = new VirtualThreadEngine(new SimpleMeterRegistry(), threads, 2);
+
+    for (int i = 0; i < 5; ++i) {
+      engine.execute(job(this::block));
+    }
+    awaitStarted(2);
+    Thread.sleep(50);
+
+    assertThat(started).hasValue(2);
+    assertThat(engine.getRunning()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldStartWaitingTasksWhenLimitIsRaised() throws InterruptedException {
+    VirtualThreadEngine engine = new VirtualThreadEngine(new SimpleMeterRegistry(), threads, 1);
+    for (int i = 0; i < 3; ++i) {
+      engine.execute(job(this::block));
+    }
+    awaitStarted(1);
+
+    engine.setLimit(3);
+
+    awaitStarted(3);
+    assertThat(started).hasValue(3);
+  }
+
+  @Test
+  void shouldCountRunningTasksWhenLimitIsReduced() throws InterruptedException {
+    VirtualThreadEngine engine = new VirtualThreadEngine(new SimpleMeterRegistry(), threads, 3);
+    for (int i = 0; i < 2; ++i) {
+      engine.execute(job(this::block));
+    }
+    awaitStarted(2);
+
+    engine.setLimit(1);
+
+    assertThat(engine.getRunning()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldNotCountFinishedTasks() throws InterruptedException {
+    VirtualThreadEngine engine = new VirtualThreadEngine(new SimpleMeterRegistry(), threads, 2);
+    CountDownLatch done = new CountDownLatch(3);
+    for (int i = 0; i < 3; ++i) {
+      engine.execute(job(done::countDown));
+    }
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+
+    engine.setLimit(4);
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (engine.getRunning() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(engine.getRunning()).isZero();
+  }
+
+  @Test
+  void shouldRunAllTasks() throws InterruptedException {
+    VirtualThreadEngine engine = new VirtualThreadEngine(new SimpleMeterRegistry(), threads, 1);
+    CountDownLatch done = new CountDownLatch(10);
+
+    for (int i = 0; i < 10; ++i) {
+      engine.execute(job(done::countDown));
+    }
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+  }
+
+  private MirrorJob job(Runnable runnable) {
+    return new MirrorJob(MirrorJobClass.PERIODIC, null, runnable, System.nanoTime(), job -> true);
+  }
+
+  private void awaitStarted(int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (started.get() < expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  private void block() {
+    started.incrementAndGet();
+    try {
+      blocker.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package com.cloudogu.scm.mirror.api;
 
 import com.cloudogu.scm.mirror.LogEntry;
+import com.cloudogu.scm.mirror.LogRetentionConfiguration;
 import com.cloudogu.scm.mirror.LogStore;
 import com.cloudogu.scm.mirror.MirrorAccessConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfiguration;
@@ -25,6 +26,7 @@ import com.cloudogu.scm.mirror.MirrorProxyConfiguration;
 import com.cloudogu.scm.mirror.MirrorService;
 import com.cloudogu.scm.mirror.MirrorStatus;
 import com.cloudogu.scm.mirror.MirrorStatus.Result;
+import com.cloudogu.scm.mirror.MirrorStatusSummary;
 import com.fasterxml.jackson.databind.JsonNode;
 import de.otto.edison.hal.Links;
 import org.github.sdorra.jse.ShiroExtension;
@@ -56,9 +58,11 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static com.google.common.io.Resources.getResource;
 import static com.google.common.io.Resources.toByteArray;
@@ -73,6 +77,7 @@ import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static sonia.scm.web.MockScmPathInfoStore.forUri;
@@ -378,6 +383,63 @@ class MirrorRootResourceTest {
       verify(mirrorService).unmirror(any(Repository.class));
     }
 
+    @Test
+    @SubjectAware(
+      value = "trillian",
+      permissions = "repository:mirror:*"
+    )
+    void shouldGetLogRetention() throws URISyntaxException {
+      MirrorConfiguration configuration = new MirrorConfiguration();
+      configuration.setLogRetention(new LogRetentionConfiguration(100, null, 30));
+      when(configurationStore.getConfiguration(repository)).thenReturn(Optional.of(configuration));
+
+      MockHttpRequest request = MockHttpRequest.get("/v2/mirror/repositories/hitchhiker/HeartOfGold/logRetention");
+      JsonMockHttpResponse response = new JsonMockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(200);
+      LogRetentionDto dto = response.getContentAs(LogRetentionDto.class);
+      assertThat(dto.getMaximumEntries()).isEqualTo(100);
+      assertThat(dto.getMaximumBytes()).isNull();
+      assertThat(dto.getMaximumAgeInDays()).isEqualTo(30);
+      assertThat(dto.getLinks().getLinkBy("update")).get().extracting("href")
+        .isEqualTo("/v2/mirror/repositories/hitchhiker/HeartOfGold/logRetention");
+    }
+
+    @Test
+    void shouldSetLogRetention() throws URISyntaxException {
+      JsonMockHttpRequest request = JsonMockHttpRequest
+        .put("/v2/mirror/repositories/hitchhiker/HeartOfGold/logRetention")
+        .json("{'maximumBytes':1048576}");
+      MockHttpResponse response = new MockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(204);
+      verify(configurationStore).setLogRetention(
+        eq(repository),
+        argThat(retention -> {
+          assertThat(retention.getMaximumEntries()).isNull();
+          assertThat(retention.getMaximumBytes()).isEqualTo(1048576L);
+          return true;
+        }));
+    }
+
+    @Test
+    void shouldNotAllowNegativeLogRetention() throws URISyntaxException {
+      JsonMockHttpRequest request = JsonMockHttpRequest
+        .put("/v2/mirror/repositories/hitchhiker/HeartOfGold/logRetention")
+        .json("{'maximumEntries':-1}");
+      MockHttpResponse response = new MockHttpResponse();
+
+      dispatcher.getProviderFactory().registerProvider(ConstraintViolationExceptionMapper.class);
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(400);
+      verify(configurationStore, never()).setLogRetention(any(), any());
+    }
+
     @Test
     void shouldExecuteUpdateRequest() throws URISyntaxException {
       JsonMockHttpRequest request = JsonMockHttpRequest.post("/v2/mirror/repositories/hitchhiker/HeartOfGold/sync");
@@ -463,7 +525,7 @@ class MirrorRootResourceTest {
 
     @Test
     void shouldReturnLogs() throws URISyntaxException, UnsupportedEncodingException {
-      when(logStore.get(repository)).thenReturn(Collections.singletonList(log()));
+      when(logStore.get(repository, 20, null)).thenReturn(new LogStore.Page(Collections.singletonList(log()), null));
 
       MockHttpRequest request = MockHttpRequest.get("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs");
       JsonMockHttpResponse response = new JsonMockHttpResponse();
@@ -484,6 +546,8 @@ class MirrorRootResourceTest {
 
     @Test
     void shouldReturnSelfLink() throws URISyntaxException {
+      when(logStore.get(repository, 20, null)).thenReturn(new LogStore.Page(emptyList(), null));
+
       MockHttpRequest request = MockHttpRequest.get("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs");
       JsonMockHttpResponse response = new JsonMockHttpResponse();
 
@@ -496,6 +560,60 @@ class MirrorRootResourceTest {
       ).isEqualTo("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs");
     }
 
+    @Test
+    void shouldReturnLinkToNextPage() throws URISyntaxException {
+      when(logStore.get(repository, 5, "42")).thenReturn(new LogStore.Page(Collections.singletonList(log()), "21"));
+
+      MockHttpRequest request = MockHttpRequest.get("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs?limit=5&cursor=42&includeLog=false");
+      JsonMockHttpResponse response = new JsonMockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(200);
+      JsonNode json = response.getContentAsJson();
+      assertThat(json.get("_links").get("next").get("href").asText())
+        .isEqualTo("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs?limit=5&cursor=21&includeLog=false");
+      JsonNode log = json.get("_embedded").get("entries").get(0).get("log");
+      assertThat(log == null || log.isNull()).isTrue();
+    }
+
+    @Test
+    void shouldLimitPageSize() throws URISyntaxException {
+      when(logStore.get(repository, 100, null)).thenReturn(new LogStore.Page(emptyList(), null));
+
+      MockHttpRequest request = MockHttpRequest.get("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs?limit=10000");
+      JsonMockHttpResponse response = new JsonMockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void shouldRejectInvalidCursor() throws URISyntaxException {
+      when(logStore.get(repository, 20, "vogon")).thenThrow(new IllegalArgumentException("invalid log entry id vogon"));
+
+      MockHttpRequest request = MockHttpRequest.get("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs?cursor=vogon");
+      MockHttpResponse response = new MockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(400);
+    }
+
+    @Test
+    void shouldStreamLogLines() throws URISyntaxException, UnsupportedEncodingException {
+      when(logStore.getLines(repository, "42")).thenReturn(writer -> writer.write("first line\nsecond line\n"));
+
+      MockHttpRequest request = MockHttpRequest.get("/v2/mirror/repositories/hitchhiker/HeartOfGold/logs/42/lines");
+      MockHttpResponse response = new MockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(200);
+      assertThat(response.getContentAsString()).isEqualTo("first line\nsecond line\n");
+    }
+
     private LogEntry log() {
       Instant started = Instant.now().minusMillis(21L);
       return new LogEntry(MirrorStatus.create(Result.FAILED, started), "not so awesome");
@@ -503,6 +621,98 @@ class MirrorRootResourceTest {
 
   }
 
+  @Nested
+  class StatusTests {
+
+    private final Repository heartOfGold = RepositoryTestData.createHeartOfGold();
+    private final Repository puzzle = RepositoryTestData.create42Puzzle();
+    private final Repository restaurant = RepositoryTestData.createRestaurantAtTheEndOfTheUniverse();
+
+    @BeforeEach
+    void mockSummaries() {
+      puzzle.setNamespace("puzzles");
+      Instant nextSynchronization = Instant.parse("2042-01-01T00:00:00Z");
+      lenient().when(mirrorService.getStatusSummaries()).thenAnswer(invocation -> Stream.of(
+        new MirrorStatusSummary(heartOfGold, MirrorStatus.create(Result.SUCCESS, Instant.now()), Duration.ofMinutes(60), nextSynchronization),
+        new MirrorStatusSummary(puzzle, MirrorStatus.create(Result.FAILED, Instant.now()), Duration.ofMinutes(15), nextSynchronization),
+        new MirrorStatusSummary(restaurant, null, null, null)
+      ));
+    }
+
+    @Test
+    void shouldStreamStatusOfAllMirrors() throws URISyntaxException {
+      JsonNode mirrors = getStatus("");
+
+      assertThat(mirrors).hasSize(3);
+      JsonNode first = mirrors.get(0);
+      assertThat(first.get("namespace").asText()).isEqualTo(heartOfGold.getNamespace());
+      assertThat(first.get("name").asText()).isEqualTo(heartOfGold.getName());
+      assertThat(first.get("result").asText()).isEqualTo("SUCCESS");
+      assertThat(first.get("started").asText()).isNotEmpty();
+      assertThat(first.get("ended").asText()).isNotEmpty();
+      assertThat(first.get("period").asInt()).isEqualTo(60);
+      assertThat(first.get("nextSynchronization").asText()).isEqualTo("2042-01-01T00:00:00Z");
+      JsonNode disabled = mirrors.get(2);
+      assertThat(disabled.get("result").asText()).isEqualTo("DISABLED");
+      assertThat(disabled.has("period")).isFalse();
+    }
+
+    @Test
+    void shouldFilterByResult() throws URISyntaxException {
+      JsonNode mirrors = getStatus("?result=failed&result=DISABLED");
+
+      assertThat(mirrors).extracting(mirror -> mirror.get("result").asText()).containsExactly("FAILED", "DISABLED");
+    }
+
+    @Test
+    void shouldFilterByNamespace() throws URISyntaxException {
+      JsonNode mirrors = getStatus("?namespace=puzzles");
+
+      assertThat(mirrors).extracting(mirror -> mirror.get("name").asText()).containsExactly(puzzle.getName());
+    }
+
+    @Test
+    void shouldFilterByStaleness() throws URISyntaxException {
+      JsonNode mirrors = getStatus("?staleForMinutes=60");
+
+      // the failed puzzle has never been synchronized successfully
+      assertThat(mirrors).extracting(mirror -> mirror.get("name").asText()).containsExactly(puzzle.getName(), restaurant.getName());
+    }
+
+    @Test
+    void shouldNotListFailedMirrorWithRecentSuccessAsStale() throws URISyntaxException {
+      MirrorStatus failedAfterSuccess = spy(MirrorStatus.create(Result.FAILED, Instant.now()));
+      doReturn(Instant.now().minus(Duration.ofMinutes(30))).when(failedAfterSuccess).getLastSuccess();
+      when(mirrorService.getStatusSummaries()).thenAnswer(invocation -> Stream.of(
+        new MirrorStatusSummary(puzzle, failedAfterSuccess, Duration.ofMinutes(15), null)
+      ));
+
+      JsonNode mirrors = getStatus("?staleForMinutes=60");
+
+      assertThat(mirrors).isEmpty();
+    }
+
+    @Test
+    void shouldRejectUnknownResult() throws URISyntaxException {
+      MockHttpRequest request = MockHttpRequest.get("/v2/mirror/status?result=vogon");
+      MockHttpResponse response = new MockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(400);
+    }
+
+    private JsonNode getStatus(String query) throws URISyntaxException {
+      MockHttpRequest request = MockHttpRequest.get("/v2/mirror/status" + query);
+      JsonMockHttpResponse response = new JsonMockHttpResponse();
+
+      dispatcher.invoke(request, response);
+
+      assertThat(response.getStatus()).isEqualTo(200);
+      return response.getContentAsJson().get("mirrors");
+    }
+  }
+
   @BeforeAll
   @SuppressWarnings("UnstableApiUsage")
   static void readCertificate() throws IOException {
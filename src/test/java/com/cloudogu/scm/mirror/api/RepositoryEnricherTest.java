@@ -19,6 +19,7 @@ package com.cloudogu.scm.mirror.api;
 import com.cloudogu.scm.mirror.GlobalMirrorConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfiguration;
 import com.cloudogu.scm.mirror.MirrorConfigurationStore;
+import com.cloudogu.scm.mirror.MirrorService;
 import com.cloudogu.scm.mirror.MirrorStatus;
 import com.cloudogu.scm.mirror.MirrorStatusStore;
 import de.otto.edison.hal.HalRepresentation;
@@ -38,7 +39,9 @@ import sonia.scm.repository.RepositoryTestData;
 import sonia.scm.web.MockScmPathInfoStore;
 
 import jakarta.inject.Provider;
+import java.time.Instant;
 
+import static com.cloudogu.scm.mirror.MirrorStatus.Result.FAILED;
 import static com.cloudogu.scm.mirror.MirrorStatus.Result.SUCCESS;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
@@ -68,12 +71,14 @@ class RepositoryEnricherTest {
   private MirrorConfigurationStore configurationService;
   @Mock
   private MirrorStatusStore statusStore;
+  @Mock
+  private MirrorService mirrorService;
 
   private RepositoryEnricher enricher;
 
   @BeforeEach
   void createEnricher() {
-    enricher = new RepositoryEnricher(scmPathInfoStore, configurationService, statusStore);
+    enricher = new RepositoryEnricher(scmPathInfoStore, configurationService, statusStore, mirrorService);
   }
 
   @Test
@@ -104,6 +109,46 @@ class RepositoryEnricherTest {
     );
   }
 
+  @Test
+  void shouldAppendNextSynchronizationToStatus() {
+    HalEnricherContext context = HalEnricherContext.of(REPOSITORY);
+    mockExistingConfiguration(5);
+    when(statusStore.getStatus(REPOSITORY)).thenReturn(new MirrorStatus(SUCCESS));
+    Instant nextSynchronization = Instant.now().plusSeconds(42);
+    when(mirrorService.getNextSynchronization(REPOSITORY)).thenReturn(of(nextSynchronization));
+
+    enricher.enrich(context, appender);
+
+    verify(appender).appendEmbedded(
+      eq("mirrorStatus"),
+      (HalRepresentation) argThat(status -> {
+        assertThat(status).extracting("nextSynchronization").isEqualTo(nextSynchronization);
+        return true;
+      })
+    );
+  }
+
+  @Test
+  void shouldAppendBackoffStateToStatus() {
+    HalEnricherContext context = HalEnricherContext.of(REPOSITORY);
+    mockExistingConfiguration(5);
+    when(statusStore.getStatus(REPOSITORY)).thenReturn(new MirrorStatus(FAILED));
+    Instant circuitOpenUntil = Instant.now().plusSeconds(42);
+    when(mirrorService.getConsecutiveFailures(REPOSITORY)).thenReturn(6);
+    when(mirrorService.getCircuitOpenUntil(eq(REPOSITORY), any())).thenReturn(of(circuitOpenUntil));
+
+    enricher.enrich(context, appender);
+
+    verify(appender).appendEmbedded(
+      eq("mirrorStatus"),
+      (HalRepresentation) argThat(status -> {
+        assertThat(status).extracting("consecutiveFailures").isEqualTo(6);
+        assertThat(status).extracting("circuitOpenUntil").isEqualTo(circuitOpenUntil);
+        return true;
+      })
+    );
+  }
+
   @Test
   void shouldAppendDisabledStatusAsEmbeddedForDisabledMirrorRepository() {
     HalEnricherContext context = HalEnricherContext.of(REPOSITORY);
@@ -161,6 +206,7 @@ class RepositoryEnricherTest {
 
       verify(appender).appendLink("mirrorAccessConfiguration", "/v2/mirror/repositories/hitchhiker/HeartOfGold/accessConfiguration");
       verify(appender).appendLink("mirrorFilterConfiguration", "/v2/mirror/repositories/hitchhiker/HeartOfGold/filterConfiguration");
+      verify(appender).appendLink("mirrorLogRetention", "/v2/mirror/repositories/hitchhiker/HeartOfGold/logRetention");
       verify(appender).appendLink("unmirror", "/v2/mirror/repositories/hitchhiker/HeartOfGold/unmirror");
     }
 